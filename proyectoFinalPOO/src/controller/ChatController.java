@@ -3,14 +3,16 @@
  * Controlador responsable de gestionar la lógica de negocio
  * relacionada con el sistema de chat y mensajería entre usuarios.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.0
+ * @version 1.4
  */
 
 package controller;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
 import java.util.ArrayList;
 
 import model.User;
@@ -18,6 +20,7 @@ import model.chat.Chat;
 import model.chat.Mensaje;
 import util.EstadoOferta;
 import util.EstadoPublicacion;
+import util.GeneradorIds;
 import persistence.ChatRepository;
 
 public class ChatController {
@@ -52,7 +55,7 @@ public class ChatController {
             return chatExistente;
         }
 
-        String identificadorChat = UUID.randomUUID().toString();
+        String identificadorChat = GeneradorIds.nuevoId(GeneradorIds.CHAT);
         Chat nuevoChat = new Chat(identificadorChat, usuarioA, usuarioB);
         chatRepository.guardarChat(nuevoChat);
         return nuevoChat;
@@ -72,15 +75,14 @@ public class ChatController {
             throw new IllegalArgumentException("El contenido del mensaje no puede ser nulo ni vacío.");
         }
 
-        String identificadorMensaje = UUID.randomUUID().toString();
+        String identificadorMensaje = GeneradorIds.nuevoId(GeneradorIds.MENSAJE);
         Mensaje mensaje = new Mensaje(
                 identificadorMensaje,
                 remitente,
                 contenidoMensaje.trim(),
                 LocalDateTime.now());
 
-        chat.agregarMensaje(mensaje);
-        chatRepository.guardarChat(chat);
+        chatRepository.agregarMensaje(chat, mensaje);
     }
 
     /**
@@ -110,7 +112,7 @@ public class ChatController {
             throw new IllegalArgumentException("El tipo de mensaje no puede ser nulo.");
         }
 
-        String identificadorMensaje = UUID.randomUUID().toString();
+        String identificadorMensaje = GeneradorIds.nuevoId(GeneradorIds.MENSAJE);
         Mensaje mensaje = new Mensaje(
                 identificadorMensaje,
                 remitente,
@@ -119,8 +121,95 @@ public class ChatController {
                 tipoMensaje,
                 idPublicacionAsociada);
 
-        chat.agregarMensaje(mensaje);
-        chatRepository.guardarChat(chat);
+        chatRepository.agregarMensaje(chat, mensaje);
+    }
+
+    /**
+     * Mensajes que se envían juntos con {@link ChatController#enviarLote(LoteMensajes)},
+     * por ejemplo los avisos a todos los ofertantes cuando se cierra una
+     * publicación.
+     */
+    public static class LoteMensajes {
+
+        private static final class Pendiente {
+            final User destinatario;
+            final User remitente;
+            final String contenido;
+            final Mensaje.TipoMensaje tipo;
+            final String idPublicacionAsociada;
+
+            Pendiente(User destinatario, User remitente, String contenido,
+                      Mensaje.TipoMensaje tipo, String idPublicacionAsociada) {
+                this.destinatario = destinatario;
+                this.remitente = remitente;
+                this.contenido = contenido;
+                this.tipo = tipo;
+                this.idPublicacionAsociada = idPublicacionAsociada;
+            }
+        }
+
+        private final List<Pendiente> pendientes = new ArrayList<>();
+
+        /**
+         * Agrega un mensaje NORMAL del remitente al destinatario.
+         */
+        public LoteMensajes agregar(User destinatario, User remitente, String contenido) {
+            return agregar(destinatario, remitente, contenido, Mensaje.TipoMensaje.NORMAL, null);
+        }
+
+        /**
+         * Agrega un mensaje con tipo y publicación asociada.
+         */
+        public LoteMensajes agregar(User destinatario, User remitente, String contenido,
+                                    Mensaje.TipoMensaje tipo, String idPublicacionAsociada) {
+            validarUsuarios(destinatario, remitente);
+            if (contenido == null || contenido.isBlank()) {
+                throw new IllegalArgumentException("El contenido del mensaje no puede ser nulo ni vacío.");
+            }
+            if (tipo == null) {
+                throw new IllegalArgumentException("El tipo de mensaje no puede ser nulo.");
+            }
+            pendientes.add(new Pendiente(destinatario, remitente, contenido.trim(), tipo, idPublicacionAsociada));
+            return this;
+        }
+
+        public boolean estaVacio() {
+            return pendientes.isEmpty();
+        }
+    }
+
+    /**
+     * Envía todos los mensajes del lote. Los chats que no existan se crean
+     * y todo se persiste en una sola escritura, en lugar de una por mensaje.
+     */
+    public void enviarLote(LoteMensajes lote) {
+        if (lote == null || lote.estaVacio()) {
+            return;
+        }
+
+        Map<Chat, List<Mensaje>> mensajesPorChat = new LinkedHashMap<>();
+        // Chats creados en este lote, para no crear dos veces el mismo
+        Map<String, Chat> chatsNuevos = new HashMap<>();
+
+        for (LoteMensajes.Pendiente pendiente : lote.pendientes) {
+            Chat chat = chatRepository.buscarChatEntreUsuarios(pendiente.destinatario, pendiente.remitente);
+            if (chat == null) {
+                String pareja = Chat.claveDePareja(pendiente.destinatario, pendiente.remitente);
+                chat = chatsNuevos.computeIfAbsent(pareja,
+                        clave -> new Chat(GeneradorIds.nuevoId(GeneradorIds.CHAT), pendiente.destinatario, pendiente.remitente));
+            }
+
+            Mensaje mensaje = new Mensaje(
+                    GeneradorIds.nuevoId(GeneradorIds.MENSAJE),
+                    pendiente.remitente,
+                    pendiente.contenido,
+                    LocalDateTime.now(),
+                    pendiente.tipo,
+                    pendiente.idPublicacionAsociada);
+            mensajesPorChat.computeIfAbsent(chat, c -> new ArrayList<>()).add(mensaje);
+        }
+
+        chatRepository.agregarMensajes(mensajesPorChat);
     }
 
     public List<Chat> listarChatsDeUsuario(User usuario) {
@@ -154,21 +243,12 @@ public class ChatController {
 
         List<model.Oferta> todasLasOfertas = new ArrayList<>();
 
-        List<model.Oferta> ofertasU1 = ofertaRepository.buscarOfertasPorOfertante(u1.getId());
-        for (model.Oferta o : ofertasU1) {
-            model.Publicacion p = publicacionRepository.buscarPorIdArticulo(o.getIdPublicacion());
-            if (p != null && p.getIdVendedor().equals(u2.getId())) {
-                todasLasOfertas.add(o);
-            }
-        }
-
-        List<model.Oferta> ofertasU2 = ofertaRepository.buscarOfertasPorOfertante(u2.getId());
-        for (model.Oferta o : ofertasU2) {
-            model.Publicacion p = publicacionRepository.buscarPorIdArticulo(o.getIdPublicacion());
-            if (p != null && p.getIdVendedor().equals(u1.getId())) {
-                todasLasOfertas.add(o);
-            }
-        }
+        // Ofertas de cada usuario sobre las publicaciones del otro, usando los
+        // índices por ofertante y por vendedor
+        todasLasOfertas.addAll(ofertaRepository.buscarOfertasEnPublicaciones(
+                u1.getId(), publicacionRepository.buscarIdsPorVendedor(u2.getId())));
+        todasLasOfertas.addAll(ofertaRepository.buscarOfertasEnPublicaciones(
+                u2.getId(), publicacionRepository.buscarIdsPorVendedor(u1.getId())));
 
         return todasLasOfertas;
     }
@@ -177,7 +257,7 @@ public class ChatController {
         return listarChatsDeUsuario(usuario);
     }
 
-    private void validarUsuarios(User usuarioA, User usuarioB) {
+    private static void validarUsuarios(User usuarioA, User usuarioB) {
         if (usuarioA == null || usuarioB == null) {
             throw new IllegalArgumentException("Los usuarios no pueden ser nulos.");
         }
@@ -2,23 +2,30 @@
  * Clase:PublicacionController
  * Controlador encargado de manejar todas las operaciones relacionadas con las publicaciones (subastas y trueques)
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.0
+ * @version 1.11
  */
 
 package controller;
 
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import model.Oferta;
 import model.Publicacion;
 import model.PublicacionSubasta;
 import model.PublicacionTrueque;
+import model.PujaAutomatica;
 import model.User;
 import model.chat.Chat;
 import model.chat.Mensaje;
+import persistence.ServicioPersistencia;
+import service.BusEventosPujas.EventoPuja;
 import service.OfertaService;
 import service.PublicacionService;
+import util.GeneradorIds;
 import controller.UserController;
 import view.PerfilUsuarioView;
 
@@ -102,7 +109,11 @@ public class PublicacionController {
     }
 
     public boolean eliminarPublicacion(String idPublicacion, String idUsuarioSolicitante) {
-        return publicacionService.eliminarPublicacion(idPublicacion, idUsuarioSolicitante);
+        boolean eliminada = publicacionService.eliminarPublicacion(idPublicacion, idUsuarioSolicitante);
+        if (eliminada) {
+            ofertaService.descartarPujasAutomaticas(idPublicacion);
+        }
+        return eliminada;
     }
 
     public boolean actualizarPublicacion(Publicacion publicacion, String idUsuarioSolicitante) {
@@ -158,10 +169,51 @@ public class PublicacionController {
         }
     }
 
+    /**
+     * Registra una puja automática con tope sobre una subasta. No se envía
+     * mensaje al vendedor: el máximo es privado y las ofertas resultantes
+     * aparecen en el historial de pujas.
+     *
+     * @return Mejor oferta de la subasta tras resolver las pujas, o null si
+     *         no se pudo registrar.
+     */
+    public Oferta registrarPujaAutomatica(String idPublicacion, String idOfertante, double montoMaximo) {
+        try {
+            return ofertaService.registrarPujaAutomatica(idPublicacion, idOfertante, montoMaximo);
+        } catch (Exception e) {
+            e.printStackTrace();
+            String mensajeError = e.getMessage() != null ? e.getMessage() : "Error desconocido al ofertar";
+            javax.swing.JOptionPane.showMessageDialog(null, mensajeError, "Error al registrar la puja automática",
+                    javax.swing.JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+    }
+
+    public PujaAutomatica obtenerPujaAutomatica(String idPublicacion, String idOfertante) {
+        return ofertaService.obtenerPujaAutomatica(idPublicacion, idOfertante);
+    }
+
     public List<Oferta> obtenerOfertas(String idPublicacion) {
         return ofertaService.obtenerOfertasPorPublicacion(idPublicacion);
     }
 
+    public List<Oferta> obtenerMejoresOfertas(String idPublicacion, int cantidad) {
+        return ofertaService.obtenerMejoresOfertas(idPublicacion, cantidad);
+    }
+
+    public int contarOfertas(String idPublicacion) {
+        return ofertaService.contarOfertas(idPublicacion);
+    }
+
+    /** Suscribe a las pujas nuevas y retiradas de una publicación. */
+    public void suscribirPujas(String idPublicacion, Consumer<EventoPuja> suscriptor) {
+        ofertaService.suscribirPujas(idPublicacion, suscriptor);
+    }
+
+    public void desuscribirPujas(String idPublicacion, Consumer<EventoPuja> suscriptor) {
+        ofertaService.desuscribirPujas(idPublicacion, suscriptor);
+    }
+
     /**
      * Aceptar oferta:
      * - Usa la lógica existente de OfertaService.
@@ -173,41 +225,47 @@ public class PublicacionController {
      */
     public boolean aceptarOferta(String idOferta, String idVendedor) {
         try {
-            boolean resultado = ofertaService.aceptarOferta(idOferta, idVendedor);
-
-            if (resultado && chatController != null) {
-                Oferta ofertaAceptada = ofertaService.obtenerOfertaPorId(idOferta);
-                if (ofertaAceptada != null) {
-                    Publicacion publicacion = publicacionService
-                            .buscarPublicacionPorId(ofertaAceptada.getIdPublicacion());
-
-                    if (publicacion instanceof PublicacionTrueque) {
-                        User vendedor = publicacionService.obtenerUsuarioPorId(idVendedor);
-                        User ofertanteElegido = publicacionService
-                                .obtenerUsuarioPorId(ofertaAceptada.getIdOfertante());
-
-                        if (vendedor != null && ofertanteElegido != null) {
-                            Chat chat = chatController.obtenerOCrearChat(ofertanteElegido, vendedor);
-                            String mensaje = "¡Felicidades, he elegido hacer un trato contigo! ¿Deseas continuar con el trato?";
-                            // MENSAJE ESPECIAL: botón Sí/No + referencia a la publicación
-                            chatController.enviarMensaje(
-                                    chat,
-                                    vendedor,
-                                    mensaje,
-                                    Mensaje.TipoMensaje.BOTON_CONFIRMAR_TRUEQUE,
-                                    publicacion.getIdArticulo());
-                        }
-                    }
-                }
-            }
-
-            return resultado;
+            // Las ofertas, la publicación y el aviso llegan a disco en el mismo lote
+            return ServicioPersistencia.getInstancia().escribirJuntos(
+                    () -> aceptarOfertaYNotificar(idOferta, idVendedor));
         } catch (Exception e) {
             javax.swing.JOptionPane.showMessageDialog(null, e.getMessage());
             return false;
         }
     }
 
+    private boolean aceptarOfertaYNotificar(String idOferta, String idVendedor) {
+        boolean resultado = ofertaService.aceptarOferta(idOferta, idVendedor);
+
+        if (resultado && chatController != null) {
+            Oferta ofertaAceptada = ofertaService.obtenerOfertaPorId(idOferta);
+            if (ofertaAceptada != null) {
+                Publicacion publicacion = publicacionService
+                        .buscarPublicacionPorId(ofertaAceptada.getIdPublicacion());
+
+                if (publicacion instanceof PublicacionTrueque) {
+                    User vendedor = publicacionService.obtenerUsuarioPorId(idVendedor);
+                    User ofertanteElegido = publicacionService
+                            .obtenerUsuarioPorId(ofertaAceptada.getIdOfertante());
+
+                    if (vendedor != null && ofertanteElegido != null) {
+                        Chat chat = chatController.obtenerOCrearChat(ofertanteElegido, vendedor);
+                        String mensaje = "¡Felicidades, he elegido hacer un trato contigo! ¿Deseas continuar con el trato?";
+                        // MENSAJE ESPECIAL: botón Sí/No + referencia a la publicación
+                        chatController.enviarMensaje(
+                                chat,
+                                vendedor,
+                                mensaje,
+                                Mensaje.TipoMensaje.BOTON_CONFIRMAR_TRUEQUE,
+                                publicacion.getIdArticulo());
+                    }
+                }
+            }
+        }
+
+        return resultado;
+    }
+
     public boolean rechazarOferta(String idOferta, String idVendedor) {
         try {
             return ofertaService.rechazarOferta(idOferta, idVendedor);
@@ -250,58 +308,114 @@ public class PublicacionController {
                 throw new IllegalArgumentException("Solo el dueño de la publicación puede cerrar la subasta.");
             }
 
-            // Obtener la mejor oferta (ganador) si existe
-            Oferta mejorOferta = ofertaService.obtenerMejorOfertaSubasta(idPublicacion);
+            cerrarSubastaYNotificar(idPublicacion, idVendedor);
+            javax.swing.JOptionPane.showMessageDialog(null, "Subasta cerrada correctamente.");
+        } catch (Exception e) {
+            e.printStackTrace();
+            javax.swing.JOptionPane.showMessageDialog(null, "Error al cerrar subasta: " + e.getMessage());
+        }
+    }
 
-            if (mejorOferta != null && chatController != null) {
-                User vendedor = publicacionService.obtenerUsuarioPorId(idVendedor);
-                User ganador = publicacionService.obtenerUsuarioPorId(mejorOferta.getIdOfertante());
-
-                // 1) Mensaje al ganador (con botón Pagar)
-                if (vendedor != null && ganador != null) {
-                    Chat chatGanador = chatController.obtenerOCrearChat(ganador, vendedor);
-                    String mensajeGanador = "¡Felicidades, eres el ganador de la subasta! "
-                            + "Realiza tu pago aquí desde este chat.";
-                    chatController.enviarMensaje(
-                            chatGanador,
-                            vendedor,
-                            mensajeGanador,
-                            Mensaje.TipoMensaje.BOTON_PAGAR_SUBASTA,
-                            publicacion.getIdArticulo());
-                }
+    /**
+     * Notifica al ganador y a los demás pujadores y cierra la subasta, todo
+     * en un mismo lote de escritura. Compartido por el cierre manual y el
+     * automático.
+     */
+    private void cerrarSubastaYNotificar(String idPublicacion, String idVendedor) {
+        ServicioPersistencia.getInstancia().escribirJuntos(() -> notificarYCerrarSubasta(idPublicacion, idVendedor));
+    }
+
+    private void notificarYCerrarSubasta(String idPublicacion, String idVendedor) {
+        // Obtener la mejor oferta (ganador) si existe
+        Oferta mejorOferta = ofertaService.obtenerMejorOfertaSubasta(idPublicacion);
+
+        if (mejorOferta != null && chatController != null) {
+            User vendedor = publicacionService.obtenerUsuarioPorId(idVendedor);
+            User ganador = publicacionService.obtenerUsuarioPorId(mejorOferta.getIdOfertante());
+
+            // Todos los avisos se guardan en una sola escritura
+            ChatController.LoteMensajes avisos = new ChatController.LoteMensajes();
+
+            // 1) Mensaje al ganador (con botón Pagar)
+            if (vendedor != null && ganador != null) {
+                String mensajeGanador = "¡Felicidades, eres el ganador de la subasta! "
+                        + "Realiza tu pago aquí desde este chat.";
+                avisos.agregar(
+                        ganador,
+                        vendedor,
+                        mensajeGanador,
+                        Mensaje.TipoMensaje.BOTON_PAGAR_SUBASTA,
+                        idPublicacion);
+            }
 
-                // 2) Mensajes a los que pujarón pero no ganaron (mensaje normal)
-                List<Oferta> ofertasNoGanadoras = ofertaService.obtenerOfertasNoGanadorasSubasta(idPublicacion);
-                if (ofertasNoGanadoras != null && !ofertasNoGanadoras.isEmpty() && vendedor != null) {
-                    for (Oferta oferta : ofertasNoGanadoras) {
-                        User pujador = publicacionService.obtenerUsuarioPorId(oferta.getIdOfertante());
-                        if (pujador != null) {
-                            Chat chatPerdedor = chatController.obtenerOCrearChat(pujador, vendedor);
-                            String mensajePerdedor = "La subasta ha cerrado, en caso de no concretar un trato "
-                                    + "podrías ser el próximo adjudicatario.";
-                            chatController.enviarMensaje(chatPerdedor, vendedor, mensajePerdedor);
-                        }
+            // 2) Mensajes a los que pujarón pero no ganaron (mensaje normal),
+            //    uno por usuario y enviados juntos con el del ganador
+            List<Oferta> ofertasNoGanadoras = ofertaService.obtenerOfertasNoGanadorasSubasta(idPublicacion);
+            if (ofertasNoGanadoras != null && !ofertasNoGanadoras.isEmpty() && vendedor != null) {
+                Set<String> avisados = new HashSet<>();
+                avisados.add(mejorOferta.getIdOfertante());
+                for (Oferta oferta : ofertasNoGanadoras) {
+                    if (!avisados.add(oferta.getIdOfertante())) {
+                        continue;
+                    }
+                    User pujador = publicacionService.obtenerUsuarioPorId(oferta.getIdOfertante());
+                    if (pujador != null) {
+                        String mensajePerdedor = "La subasta ha cerrado, en caso de no concretar un trato "
+                                + "podrías ser el próximo adjudicatario.";
+                        avisos.agregar(pujador, vendedor, mensajePerdedor);
                     }
                 }
             }
 
-            // 3) Cerrar subasta normalmente
-            publicacionService.cerrarSubasta(idPublicacion, idVendedor);
-            javax.swing.JOptionPane.showMessageDialog(null, "Subasta cerrada correctamente.");
+            chatController.enviarLote(avisos);
+        }
+
+        // 3) Cerrar subasta normalmente
+        publicacionService.cerrarSubasta(idPublicacion, idVendedor);
+
+        // 4) Las pujas automáticas ya no pueden volver a pujar
+        ofertaService.descartarPujasAutomaticas(idPublicacion);
+    }
+
+    /**
+     * Activa el cierre automático: cada subasta se cierra (con los mismos
+     * mensajes que el cierre manual) en cuanto llega su fecha de cierre.
+     * El cierre se ejecuta en el hilo de eventos de Swing, como el resto de
+     * acciones de la interfaz.
+     */
+    public void iniciarCierreAutomaticoSubastas() {
+        publicacionService.iniciarCierreAutomatico(
+                idPublicacion -> javax.swing.SwingUtilities.invokeLater(() -> cerrarSubastaVencida(idPublicacion)));
+    }
+
+    private void cerrarSubastaVencida(String idPublicacion) {
+        Publicacion publicacion = publicacionService.buscarPublicacionPorId(idPublicacion);
+        if (!(publicacion instanceof PublicacionSubasta)
+                || publicacion.getEstado() != util.EstadoPublicacion.ACTIVA) {
+            // Ya cerrada o eliminada
+            return;
+        }
+        Date fechaCierre = ((PublicacionSubasta) publicacion).getFechaCierre();
+        if (fechaCierre == null || new Date().before(fechaCierre)) {
+            // Se extendió: hay otra entrada programada con la nueva fecha
+            return;
+        }
+        try {
+            cerrarSubastaYNotificar(idPublicacion, publicacion.getIdVendedor());
+            System.out.println("Subasta " + idPublicacion + " cerrada automáticamente al vencer.");
         } catch (Exception e) {
             e.printStackTrace();
-            javax.swing.JOptionPane.showMessageDialog(null, "Error al cerrar subasta: " + e.getMessage());
         }
     }
 
      /** Genera un ID único para una publicación. */
     private String generarId() {
-        return "PUB-" + System.currentTimeMillis();
+        return GeneradorIds.nuevoId(GeneradorIds.PUBLICACION);
     }
 
      /** Genera un ID único para una oferta. */
     private String generarIdOferta() {
-        return "OFE-" + System.currentTimeMillis();
+        return GeneradorIds.nuevoId(GeneradorIds.OFERTA);
     }
     
     /** Obtiene el valor actual de la puja más alta en una subasta. */
@@ -362,22 +476,10 @@ public class PublicacionController {
 
             User vendedor = publicacionService.obtenerUsuarioPorId(trueque.getIdVendedor());
 
-            // Notificar a los demás ofertantes que el intercambio se concretó con otro
-            // usuario
-            List<Oferta> ofertasNoAceptadas = ofertaService.obtenerOfertasNoAceptadasTrueque(idPublicacion);
-            if (chatController != null && vendedor != null && ofertasNoAceptadas != null) {
-                for (Oferta oferta : ofertasNoAceptadas) {
-                    User otroOfertante = publicacionService.obtenerUsuarioPorId(oferta.getIdOfertante());
-                    if (otroOfertante != null) {
-                        Chat chat = chatController.obtenerOCrearChat(otroOfertante, vendedor);
-                        String mensaje = "El intercambio ha sido concretado con otro usuario.";
-                        chatController.enviarMensaje(chat, vendedor, mensaje);
-                    }
-                }
-            }
-
-            // Marcar publicación como FINALIZADA
-            publicacionService.finalizarPublicacion(idPublicacion);
+            // El rechazo de las demás ofertas, los avisos y el cierre de la
+            // publicación llegan a disco en el mismo lote
+            ServicioPersistencia.getInstancia().escribirJuntos(
+                    () -> cerrarIntercambio(idPublicacion, ofertaAceptada, vendedor));
             javax.swing.JOptionPane.showMessageDialog(null, "Intercambio concretado exitosamente.");
 
             // LOGICA CALIFICACION
@@ -404,6 +506,38 @@ public class PublicacionController {
                     "Error al concretar intercambio: " + e.getMessage());
         }
     }
+
+    /**
+     * Rechaza las demás ofertas pendientes, avisa a sus ofertantes y marca
+     * la publicación como FINALIZADA.
+     */
+    private void cerrarIntercambio(String idPublicacion, Oferta ofertaAceptada, User vendedor) {
+        // Las demás ofertas que sigan pendientes quedan rechazadas (una sola escritura)
+        ofertaService.rechazarOfertasRestantes(idPublicacion, ofertaAceptada.getIdOferta());
+
+        // Notificar a los demás ofertantes que el intercambio se concretó con otro
+        // usuario: un aviso por usuario, todos en una sola escritura
+        List<Oferta> ofertasNoAceptadas = ofertaService.obtenerOfertasNoAceptadasTrueque(idPublicacion);
+        if (chatController != null && vendedor != null && ofertasNoAceptadas != null) {
+            ChatController.LoteMensajes avisos = new ChatController.LoteMensajes();
+            Set<String> avisados = new HashSet<>();
+            avisados.add(ofertaAceptada.getIdOfertante());
+            for (Oferta oferta : ofertasNoAceptadas) {
+                if (!avisados.add(oferta.getIdOfertante())) {
+                    continue;
+                }
+                User otroOfertante = publicacionService.obtenerUsuarioPorId(oferta.getIdOfertante());
+                if (otroOfertante != null) {
+                    String mensaje = "El intercambio ha sido concretado con otro usuario.";
+                    avisos.agregar(otroOfertante, vendedor, mensaje);
+                }
+            }
+            chatController.enviarLote(avisos);
+        }
+
+        // Marcar publicación como FINALIZADA
+        publicacionService.finalizarPublicacion(idPublicacion);
+    }
     
     /**
      * Finaliza una subasta luego de que el ganador realiza su pago.
@@ -461,6 +595,26 @@ public class PublicacionController {
                 condicion);
     }
 
+    /** Igual que el anterior, más palabras clave; resultados por relevancia. */
+    public List<model.Publicacion> listarPublicacionesConFiltros(String texto, String ciudad, String tipo,
+            Double minPrecio, Double maxPrecio, String categoria, util.CondicionArticulo condicion) {
+        return publicacionService.listarPublicacionesConFiltros(texto, ciudad, tipo, minPrecio, maxPrecio,
+                categoria, condicion);
+    }
+
+    /** Aciertos, fallos y tasa de aciertos de la caché de filtros del catálogo. */
+    public service.CacheFiltros.Estadisticas getEstadisticasCacheFiltros() {
+        return publicacionService.getEstadisticasCacheFiltros();
+    }
+
+    /** Una página del catálogo filtrado, en el orden pedido. */
+    public model.PaginaPublicaciones listarPaginaConFiltros(String texto, String ciudad, String tipo,
+            Double minPrecio, Double maxPrecio, String categoria, util.CondicionArticulo condicion,
+            util.OrdenCatalogo orden, int desde, int cantidad) {
+        return publicacionService.listarPaginaConFiltros(texto, ciudad, tipo, minPrecio, maxPrecio, categoria,
+                condicion, orden, desde, cantidad);
+    }
+
     public service.UserService getUserService() {
         return publicacionService.getUserService();
     }
@@ -0,0 +1,90 @@
+/**
+ * Clase: ArranqueRepositorios
+ * Carga en paralelo los repositorios al iniciar la aplicación.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.0
+ */
+
+package main;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Fase de arranque: cada repositorio lee sus archivos en un hilo del pool,
+ * de modo que las cargas independientes ocurren a la vez y ninguna bloquea
+ * el hilo de la interfaz.
+ *
+ * Al terminar cada carga se informa su duración por consola y al
+ * observador de progreso (la ventana principal muestra el avance).
+ */
+class ArranqueRepositorios {
+
+    private final ExecutorService pool;
+    private final Consumer<String> progreso;
+
+    // Tiempos de carga por repositorio, en el orden en que se solicitaron
+    private final Map<String, Long> tiemposMs = new LinkedHashMap<>();
+    private final long inicio = System.nanoTime();
+
+    /**
+     * @param hilos    Cantidad de hilos del pool.
+     * @param progreso Recibe un mensaje cada vez que termina una carga.
+     */
+    ArranqueRepositorios(int hilos, Consumer<String> progreso) {
+        AtomicInteger contador = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(hilos, r -> {
+            Thread hilo = new Thread(r, "arranque-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        this.progreso = progreso;
+    }
+
+    /**
+     * Programa la carga de un repositorio en el pool.
+     *
+     * @param nombre      Nombre para el reporte de tiempos.
+     * @param constructor Crea el repositorio (y con ello lee sus archivos).
+     * @return Repositorio cargado, cuando esté listo.
+     */
+    <T> CompletableFuture<T> cargar(String nombre, Supplier<T> constructor) {
+        synchronized (tiemposMs) {
+            tiemposMs.put(nombre, null);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            long inicioCarga = System.nanoTime();
+            T repositorio = constructor.get();
+            long ms = (System.nanoTime() - inicioCarga) / 1_000_000;
+            synchronized (tiemposMs) {
+                tiemposMs.put(nombre, ms);
+            }
+            System.out.printf("✓ %s cargado en %d ms (%s)%n", nombre, ms, Thread.currentThread().getName());
+            progreso.accept(nombre + " listo");
+            return repositorio;
+        }, pool);
+    }
+
+    /**
+     * Libera el pool e imprime el resumen de tiempos. Se llama cuando todas
+     * las cargas terminaron.
+     */
+    void finalizar() {
+        pool.shutdown();
+        long totalMs = (System.nanoTime() - inicio) / 1_000_000;
+        StringBuilder resumen = new StringBuilder("Arranque de repositorios: " + totalMs + " ms en total");
+        synchronized (tiemposMs) {
+            for (Map.Entry<String, Long> tiempo : tiemposMs.entrySet()) {
+                resumen.append("\n  - ").append(tiempo.getKey()).append(": ")
+                        .append(tiempo.getValue() == null ? "sin terminar" : tiempo.getValue() + " ms");
+            }
+        }
+        System.out.println(resumen);
+    }
+}
@@ -3,11 +3,12 @@
  * Clase: MainApp
  * Punto de entrada de la aplicación. Inicializa los repositorios,servicios y controladores, luego lanza la ventana principal del sistema.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.0
+ * @version 1.7
  */
 
 package main;
 
+import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 import view.MainWindow;
 import controller.AuthController;
@@ -23,28 +24,82 @@ import persistence.UserRepository;
 import persistence.PublicacionRepository;
 import persistence.OfertaRepository;
 import persistence.ReporteRepository;
+import persistence.PujaAutomaticaRepository;
+import persistence.ServicioPersistencia;
+import persistence.ConfiguracionRepository;
+
+import java.util.concurrent.CompletableFuture;
 
 public class MainApp {
-    
+
+    // Hilos para cargar los repositorios independientes a la vez
+    private static final int HILOS_ARRANQUE = 4;
+
     /**
      * Método principal del programa. Se ejecuta al iniciar la aplicación.
      * Se usa SwingUtilities.invokeLater para asegurar que la interfaz gráfica se construya en el hilo de eventos de Swing (Event Dispatch Thread).
+     *
+     * La ventana se muestra de inmediato en estado de carga; los repositorios
+     * se leen en paralelo fuera del hilo de eventos y, al terminar, se arman
+     * los servicios y controladores y se completa la ventana.
      */
     public static void main(String[] args) {
+        // Escribir lo pendiente del escritor en segundo plano antes de salir
+        Runtime.getRuntime().addShutdownHook(new Thread(
+                () -> ServicioPersistencia.getInstancia().detener(), "cierre-persistencia"));
+
         SwingUtilities.invokeLater(() -> {
-            // 1. Repositorios
-            
-            /**
-             * Repositorios encargados de almacenar y cargar datos. Funcionan como la capa de persistencia.
-             */
-            UserRepository userRepo = new UserRepository();
-            PublicacionRepository pubRepo = new PublicacionRepository();
-            OfertaRepository ofertaRepo = new OfertaRepository();
-            persistence.ChatRepository chatRepo = new persistence.ChatFileRepository();
-            ReporteRepository reporteRepo = new ReporteRepository();
+            MainWindow main = new MainWindow();
+            main.setVisible(true);
+            arrancar(main);
+        });
+    }
+
+    /**
+     * Carga los repositorios en paralelo y, cuando todos están listos,
+     * inicializa la ventana principal en el hilo de eventos.
+     */
+    private static void arrancar(MainWindow main) {
+        ArranqueRepositorios arranque = new ArranqueRepositorios(HILOS_ARRANQUE,
+                mensaje -> SwingUtilities.invokeLater(() -> main.mostrarEstadoCarga(mensaje)));
+
+        // 1. Repositorios
+
+        /**
+         * Repositorios encargados de almacenar y cargar datos. Funcionan como la capa de persistencia.
+         * Ninguno depende de otro para cargar, así que se leen a la vez.
+         */
+        CompletableFuture<UserRepository> userRepoF = arranque.cargar("Usuarios", UserRepository::new);
+        CompletableFuture<PublicacionRepository> pubRepoF = arranque.cargar("Publicaciones", PublicacionRepository::new);
+        CompletableFuture<OfertaRepository> ofertaRepoF = arranque.cargar("Ofertas", OfertaRepository::new);
+        CompletableFuture<persistence.ChatRepository> chatRepoF = arranque.cargar("Chats",
+                persistence.ChatFileRepository::new);
+        CompletableFuture<ReporteRepository> reporteRepoF = arranque.cargar("Reportes", ReporteRepository::new);
+        CompletableFuture<PujaAutomaticaRepository> pujaAutoRepoF = arranque.cargar("Pujas automáticas",
+                PujaAutomaticaRepository::new);
+
+        CompletableFuture.allOf(userRepoF, pubRepoF, ofertaRepoF, chatRepoF, reporteRepoF, pujaAutoRepoF).whenComplete((ok, error) -> {
+            arranque.finalizar();
+            if (error != null) {
+                System.err.println(" ERROR: No se pudieron cargar los datos: " + error.getMessage());
+                error.printStackTrace();
+                SwingUtilities.invokeLater(() -> {
+                    JOptionPane.showMessageDialog(main, "No se pudieron cargar los datos de la aplicación.",
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                    main.mostrarEstadoCarga("Error al cargar los datos");
+                });
+                return;
+            }
+
+            UserRepository userRepo = userRepoF.join();
+            PublicacionRepository pubRepo = pubRepoF.join();
+            OfertaRepository ofertaRepo = ofertaRepoF.join();
+            persistence.ChatRepository chatRepo = chatRepoF.join();
+            ReporteRepository reporteRepo = reporteRepoF.join();
+            PujaAutomaticaRepository pujaAutoRepo = pujaAutoRepoF.join();
 
             // 2. Servicios
-            
+
             /**
              * Servicios que contienen la lógica del negocio:
              * - Manejo de usuarios
@@ -55,13 +110,24 @@ public class MainApp {
              */
             UserService userService = new UserService(userRepo);
             PublicacionService pubService = new PublicacionService(pubRepo, userService, ofertaRepo);
-            OfertaService ofertaService = new OfertaService(ofertaRepo, userService, pubService);
-            AdminService adminService = new AdminService(userRepo, pubRepo, ofertaRepo);
+            OfertaService ofertaService = new OfertaService(ofertaRepo, pujaAutoRepo, userService, pubService);
+            AdminService adminService = new AdminService(userRepo, pubRepo, ofertaRepo, pujaAutoRepo);
             ReporteService reporteService = new ReporteService(reporteRepo, userRepo);
 
+            // Las ofertas pendientes expiran según la configuración vigente. La
+            // configuración es compartida, así que los cambios hechos desde
+            // las vistas se ven aquí sin volver a leer el archivo
+            ConfiguracionRepository configRepo = new ConfiguracionRepository();
+            ofertaService.iniciarExpiracionOfertas(
+                    () -> configRepo.obtenerConfiguracion().getTiempoExpiracionOfertaHoras());
+
+            // Pujas automáticas de subastas cerradas o eliminadas antes de
+            // que su cierre las descartara
+            ofertaService.descartarPujasAutomaticasInactivas();
+
             // 3. Controladores
 
-             /**
+            /**
              * Los controladores conectan la vista con los servicios y permiten que la interfaz gráfica invoque acciones del sistema
              */
             controller.ChatController chatController = new controller.ChatController(chatRepo, ofertaRepo, pubRepo);
@@ -71,13 +137,16 @@ public class MainApp {
             ReporteController reporteController = new ReporteController(reporteService);
 
             // 4. Vista Principal
-            
+
             /**
-             * Se crea la ventana principal del sistema (GUI) enviando todos los controladores que necesita para funciona
+             * Se completa la ventana principal del sistema (GUI) enviando todos los controladores que necesita para funcionar
              */
-            MainWindow main = new MainWindow(authController, pubController, chatController, adminController,
-                    reporteController);
-            main.setVisible(true);
+            SwingUtilities.invokeLater(() -> {
+                main.inicializar(authController, pubController, chatController, adminController,
+                        reporteController);
+                // Las subastas vencidas mientras la aplicación estaba cerrada se cierran ahora
+                pubController.iniciarCierreAutomaticoSubastas();
+            });
         });
     }
 }
@@ -0,0 +1,49 @@
+/**
+ * Clase: PaginaPublicaciones
+ * Página de resultados del catálogo de publicaciones.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.0
+ */
+
+package model;
+
+import java.util.Collections;
+import java.util.List;
+
+public class PaginaPublicaciones {
+
+	private final List<Publicacion> publicaciones;
+	// Posición de la primera publicación de la página dentro del resultado
+	private final int desde;
+	// Cantidad total de publicaciones que cumplen la consulta
+	private final int total;
+
+	public PaginaPublicaciones(List<Publicacion> publicaciones, int desde, int total) {
+		this.publicaciones = Collections.unmodifiableList(publicaciones);
+		this.desde = desde;
+		this.total = total;
+	}
+
+	public List<Publicacion> getPublicaciones() {
+		return publicaciones;
+	}
+
+	public int getDesde() {
+		return desde;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Desplazamiento con que se pide la página siguiente.
+	 */
+	public int getSiguienteDesde() {
+		return desde + publicaciones.size();
+	}
+
+	public boolean hayMas() {
+		return getSiguienteDesde() < total;
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ * Clase: PujaAutomatica
+ * Modelo de pujas automáticas (con tope) sobre una subasta.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.0
+ */
+
+package model;
+
+import java.util.Date;
+
+/**
+ * Monto máximo que un usuario está dispuesto a pagar en una subasta. El
+ * sistema puja por él con el incremento mínimo cada vez que otro lo supera,
+ * sin pasar del máximo. El máximo no se muestra a los demás usuarios.
+ */
+public class PujaAutomatica implements java.io.Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String idPublicacion;
+    private String idOfertante;
+    private double montoMaximo;
+    private Date fechaRegistro;
+
+    /**
+     * Crea una puja automática.
+     *
+     * @param idPublicacion Subasta sobre la que se puja.
+     * @param idOfertante   Usuario que registra la puja.
+     * @param montoMaximo   Monto máximo que se puede ofertar en su nombre.
+     */
+    public PujaAutomatica(String idPublicacion, String idOfertante, double montoMaximo) {
+        this.idPublicacion = idPublicacion;
+        this.idOfertante = idOfertante;
+        this.montoMaximo = montoMaximo;
+        this.fechaRegistro = new Date();
+    }
+
+    public String getIdPublicacion() {
+        return idPublicacion;
+    }
+
+    public String getIdOfertante() {
+        return idOfertante;
+    }
+
+    public double getMontoMaximo() {
+        return montoMaximo;
+    }
+
+    public void setMontoMaximo(double montoMaximo) {
+        this.montoMaximo = montoMaximo;
+    }
+
+    /**
+     * Fecha de registro: ante dos máximos iguales gana el que se registró
+     * primero.
+     */
+    public Date getFechaRegistro() {
+        return fechaRegistro;
+    }
+
+    public void setFechaRegistro(Date fechaRegistro) {
+        this.fechaRegistro = fechaRegistro;
+    }
+}
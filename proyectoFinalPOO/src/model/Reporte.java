@@ -2,7 +2,7 @@
  * Clase: ConfiguracionGlobal
  * Modelo de reportes
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.1
+ * @version 1.2
  */
 
 package model;
@@ -106,4 +106,8 @@ public class Reporte implements java.io.Serializable {
     public void setResolucion(String resolucion) {
         this.resolucion = resolucion;
     }
+
+    public void setFechaCreacion(Date fechaCreacion) {
+        this.fechaCreacion = fechaCreacion;
+    }
 }
@@ -2,7 +2,7 @@
  * Clase: User
  * Modelo que representa un usuario del sistema.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.2
+ * @version 1.3
  */
 
 package model;
@@ -119,6 +119,8 @@ public class User implements Serializable {
      * Retorna historial como lista inmutable para evitar manipulaciones externas.
      */
     public List<String> getHistorialTransacciones() {
+        if (historialTransacciones == null)
+            return new ArrayList<>();
         return Collections.unmodifiableList(historialTransacciones);
     }
 
@@ -201,6 +203,15 @@ public class User implements Serializable {
         return numeroCalificaciones;
     }
 
+    /**
+     * Restablece la reputación acumulada. Solo lo usa la persistencia al
+     * reconstruir un usuario guardado.
+     */
+    public void restaurarReputacion(double reputacion, int numeroCalificaciones) {
+        this.reputacion = reputacion;
+        this.numeroCalificaciones = numeroCalificaciones;
+    }
+
     public RolUsuario getRol() {
         return rol;
     }
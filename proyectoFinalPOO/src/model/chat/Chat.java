@@ -2,13 +2,14 @@
  * Clase: Chat
  * Modelo del chat
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.3
+ * @version 1.5
  */
 package model.chat;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Supplier;
 
 import model.User;
 
@@ -29,6 +30,12 @@ public class Chat implements java.io.Serializable {
     private List<Mensaje> listaMensajes;
     private boolean tieneMensajesNoLeidos;
 
+    // Carga diferida del historial: mientras listaMensajes sea null solo se
+    // conocen el último mensaje y la cantidad, leídos de la cabecera.
+    private transient Supplier<List<Mensaje>> cargadorMensajes;
+    private transient Mensaje ultimoMensajeConocido;
+    private transient int cantidadMensajesConocida;
+
     /**
      * Constructor principal de la clase Chat.
      *
@@ -55,6 +62,29 @@ public class Chat implements java.io.Serializable {
         this.tieneMensajesNoLeidos = false;
     }
 
+    /**
+     * Constructor para reconstruir un chat desde su cabecera persistida.
+     * El historial de mensajes se carga la primera vez que se solicita.
+     *
+     * @param identificadorChat     Identificador único del chat.
+     * @param usuarioEmisor         Usuario que creó el chat.
+     * @param usuarioReceptor       Contraparte del chat.
+     * @param tieneMensajesNoLeidos Bandera de mensajes no leídos.
+     * @param ultimoMensaje         Último mensaje enviado (o null).
+     * @param cantidadMensajes      Cantidad total de mensajes.
+     * @param cargadorMensajes      Proveedor del historial completo.
+     */
+    public Chat(String identificadorChat, User usuarioEmisor, User usuarioReceptor,
+            boolean tieneMensajesNoLeidos, Mensaje ultimoMensaje, int cantidadMensajes,
+            Supplier<List<Mensaje>> cargadorMensajes) {
+        this(identificadorChat, usuarioEmisor, usuarioReceptor);
+        this.listaMensajes = null;
+        this.tieneMensajesNoLeidos = tieneMensajesNoLeidos;
+        this.ultimoMensajeConocido = ultimoMensaje;
+        this.cantidadMensajesConocida = cantidadMensajes;
+        this.cargadorMensajes = cargadorMensajes;
+    }
+
  
     // MÉTODOS DE NEGOCIO
     
@@ -68,7 +98,13 @@ public class Chat implements java.io.Serializable {
     public void agregarMensaje(Mensaje mensaje) {
         if (mensaje == null)
             return;
-        this.listaMensajes.add(mensaje);
+        if (mensajesCargados()) {
+            this.listaMensajes.add(mensaje);
+        } else {
+            // El historial sigue en disco: basta con actualizar el resumen
+            this.ultimoMensajeConocido = mensaje;
+            this.cantidadMensajesConocida++;
+        }
         this.tieneMensajesNoLeidos = true;
     }
 
@@ -83,6 +119,9 @@ public class Chat implements java.io.Serializable {
      * Retorna el último mensaje del chat (o null si no hay mensajes).
      */
     public Mensaje getUltimoMensaje() {
+        if (!mensajesCargados()) {
+            return ultimoMensajeConocido;
+        }
         if (listaMensajes.isEmpty()) {
             return null;
         }
@@ -115,15 +154,50 @@ public class Chat implements java.io.Serializable {
         return null; // No pertenece al chat
     }
 
+    /**
+     * Clave de la pareja de usuarios, independiente de quién sea el emisor.
+     * Dos chats con la misma clave son el mismo chat.
+     */
+    public static String claveDePareja(User usuarioA, User usuarioB) {
+        String idA = usuarioA.getId();
+        String idB = usuarioB.getId();
+        return idA.compareTo(idB) <= 0 ? idA + "|" + idB : idB + "|" + idA;
+    }
+
     /**
      * Obtiene una copia inmutable de la lista de mensajes del chat.
      *
      * @return Lista de mensajes (no modificable externamente).
      */
     public List<Mensaje> getListaMensajes() {
+        asegurarMensajesCargados();
         return Collections.unmodifiableList(listaMensajes);
     }
 
+    /**
+     * Retorna la cantidad de mensajes sin necesidad de cargar el historial.
+     */
+    public int getCantidadMensajes() {
+        return mensajesCargados() ? listaMensajes.size() : cantidadMensajesConocida;
+    }
+
+    /**
+     * Indica si el historial de mensajes ya está en memoria.
+     */
+    public boolean mensajesCargados() {
+        return listaMensajes != null;
+    }
+
+    private void asegurarMensajesCargados() {
+        if (mensajesCargados()) {
+            return;
+        }
+        List<Mensaje> cargados = (cargadorMensajes != null) ? cargadorMensajes.get() : null;
+        this.listaMensajes = (cargados != null) ? new ArrayList<>(cargados) : new ArrayList<>();
+        this.cargadorMensajes = null;
+        this.ultimoMensajeConocido = null;
+    }
+
 
     // GETTERS
    
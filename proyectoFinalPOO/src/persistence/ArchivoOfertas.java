@@ -0,0 +1,157 @@
+/**
+ * Clase: ArchivoOfertas
+ * Archivo frío de ofertas retiradas del repositorio principal.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.1
+ */
+
+package persistence;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import model.Oferta;
+
+/**
+ * Ofertas que ya no se consultan en el día a día (por ejemplo, las
+ * expiradas). Se guardan en un archivo de solo anexado, con el mismo
+ * formato de registro que los segmentos de chat: longitud, oferta
+ * serializada y CRC32.
+ *
+ * No se carga al iniciar: solo se lee si alguien pide las ofertas
+ * archivadas. El fsync de cada anexado lo hace el escritor en segundo
+ * plano, una vez por lote y antes de los volcados de ese lote. Un
+ * registro incompleto al final (escritura interrumpida) se descarta
+ * antes del siguiente anexado.
+ */
+class ArchivoOfertas {
+
+    private final File archivo;
+
+    // Longitud con registros completos; -1 hasta validar el archivo
+    private long longitudValida = -1;
+
+    ArchivoOfertas(String ruta) {
+        this.archivo = new File(ruta);
+    }
+
+    /**
+     * Anexa ofertas al final del archivo y pide su fsync al escritor en
+     * segundo plano.
+     */
+    synchronized void anexar(List<Oferta> ofertas) throws IOException {
+        if (ofertas.isEmpty()) {
+            return;
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream salida = new DataOutputStream(buffer);
+        for (Oferta oferta : ofertas) {
+            byte[] datos = Persistencia.serializar(oferta);
+            salida.writeInt(datos.length);
+            salida.write(datos);
+            salida.writeLong(calcularCrc(datos));
+        }
+        salida.flush();
+
+        if (longitudValida < 0) {
+            longitudValida = recorrer(null);
+        }
+
+        Persistencia.crearDirectorioPadre(archivo);
+        try (RandomAccessFile destino = new RandomAccessFile(archivo, "rw")) {
+            if (destino.length() != longitudValida) {
+                destino.setLength(longitudValida);
+            }
+            destino.seek(longitudValida);
+            destino.write(buffer.toByteArray());
+        }
+        longitudValida += buffer.size();
+        ServicioPersistencia.getInstancia().programarSincronizacion(archivo.getPath(), this::sincronizar);
+    }
+
+    /**
+     * Fuerza a disco lo anexado al archivo.
+     */
+    private synchronized void sincronizar() throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo.toPath(), StandardOpenOption.WRITE)) {
+            canal.force(false);
+        }
+    }
+
+    /**
+     * Lee todas las ofertas archivadas, en el orden en que se archivaron.
+     */
+    synchronized List<Oferta> leerTodas() throws IOException {
+        List<Oferta> ofertas = new ArrayList<>();
+        longitudValida = recorrer(ofertas);
+        return ofertas;
+    }
+
+    /**
+     * Recorre los registros válidos del archivo.
+     *
+     * @param destino Lista donde dejar las ofertas leídas, o null para solo
+     *                validar.
+     * @return Longitud ocupada por los registros completos.
+     */
+    private long recorrer(List<Oferta> destino) throws IOException {
+        if (!archivo.exists()) {
+            return 0;
+        }
+
+        long leidos = 0;
+        try (DataInputStream entrada = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(archivo)))) {
+            while (true) {
+                int longitud;
+                try {
+                    longitud = entrada.readInt();
+                } catch (EOFException fin) {
+                    break;
+                }
+                if (longitud < 0 || longitud > archivo.length() - leidos) {
+                    break;
+                }
+                byte[] datos = new byte[longitud];
+                long crc;
+                try {
+                    entrada.readFully(datos);
+                    crc = entrada.readLong();
+                } catch (EOFException incompleto) {
+                    break;
+                }
+                if (crc != calcularCrc(datos)) {
+                    break;
+                }
+                if (destino != null) {
+                    try {
+                        destino.add((Oferta) Persistencia.deserializar(datos));
+                    } catch (ClassNotFoundException | ClassCastException e) {
+                        System.err.println("Oferta archivada ilegible: " + e.getMessage());
+                    }
+                }
+                leidos += 4 + longitud + 8;
+            }
+        }
+        return leidos;
+    }
+
+    private static long calcularCrc(byte[] datos) {
+        CRC32 crc = new CRC32();
+        crc.update(datos);
+        return crc.getValue();
+    }
+}
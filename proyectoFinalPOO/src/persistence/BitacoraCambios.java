@@ -0,0 +1,451 @@
+/**
+ * Clase: BitacoraCambios
+ * Bitácora de escritura anticipada para repositorios basados en mapas.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.5
+ */
+
+package persistence;
+
+import java.io.*;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Registra cada cambio de un repositorio como un registro anexado al final
+ * de un archivo de bitácora, en lugar de reescribir el mapa completo.
+ *
+ * Estructura en disco:
+ * - Instantánea: el mapa completo serializado (o en formato mapeado).
+ * - Bitácora: registros GUARDAR/ELIMINAR posteriores a la instantánea.
+ *
+ * Un hilo compactador en segundo plano vuelca periódicamente el estado en
+ * una nueva instantánea y descarta la bitácora ya incorporada. Al iniciar
+ * se carga la instantánea y se reproducen encima los registros pendientes.
+ *
+ * Cada registro pide el fsync del segmento a {@link ServicioPersistencia}:
+ * el escritor en segundo plano lo hace fuera del candado, una sola vez
+ * para todos los registros de su lote.
+ *
+ * Si el repositorio indica etiquetas para sus objetos, la instantánea se
+ * escribe con {@link InstantaneaMapeada}: al cargar solo se lee su índice
+ * y cada objeto se decodifica al consultarlo.
+ *
+ * La compactación no lee los objetos del repositorio, que la interfaz
+ * modifica en sitio antes de guardarlos: escribe los bytes capturados al
+ * registrar cada cambio (o al cargar), y los de la instantánea anterior
+ * para los objetos que no cambiaron.
+ *
+ * Las operaciones de registro se ejecutan bajo el candado del repositorio
+ * dueño.
+ */
+public class BitacoraCambios<V> {
+
+    private static final byte OP_GUARDAR = 1;
+    private static final byte OP_ELIMINAR = 2;
+
+    private static final String[] SIN_ETIQUETAS = new String[0];
+
+    // Compactar cuando la bitácora acumule esta cantidad de registros
+    private static final int UMBRAL_COMPACTACION = 1000;
+    private static final long PERIODO_COMPACTACION_SEG = 30;
+
+    private final String rutaInstantanea;
+    private final File archivoBitacora;
+    // Segmento cerrado que se está incorporando a una nueva instantánea
+    private final File archivoEnCompactacion;
+
+    private final Object candado;
+    private final Supplier<Map<String, V>> estadoActual;
+    // Etiquetas para el índice de la instantánea mapeada (null = formato de mapa completo)
+    private final Function<V, String[]> etiquetas;
+    private final ScheduledExecutorService compactador;
+
+    private FileOutputStream archivoSalida;
+    private DataOutputStream salida;
+    private int registrosSinCompactar;
+    // Bytes de cada objeto tal como se registró, para compactar sin leer
+    // los objetos. Con una instantánea mapeada solo contiene los cambios
+    // posteriores a ella; el resto se toma del archivo.
+    private final Map<String, InstantaneaMapeada.Registro> codificados = new HashMap<>();
+
+    private boolean compactacionSolicitada;
+    // La instantánea en disco está en otro formato y debe reescribirse
+    private boolean instantaneaDesactualizada;
+
+    /**
+     * @param rutaInstantanea Ruta del archivo con el mapa completo.
+     * @param candado         Candado del repositorio que protege el mapa.
+     * @param estadoActual    Proveedor del mapa vigente del repositorio.
+     */
+    public BitacoraCambios(String rutaInstantanea, Object candado, Supplier<Map<String, V>> estadoActual) {
+        this(rutaInstantanea, candado, estadoActual, null);
+    }
+
+    /**
+     * @param rutaInstantanea Ruta del archivo con el mapa completo.
+     * @param candado         Candado del repositorio que protege el mapa.
+     * @param estadoActual    Proveedor del mapa vigente del repositorio.
+     * @param etiquetas       Valores de cada objeto que se guardan en el
+     *                        índice de la instantánea mapeada, o null para
+     *                        usar el formato de mapa completo.
+     */
+    public BitacoraCambios(String rutaInstantanea, Object candado, Supplier<Map<String, V>> estadoActual,
+            Function<V, String[]> etiquetas) {
+        this.rutaInstantanea = rutaInstantanea;
+        this.etiquetas = etiquetas;
+        this.archivoBitacora = new File(rutaSinExtension(rutaInstantanea) + ".log");
+        this.archivoEnCompactacion = new File(archivoBitacora.getPath() + ".compactando");
+        this.candado = candado;
+        this.estadoActual = estadoActual;
+
+        String nombreHilo = "compactador-" + new File(rutaInstantanea).getName();
+        this.compactador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, nombreHilo);
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        this.compactador.scheduleWithFixedDelay(this::compactar,
+                PERIODO_COMPACTACION_SEG, PERIODO_COMPACTACION_SEG, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Carga la instantánea y reproduce encima los segmentos de bitácora.
+     * Debe invocarse una sola vez, antes de registrar cambios.
+     *
+     * Con una instantánea mapeada, el mapa devuelto es un
+     * {@link MapaPerezoso}: sus objetos se decodifican al consultarlos.
+     *
+     * @return Mapa con el estado reconstruido.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, V> cargar() throws IOException, ClassNotFoundException {
+        Map<String, V> estado = new HashMap<>();
+
+        File archivoInstantanea = new File(rutaInstantanea);
+        if (InstantaneaMapeada.esFormatoMapeado(archivoInstantanea)) {
+            estado = InstantaneaMapeada.abrir(rutaInstantanea);
+        } else if (archivoInstantanea.exists()) {
+            Object cargado = Persistencia.cargarObjeto(rutaInstantanea);
+            if (cargado instanceof Map<?, ?>) {
+                estado = (Map<String, V>) cargado;
+            }
+        }
+        // Pasar al formato mapeado en la próxima compactación
+        instantaneaDesactualizada = (etiquetas != null) && archivoInstantanea.exists()
+                && !(estado instanceof MapaPerezoso);
+
+        // Primero el segmento de una compactación interrumpida, luego el actual
+        reproducir(archivoEnCompactacion, estado);
+        long longitudValida = reproducir(archivoBitacora, estado);
+
+        if (!(estado instanceof MapaPerezoso)) {
+            for (Map.Entry<String, V> entrada : estado.entrySet()) {
+                if (!codificados.containsKey(entrada.getKey())) {
+                    codificar(entrada.getKey(), Persistencia.serializar(entrada.getValue()), entrada.getValue());
+                }
+            }
+        }
+
+        // Descartar un registro final incompleto (escritura interrumpida)
+        if (archivoBitacora.exists() && archivoBitacora.length() > longitudValida) {
+            try (RandomAccessFile raf = new RandomAccessFile(archivoBitacora, "rw")) {
+                raf.setLength(longitudValida);
+            }
+        }
+
+        return estado;
+    }
+
+    /**
+     * Anexa un registro de guardado a la bitácora.
+     */
+    public void registrarGuardado(String clave, V valor) throws IOException {
+        byte[] bytes = Persistencia.serializar(valor);
+        escribirRegistro(OP_GUARDAR, clave, bytes);
+        codificar(clave, bytes, valor);
+    }
+
+    /**
+     * Anexa un registro de eliminación a la bitácora.
+     */
+    public void registrarEliminacion(String clave) throws IOException {
+        escribirRegistro(OP_ELIMINAR, clave, new byte[0]);
+        codificados.remove(clave);
+    }
+
+    private void codificar(String clave, byte[] bytes, V valor) {
+        String[] etiquetasValor = (etiquetas != null) ? etiquetas.apply(valor) : SIN_ETIQUETAS;
+        codificados.put(clave, InstantaneaMapeada.Registro.deBytes(bytes, etiquetasValor));
+    }
+
+    private void escribirRegistro(byte operacion, String clave, byte[] valor) throws IOException {
+        if (salida == null) {
+            Persistencia.crearDirectorioPadre(archivoBitacora);
+            archivoSalida = new FileOutputStream(archivoBitacora, true);
+            salida = new DataOutputStream(new BufferedOutputStream(archivoSalida));
+        }
+
+        byte[] bytesClave = clave.getBytes(StandardCharsets.UTF_8);
+
+        salida.writeByte(operacion);
+        salida.writeShort(bytesClave.length);
+        salida.write(bytesClave);
+        salida.writeInt(valor.length);
+        salida.write(valor);
+        salida.writeLong(calcularCrc(operacion, bytesClave, valor));
+        salida.flush();
+
+        registrosSinCompactar++;
+        if (registrosSinCompactar >= UMBRAL_COMPACTACION && !compactacionSolicitada) {
+            compactacionSolicitada = true;
+            compactador.execute(this::compactar);
+        }
+        ServicioPersistencia.getInstancia().programarSincronizacion(archivoBitacora.getPath(), this::sincronizar);
+    }
+
+    /**
+     * Fuerza a disco el segmento actual. El fsync se hace fuera del candado
+     * para no bloquear a los hilos que siguen anexando registros.
+     */
+    private void sincronizar() throws IOException {
+        FileChannel canal;
+        synchronized (candado) {
+            if (salida == null) {
+                // El segmento se rotó y se forzó a disco al cerrarlo
+                return;
+            }
+            salida.flush();
+            canal = archivoSalida.getChannel();
+        }
+        try {
+            canal.force(false);
+        } catch (ClosedChannelException e) {
+            // Rotado entre tanto: rotarSegmento ya lo forzó antes de cerrarlo
+        }
+    }
+
+    /**
+     * Incorpora la bitácora en una nueva instantánea.
+     *
+     * Bajo el candado solo se eligen los bytes de cada clave y se rota el
+     * segmento; la escritura a disco de la instantánea ocurre fuera del
+     * candado para no bloquear al hilo de la interfaz.
+     */
+    public void compactar() {
+        Map<String, V> estado;
+        Map<String, InstantaneaMapeada.Registro> registros;
+        synchronized (candado) {
+            compactacionSolicitada = false;
+            if (registrosSinCompactar == 0 && !instantaneaDesactualizada) {
+                return;
+            }
+            try {
+                estado = estadoActual.get();
+                registros = planificar(estado);
+                rotarSegmento();
+                instantaneaDesactualizada = false;
+            } catch (IOException e) {
+                System.err.println("No se pudo preparar la compactación de " + rutaInstantanea);
+                e.printStackTrace();
+                return;
+            }
+        }
+
+        try {
+            if (etiquetas != null) {
+                Map<String, InstantaneaMapeada.Registro> nuevos = InstantaneaMapeada.guardar(rutaInstantanea, registros);
+                reubicar(estado, registros, nuevos);
+            } else {
+                Persistencia.guardarBytes(rutaInstantanea, serializarCopia(registros));
+            }
+            // La instantánea ya contiene estos cambios
+            if (!archivoEnCompactacion.delete() && archivoEnCompactacion.exists()) {
+                System.err.println("No se pudo eliminar " + archivoEnCompactacion.getPath());
+            }
+        } catch (IOException e) {
+            // El segmento rotado se conserva y se reproducirá en el próximo arranque
+            System.err.println("Error al escribir la instantánea " + rutaInstantanea);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Elige los bytes que se escriben para cada clave del estado: los
+     * registrados con el último cambio o, si no cambió desde la instantánea
+     * mapeada, los de esa instantánea.
+     */
+    private Map<String, InstantaneaMapeada.Registro> planificar(Map<String, V> estado) throws IOException {
+        MapaPerezoso<V> perezoso = (estado instanceof MapaPerezoso) ? (MapaPerezoso<V>) estado : null;
+        Map<String, InstantaneaMapeada.Registro> registros = new LinkedHashMap<>(
+                Math.max(16, estado.size() * 4 / 3 + 1));
+        for (String clave : estado.keySet()) {
+            InstantaneaMapeada.Registro registro = codificados.get(clave);
+            if (registro == null && perezoso != null) {
+                registro = perezoso.registro(clave);
+            }
+            if (registro == null) {
+                // Aún sin registrar (el repositorio la registra después de
+                // otro fsync): entra en la instantánea con su registro
+                continue;
+            }
+            registros.put(clave, registro);
+        }
+        return registros;
+    }
+
+    /**
+     * Arma el mapa completo con copias decodificadas de los bytes elegidos.
+     */
+    private byte[] serializarCopia(Map<String, InstantaneaMapeada.Registro> registros) throws IOException {
+        Map<String, Object> copia = new HashMap<>(Math.max(16, registros.size() * 4 / 3 + 1));
+        try {
+            for (Map.Entry<String, InstantaneaMapeada.Registro> entrada : registros.entrySet()) {
+                copia.put(entrada.getKey(), Persistencia.deserializar(entrada.getValue().leer()));
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException("No se pudo copiar el registro para la instantánea", e);
+        }
+        return Persistencia.serializar(copia);
+    }
+
+    /**
+     * Hace que los objetos del estado apunten a la instantánea recién
+     * escrita, para que la anterior deje de estar referenciada y para
+     * descartar los bytes ya incorporados a ella.
+     */
+    private void reubicar(Map<String, V> estado, Map<String, InstantaneaMapeada.Registro> anteriores,
+            Map<String, InstantaneaMapeada.Registro> nuevos) {
+        if (!(estado instanceof MapaPerezoso)) {
+            return;
+        }
+        MapaPerezoso<V> perezoso = (MapaPerezoso<V>) estado;
+        synchronized (candado) {
+            for (Map.Entry<String, InstantaneaMapeada.Registro> entrada : anteriores.entrySet()) {
+                String clave = entrada.getKey();
+                InstantaneaMapeada.Registro nuevo = nuevos.get(clave);
+                if (codificados.get(clave) == entrada.getValue()) {
+                    // Sin cambios desde que se planificó
+                    codificados.remove(clave);
+                    perezoso.asignarOrigen(clave, nuevo);
+                } else {
+                    perezoso.reubicar(clave, entrada.getValue(), nuevo);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cierra el segmento actual y lo aparta para la compactación en curso.
+     * Si quedó un segmento de una compactación fallida, el actual se anexa a
+     * él para conservar el orden de los registros.
+     */
+    private void rotarSegmento() throws IOException {
+        if (salida != null) {
+            salida.flush();
+            archivoSalida.getChannel().force(false);
+            salida.close();
+            salida = null;
+            archivoSalida = null;
+        }
+        registrosSinCompactar = 0;
+
+        if (!archivoBitacora.exists()) {
+            return;
+        }
+
+        if (archivoEnCompactacion.exists()) {
+            try (InputStream entrada = new FileInputStream(archivoBitacora);
+                    OutputStream destino = new FileOutputStream(archivoEnCompactacion, true)) {
+                entrada.transferTo(destino);
+            }
+            if (!archivoBitacora.delete()) {
+                throw new IOException("No se pudo rotar " + archivoBitacora.getPath());
+            }
+        } else if (!archivoBitacora.renameTo(archivoEnCompactacion)) {
+            throw new IOException("No se pudo rotar " + archivoBitacora.getPath());
+        }
+    }
+
+    /**
+     * Reproduce un segmento sobre el mapa. Se detiene en el primer registro
+     * incompleto o corrupto.
+     *
+     * @return Cantidad de bytes válidos leídos del segmento.
+     */
+    @SuppressWarnings("unchecked")
+    private long reproducir(File segmento, Map<String, V> estado) throws IOException, ClassNotFoundException {
+        if (!segmento.exists()) {
+            return 0;
+        }
+
+        long longitudValida = 0;
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(segmento)))) {
+            while (true) {
+                byte operacion;
+                byte[] bytesClave;
+                byte[] valor;
+                long crcLeido;
+                try {
+                    operacion = entrada.readByte();
+                    bytesClave = entrada.readNBytes(entrada.readUnsignedShort());
+                    int longitud = entrada.readInt();
+                    if (longitud < 0) {
+                        break;
+                    }
+                    valor = entrada.readNBytes(longitud);
+                    if (valor.length < longitud) {
+                        break;
+                    }
+                    crcLeido = entrada.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (calcularCrc(operacion, bytesClave, valor) != crcLeido) {
+                    System.err.println("Registro corrupto en " + segmento.getPath() + ", se ignora el resto.");
+                    break;
+                }
+
+                String clave = new String(bytesClave, StandardCharsets.UTF_8);
+
+                if (operacion == OP_GUARDAR) {
+                    V objeto = (V) Persistencia.deserializar(valor);
+                    estado.put(clave, objeto);
+                    codificar(clave, valor, objeto);
+                } else if (operacion == OP_ELIMINAR) {
+                    estado.remove(clave);
+                    codificados.remove(clave);
+                }
+
+                longitudValida += 1 + 2 + bytesClave.length + 4 + valor.length + 8;
+                registrosSinCompactar++;
+            }
+        }
+        return longitudValida;
+    }
+
+    private static long calcularCrc(byte operacion, byte[] clave, byte[] valor) {
+        CRC32 crc = new CRC32();
+        crc.update(operacion);
+        crc.update(clave);
+        crc.update(valor);
+        return crc.getValue();
+    }
+
+    private static String rutaSinExtension(String ruta) {
+        int punto = ruta.lastIndexOf('.');
+        int separador = Math.max(ruta.lastIndexOf('/'), ruta.lastIndexOf(File.separatorChar));
+        return punto > separador ? ruta.substring(0, punto) : ruta;
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Clase: CabeceraChat
+ * Datos resumidos de un chat, sin su historial de mensajes.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.1
+ */
+
+package persistence;
+
+import java.io.Serializable;
+
+import model.User;
+import model.chat.Chat;
+import model.chat.Mensaje;
+
+/**
+ * Cabecera persistida de un chat: participantes, bandera de no leídos y
+ * último mensaje. Es lo único que se lee al cargar la lista de chats; el
+ * historial completo vive en el segmento de mensajes del chat.
+ */
+class CabeceraChat implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String identificadorChat;
+    private final User usuarioEmisor;
+    private final User usuarioReceptor;
+    private final boolean tieneMensajesNoLeidos;
+    private final Mensaje ultimoMensaje;
+    private final int cantidadMensajes;
+
+    // Bytes válidos del segmento de mensajes
+    private final long longitudSegmento;
+
+    // Posición del chat en el orden de creación
+    private final long orden;
+
+    CabeceraChat(Chat chat, int cantidadMensajes, long longitudSegmento, long orden) {
+        this.identificadorChat = chat.getIdentificadorChat();
+        this.usuarioEmisor = chat.getUsuarioEmisor();
+        this.usuarioReceptor = chat.getUsuarioReceptor();
+        this.tieneMensajesNoLeidos = chat.isTieneMensajesNoLeidos();
+        this.ultimoMensaje = chat.getUltimoMensaje();
+        this.cantidadMensajes = cantidadMensajes;
+        this.longitudSegmento = longitudSegmento;
+        this.orden = orden;
+    }
+
+    /**
+     * Constructor campo a campo, usado al decodificar el formato binario.
+     */
+    CabeceraChat(String identificadorChat, User usuarioEmisor, User usuarioReceptor,
+            boolean tieneMensajesNoLeidos, Mensaje ultimoMensaje, int cantidadMensajes,
+            long longitudSegmento, long orden) {
+        this.identificadorChat = identificadorChat;
+        this.usuarioEmisor = usuarioEmisor;
+        this.usuarioReceptor = usuarioReceptor;
+        this.tieneMensajesNoLeidos = tieneMensajesNoLeidos;
+        this.ultimoMensaje = ultimoMensaje;
+        this.cantidadMensajes = cantidadMensajes;
+        this.longitudSegmento = longitudSegmento;
+        this.orden = orden;
+    }
+
+    String getIdentificadorChat() {
+        return identificadorChat;
+    }
+
+    User getUsuarioEmisor() {
+        return usuarioEmisor;
+    }
+
+    User getUsuarioReceptor() {
+        return usuarioReceptor;
+    }
+
+    boolean isTieneMensajesNoLeidos() {
+        return tieneMensajesNoLeidos;
+    }
+
+    Mensaje getUltimoMensaje() {
+        return ultimoMensaje;
+    }
+
+    int getCantidadMensajes() {
+        return cantidadMensajes;
+    }
+
+    long getLongitudSegmento() {
+        return longitudSegmento;
+    }
+
+    long getOrden() {
+        return orden;
+    }
+}
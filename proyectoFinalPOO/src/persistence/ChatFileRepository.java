@@ -2,81 +2,324 @@
  * Clase: ChatFileRepository
  * Repositorio de persistencia.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.2
+ * @version 1.8
  */
 package persistence;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
 
 import model.User;
 import model.chat.Chat;
+import model.chat.Mensaje;
 
 /**
  * Implementación del repositorio de chats utilizando serialización de objetos
  * en archivo.
  *
- * El archivo se actualiza cada vez que se guarda o modifica un chat.
- * Esto es suficiente para el alcance del proyecto.
+ * Estructura en disco (directorio data/chats):
+ * - cabeceras.dat / cabeceras.log: participantes, bandera de no leídos y
+ *   último mensaje de cada chat (ver {@link BitacoraCambios}).
+ * - &lt;idChat&gt;.msg: segmento de solo anexado con los mensajes del chat.
+ *
+ * Enviar un mensaje solo anexa ese mensaje a su segmento. La lista de chats
+ * se arma con las cabeceras y el historial se lee al abrir la conversación.
+ *
+ * Los mensajes deben estar en disco antes que la cabecera que los cuenta:
+ * el escritor en segundo plano hace un fsync por segmento para todo su
+ * lote y solo después registra las cabeceras en la bitácora (ver
+ * {@link ServicioPersistencia#alSincronizar}).
  */
 public class ChatFileRepository implements ChatRepository {
 
-    // Nombre del archivo donde se almacenan los chats
-    private static final String RUTA_ARCHIVO = "data/chats.dat";
+    // Archivo único de versiones anteriores; se migra al nuevo formato
+    private static final String RUTA_ARCHIVO_LEGADO = "data/chats.dat";
+
+    private static final String DIRECTORIO_CHATS = "data/chats";
+    private static final String RUTA_CABECERAS = DIRECTORIO_CHATS + "/cabeceras.dat";
+    private static final String EXTENSION_SEGMENTO = ".msg";
+
+    // Chats por identificador, en orden de creación
+    private Map<String, Chat> chatsPorId;
+
+    // Chats por pareja de usuarios (sin importar el orden de emisor/receptor)
+    private Map<String, Chat> chatsPorPareja;
 
-    // Lista en memoria con todos los chats
-    private List<Chat> listaChats;
+    // Chats en los que participa cada usuario. Key: id del usuario
+    private Map<String, List<Chat>> chatsPorUsuario;
+
+    // Cabeceras persistidas por id de chat
+    private Map<String, CabeceraChat> cabeceras = new HashMap<>();
+    private final BitacoraCambios<CabeceraChat> bitacoraCabeceras;
+    private long siguienteOrden;
 
     /**
-     * Constructor principal. Carga los chats desde el archivo si existe;
+     * Constructor principal. Carga las cabeceras de los chats si existen;
      * en caso contrario, inicia con una lista vacía.
      */
     public ChatFileRepository() {
-        this.listaChats = new ArrayList<>();
+        this.bitacoraCabeceras = new BitacoraCambios<>(RUTA_CABECERAS, this, () -> cabeceras);
         cargarChats();
     }
 
-    @SuppressWarnings("unchecked")
-    private void cargarChats() {
-        File archivo = new File(RUTA_ARCHIVO);
-        if (!archivo.exists()) {
-            // No hay archivo aún, se empieza con lista vacía
-            this.listaChats = new ArrayList<>();
-            return;
+    private synchronized void cargarChats() {
+        try {
+            cabeceras = bitacoraCabeceras.cargar();
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+            // Si hay error, iniciamos con lista vacía
+            cabeceras = new HashMap<>();
+        }
+
+        siguienteOrden = 0;
+        for (CabeceraChat cabecera : cabeceras.values()) {
+            siguienteOrden = Math.max(siguienteOrden, cabecera.getOrden() + 1);
+        }
+
+        if (new File(RUTA_ARCHIVO_LEGADO).exists()) {
+            migrarArchivoLegado();
         }
 
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(archivo))) {
+        List<CabeceraChat> ordenadas = new ArrayList<>(cabeceras.values());
+        ordenadas.sort(Comparator.comparingLong(CabeceraChat::getOrden));
+
+        List<Chat> listaChats = new ArrayList<>();
+        for (CabeceraChat cabecera : ordenadas) {
+            String identificadorChat = cabecera.getIdentificadorChat();
+            listaChats.add(new Chat(identificadorChat,
+                    cabecera.getUsuarioEmisor(),
+                    cabecera.getUsuarioReceptor(),
+                    cabecera.isTieneMensajesNoLeidos(),
+                    cabecera.getUltimoMensaje(),
+                    cabecera.getCantidadMensajes(),
+                    () -> {
+                        // Los mensajes enviados aún pueden estar en la cola del escritor
+                        ServicioPersistencia.getInstancia().flush();
+                        return cargarMensajes(identificadorChat);
+                    }));
+        }
+
+        reconstruirIndices(listaChats);
+    }
+
+    /**
+     * Pasa los chats del archivo único anterior a cabeceras y segmentos.
+     * Al terminar, el archivo anterior se renombra para no migrarlo de nuevo.
+     */
+    @SuppressWarnings("unchecked")
+    private void migrarArchivoLegado() {
+        File archivoLegado = new File(RUTA_ARCHIVO_LEGADO);
+        List<Chat> listaChats;
+
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(archivoLegado))) {
             Object objeto = ois.readObject();
-            if (objeto instanceof List<?>) {
-                this.listaChats = (List<Chat>) objeto;
-            } else {
+            if (!(objeto instanceof List<?>)) {
                 // Formato inesperado → evitar romper la app
-                this.listaChats = new ArrayList<>();
+                return;
             }
+            listaChats = (List<Chat>) objeto;
         } catch (IOException | ClassNotFoundException e) {
             e.printStackTrace();
-            // Si hay error, iniciamos con lista vacía
-            this.listaChats = new ArrayList<>();
+            return;
+        }
+
+        try {
+            for (Chat chat : listaChats) {
+                if (chat == null) {
+                    continue;
+                }
+                CabeceraChat anterior = cabeceras.get(chat.getIdentificadorChat());
+                long orden = (anterior != null) ? anterior.getOrden() : siguienteOrden++;
+                List<Mensaje> mensajes = chat.getListaMensajes();
+                long longitud = anexarMensajes(chat.getIdentificadorChat(), 0, mensajes);
+                sincronizarSegmento(chat.getIdentificadorChat());
+                CabeceraChat cabecera = new CabeceraChat(chat, mensajes.size(), longitud, orden);
+                cabeceras.put(chat.getIdentificadorChat(), cabecera);
+                bitacoraCabeceras.registrarGuardado(chat.getIdentificadorChat(), cabecera);
+            }
+        } catch (IOException e) {
+            System.err.println(" ERROR: No se pudieron migrar los chats de " + RUTA_ARCHIVO_LEGADO);
+            e.printStackTrace();
+            return;
+        }
+
+        bitacoraCabeceras.compactar();
+
+        File respaldo = new File(RUTA_ARCHIVO_LEGADO + ".migrado");
+        if (!archivoLegado.renameTo(respaldo) && !archivoLegado.delete()) {
+            System.err.println(" ERROR: No se pudo retirar " + RUTA_ARCHIVO_LEGADO);
+        }
+        System.out.println("✓ Chats migrados a " + DIRECTORIO_CHATS + ": " + listaChats.size() + " chats");
+    }
+
+    /**
+     * Reconstruye los índices en memoria a partir de la lista persistida.
+     */
+    private void reconstruirIndices(List<Chat> listaChats) {
+        this.chatsPorId = new LinkedHashMap<>();
+        this.chatsPorPareja = new HashMap<>();
+        this.chatsPorUsuario = new HashMap<>();
+
+        for (Chat chat : listaChats) {
+            if (chat != null) {
+                indexarNuevo(chat);
+            }
         }
     }
 
     /**
-     * Guarda la lista actual de chats en el archivo de persistencia.
+     * Persiste la cabecera del chat y anexa a su segmento los mensajes en
+     * memoria que aún no estén en disco.
      */
-    private void guardarChatsEnArchivo() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(RUTA_ARCHIVO))) {
-            oos.writeObject(this.listaChats);
+    private void persistirChat(Chat chat) {
+        String identificadorChat = chat.getIdentificadorChat();
+        CabeceraChat actual = cabeceras.get(identificadorChat);
+
+        int persistidos = (actual != null) ? actual.getCantidadMensajes() : 0;
+        long longitud = (actual != null) ? actual.getLongitudSegmento() : 0;
+        long orden = (actual != null) ? actual.getOrden() : siguienteOrden++;
+
+        try {
+            int cantidad = chat.getCantidadMensajes();
+            if (chat.mensajesCargados() && cantidad > persistidos) {
+                List<Mensaje> pendientes = new ArrayList<>(
+                        chat.getListaMensajes().subList(persistidos, cantidad));
+                longitud = anexarMensajes(identificadorChat, longitud, pendientes);
+                programarSincronizacionSegmento(identificadorChat);
+                persistidos = cantidad;
+            }
+            registrarCabecera(chat, persistidos, longitud, orden);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Actualiza la cabecera en memoria (los siguientes anexados parten de
+     * su longitud) y la registra en la bitácora cuando el escritor termine
+     * el fsync de los segmentos de su lote.
+     */
+    private void registrarCabecera(Chat chat, int cantidadMensajes, long longitudSegmento, long orden) {
+        String identificadorChat = chat.getIdentificadorChat();
+        CabeceraChat cabecera = new CabeceraChat(chat, cantidadMensajes, longitudSegmento, orden);
+        cabeceras.put(identificadorChat, cabecera);
+        ServicioPersistencia.getInstancia().alSincronizar(() -> registrarEnBitacora(identificadorChat, cabecera));
+    }
+
+    private synchronized void registrarEnBitacora(String identificadorChat, CabeceraChat cabecera)
+            throws IOException {
+        bitacoraCabeceras.registrarGuardado(identificadorChat, cabecera);
+    }
+
+    private void programarSincronizacionSegmento(String identificadorChat) {
+        ServicioPersistencia.getInstancia().programarSincronizacion(
+                archivoSegmento(identificadorChat).getPath(), () -> sincronizarSegmento(identificadorChat));
+    }
+
+    /**
+     * Fuerza a disco lo anexado al segmento del chat.
+     */
+    private static void sincronizarSegmento(String identificadorChat) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivoSegmento(identificadorChat).toPath(),
+                StandardOpenOption.WRITE)) {
+            canal.force(false);
+        }
+    }
+
+    /**
+     * Anexa mensajes al segmento del chat a partir de la última longitud
+     * válida registrada en su cabecera. Cada registro guarda la longitud,
+     * el mensaje serializado y su CRC32. No hace fsync: el llamador lo pide
+     * antes de registrar la cabecera.
+     *
+     * @return Nueva longitud válida del segmento.
+     */
+    private long anexarMensajes(String identificadorChat, long longitudValida, List<Mensaje> mensajes)
+            throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream salida = new DataOutputStream(buffer);
+        for (Mensaje mensaje : mensajes) {
+            byte[] datos = Persistencia.serializar(mensaje);
+            salida.writeInt(datos.length);
+            salida.write(datos);
+            salida.writeLong(calcularCrc(datos));
+        }
+        salida.flush();
+
+        File segmento = archivoSegmento(identificadorChat);
+        Persistencia.crearDirectorioPadre(segmento);
+        try (RandomAccessFile archivo = new RandomAccessFile(segmento, "rw")) {
+            // Descartar restos de una escritura que no llegó a la cabecera
+            if (archivo.length() != longitudValida) {
+                archivo.setLength(longitudValida);
+            }
+            archivo.seek(longitudValida);
+            archivo.write(buffer.toByteArray());
+        }
+        return longitudValida + buffer.size();
+    }
+
+    /**
+     * Lee el historial completo de un chat desde su segmento.
+     */
+    private synchronized List<Mensaje> cargarMensajes(String identificadorChat) {
+        List<Mensaje> mensajes = new ArrayList<>();
+        CabeceraChat cabecera = cabeceras.get(identificadorChat);
+        File segmento = archivoSegmento(identificadorChat);
+        if (cabecera == null || !segmento.exists()) {
+            return mensajes;
+        }
+
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(segmento)))) {
+            long leidos = 0;
+            while (leidos < cabecera.getLongitudSegmento()) {
+                int longitud = entrada.readInt();
+                if (longitud < 0) {
+                    break;
+                }
+                byte[] datos = entrada.readNBytes(longitud);
+                if (datos.length < longitud || calcularCrc(datos) != entrada.readLong()) {
+                    System.err.println("Registro corrupto en " + segmento.getPath() + ", se ignora el resto.");
+                    break;
+                }
+                mensajes.add((Mensaje) Persistencia.deserializar(datos));
+                leidos += 4 + longitud + 8;
+            }
+        } catch (EOFException e) {
+            // Segmento más corto que lo indicado en la cabecera
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+        return mensajes;
+    }
+
+    private static File archivoSegmento(String identificadorChat) {
+        return new File(DIRECTORIO_CHATS, identificadorChat + EXTENSION_SEGMENTO);
+    }
+
+    private static long calcularCrc(byte[] datos) {
+        CRC32 crc = new CRC32();
+        crc.update(datos);
+        return crc.getValue();
+    }
+
     @Override
     public synchronized void guardarChat(Chat chat) {
         if (chat == null) {
@@ -87,54 +330,125 @@ public class ChatFileRepository implements ChatRepository {
         Chat chatExistente = buscarChatPorIdentificador(chat.getIdentificadorChat());
 
         if (chatExistente == null) {
-            listaChats.add(chat);
-        } else {
+            indexarNuevo(chat);
+        } else if (chatExistente != chat) {
             // Reemplazar la entrada existente por la versión actualizada
-            int index = listaChats.indexOf(chatExistente);
-            if (index != -1) {
-                listaChats.set(index, chat);
-            }
+            reemplazarEnIndices(chatExistente, chat);
         }
 
-        // Persistir cambios
-        guardarChatsEnArchivo();
+        // Persistir cambios en el escritor en segundo plano
+        ServicioPersistencia.getInstancia().encolar(() -> {
+            synchronized (this) {
+                persistirChat(chat);
+            }
+        });
     }
 
     @Override
-    public synchronized Chat buscarChatEntreUsuarios(User usuarioA, User usuarioB) {
-        if (usuarioA == null || usuarioB == null) {
-            return null;
+    public synchronized void agregarMensaje(Chat chat, Mensaje mensaje) {
+        if (chat == null || mensaje == null) {
+            return;
         }
 
-        for (Chat chat : listaChats) {
-            boolean coincideMismaPareja = (chat.getUsuarioEmisor().equals(usuarioA)
-                    && chat.getUsuarioReceptor().equals(usuarioB))
-                    || (chat.getUsuarioEmisor().equals(usuarioB) && chat.getUsuarioReceptor().equals(usuarioA));
-            if (coincideMismaPareja) {
-                return chat;
-            }
+        chat.agregarMensaje(mensaje);
+
+        CabeceraChat actual = cabeceras.get(chat.getIdentificadorChat());
+        if (actual == null || chatsPorId.get(chat.getIdentificadorChat()) != chat) {
+            // Chat nuevo o instancia distinta a la indexada
+            guardarChat(chat);
+            return;
         }
 
-        return null;
+        // Anexar solo este mensaje, en orden con los demás envíos
+        ServicioPersistencia.getInstancia().encolar(() -> {
+            synchronized (this) {
+                anexarNuevos(chat, List.of(mensaje));
+            }
+        });
     }
 
+    /**
+     * Agrega el lote en memoria y lo persiste en una sola tarea del escritor:
+     * un anexado por chat y un único fsync de cabeceras para todo el lote.
+     */
     @Override
-    public synchronized List<Chat> listarChatsDeUsuario(User usuario) {
-        List<Chat> resultado = new ArrayList<>();
+    public synchronized void agregarMensajes(Map<Chat, List<Mensaje>> mensajesPorChat) {
+        if (mensajesPorChat == null || mensajesPorChat.isEmpty()) {
+            return;
+        }
 
-        if (usuario == null) {
-            return resultado;
+        Map<Chat, List<Mensaje>> lote = new LinkedHashMap<>();
+        for (Map.Entry<Chat, List<Mensaje>> entrada : mensajesPorChat.entrySet()) {
+            Chat chat = entrada.getKey();
+            if (chat == null || entrada.getValue() == null || entrada.getValue().isEmpty()) {
+                continue;
+            }
+
+            Chat chatExistente = buscarChatPorIdentificador(chat.getIdentificadorChat());
+            if (chatExistente == null) {
+                indexarNuevo(chat);
+            } else if (chatExistente != chat) {
+                reemplazarEnIndices(chatExistente, chat);
+            }
+
+            List<Mensaje> mensajes = new ArrayList<>(entrada.getValue());
+            for (Mensaje mensaje : mensajes) {
+                chat.agregarMensaje(mensaje);
+            }
+            lote.put(chat, mensajes);
+        }
+        if (lote.isEmpty()) {
+            return;
         }
 
-        for (Chat chat : listaChats) {
-            boolean usuarioParticipa = chat.getUsuarioEmisor().equals(usuario)
-                    || chat.getUsuarioReceptor().equals(usuario);
-            if (usuarioParticipa) {
-                resultado.add(chat);
+        ServicioPersistencia.getInstancia().encolar(() -> {
+            synchronized (this) {
+                for (Map.Entry<Chat, List<Mensaje>> entrada : lote.entrySet()) {
+                    try {
+                        anexarNuevos(entrada.getKey(), entrada.getValue());
+                    } catch (IOException e) {
+                        // Un chat con error no impide guardar los demás del lote
+                        e.printStackTrace();
+                    }
+                }
             }
+        });
+    }
+
+    /**
+     * Anexa mensajes recién agregados al segmento del chat. Si el chat no
+     * tiene cabecera o su historial ya está en memoria, se persisten todos
+     * los mensajes pendientes de una vez.
+     */
+    private void anexarNuevos(Chat chat, List<Mensaje> mensajes) throws IOException {
+        CabeceraChat actual = cabeceras.get(chat.getIdentificadorChat());
+        if (actual == null || chat.mensajesCargados()) {
+            persistirChat(chat);
+            return;
+        }
+        long longitud = anexarMensajes(chat.getIdentificadorChat(), actual.getLongitudSegmento(), mensajes);
+        programarSincronizacionSegmento(chat.getIdentificadorChat());
+        registrarCabecera(chat, actual.getCantidadMensajes() + mensajes.size(), longitud,
+                actual.getOrden());
+    }
+
+    @Override
+    public synchronized Chat buscarChatEntreUsuarios(User usuarioA, User usuarioB) {
+        if (usuarioA == null || usuarioB == null) {
+            return null;
+        }
+
+        return chatsPorPareja.get(Chat.claveDePareja(usuarioA, usuarioB));
+    }
+
+    @Override
+    public synchronized List<Chat> listarChatsDeUsuario(User usuario) {
+        if (usuario == null) {
+            return new ArrayList<>();
         }
 
-        return resultado;
+        List<Chat> chats = chatsPorUsuario.get(usuario.getId());
+        return chats == null ? new ArrayList<>() : new ArrayList<>(chats);
     }
 
     /**
@@ -148,20 +462,55 @@ public class ChatFileRepository implements ChatRepository {
             return null;
         }
 
-        for (Chat chat : listaChats) {
-            if (chat.getIdentificadorChat().equals(identificadorChat)) {
-                return chat;
-            }
-        }
-        return null;
+        return chatsPorId.get(identificadorChat);
     }
 
     /**
      * Retorna una copia de todos los chats.
      * Útil para depuración o funciones administrativas.
      */
-    public List<Chat> obtenerTodos() {
-        return new ArrayList<>(listaChats);
+    public synchronized List<Chat> obtenerTodos() {
+        return new ArrayList<>(chatsPorId.values());
+    }
+
+    /**
+     * Registra un chat nuevo en los tres índices.
+     */
+    private void indexarNuevo(Chat chat) {
+        chatsPorId.put(chat.getIdentificadorChat(), chat);
+        // Si hubiera chats duplicados para la misma pareja, se conserva el primero
+        chatsPorPareja.putIfAbsent(Chat.claveDePareja(chat.getUsuarioEmisor(), chat.getUsuarioReceptor()), chat);
+        chatsPorUsuario.computeIfAbsent(chat.getUsuarioEmisor().getId(), id -> new ArrayList<>()).add(chat);
+        chatsPorUsuario.computeIfAbsent(chat.getUsuarioReceptor().getId(), id -> new ArrayList<>()).add(chat);
+    }
+
+    /**
+     * Sustituye un chat por otra instancia con el mismo identificador,
+     * conservando su posición en las listas de cada participante.
+     */
+    private void reemplazarEnIndices(Chat anterior, Chat nuevo) {
+        chatsPorId.put(nuevo.getIdentificadorChat(), nuevo);
+
+        String parejaAnterior = Chat.claveDePareja(anterior.getUsuarioEmisor(), anterior.getUsuarioReceptor());
+        if (chatsPorPareja.get(parejaAnterior) == anterior) {
+            chatsPorPareja.remove(parejaAnterior);
+        }
+        chatsPorPareja.putIfAbsent(Chat.claveDePareja(nuevo.getUsuarioEmisor(), nuevo.getUsuarioReceptor()), nuevo);
+
+        reemplazarEnLista(anterior.getUsuarioEmisor(), anterior, nuevo);
+        reemplazarEnLista(anterior.getUsuarioReceptor(), anterior, nuevo);
     }
-}
 
+    private void reemplazarEnLista(User participante, Chat anterior, Chat nuevo) {
+        List<Chat> chats = chatsPorUsuario.get(participante.getId());
+        if (chats == null) {
+            return;
+        }
+        for (int i = 0; i < chats.size(); i++) {
+            if (chats.get(i) == anterior) {
+                chats.set(i, nuevo);
+                return;
+            }
+        }
+    }
+}
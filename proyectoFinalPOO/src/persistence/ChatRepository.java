@@ -2,15 +2,17 @@
  * Clase: ChatRepository
  * Repositorio de persistencia.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.2
+ * @version 1.4
  */
 
 package persistence;
 
 import java.util.List;
+import java.util.Map;
 
 import model.User;
 import model.chat.Chat;
+import model.chat.Mensaje;
 
 /**
  * Define las operaciones de persistencia para los chats de la plataforma.
@@ -27,6 +29,35 @@ public interface ChatRepository {
      * @param chat Chat a guardar.
      */
     void guardarChat(Chat chat);
+
+    /**
+     * Agrega un mensaje a un chat y lo persiste. Solo se escribe el mensaje
+     * nuevo, no el historial completo.
+     *
+     * @param chat    Chat al que pertenece el mensaje.
+     * @param mensaje Mensaje a agregar.
+     */
+    void agregarMensaje(Chat chat, Mensaje mensaje);
+
+    /**
+     * Agrega varios mensajes, posiblemente a chats distintos, como un solo
+     * lote. Los chats que aún no estén guardados se registran con el lote.
+     * Por defecto equivale a agregar cada mensaje por separado; las
+     * implementaciones pueden persistir el lote en una sola escritura.
+     *
+     * @param mensajesPorChat Mensajes a agregar, agrupados por chat.
+     */
+    default void agregarMensajes(Map<Chat, List<Mensaje>> mensajesPorChat) {
+        for (Map.Entry<Chat, List<Mensaje>> entrada : mensajesPorChat.entrySet()) {
+            if (buscarChatEntreUsuarios(entrada.getKey().getUsuarioEmisor(),
+                    entrada.getKey().getUsuarioReceptor()) == null) {
+                guardarChat(entrada.getKey());
+            }
+            for (Mensaje mensaje : entrada.getValue()) {
+                agregarMensaje(entrada.getKey(), mensaje);
+            }
+        }
+    }
     
     /**
      * Busca un chat existente entre dos usuarios específicos.
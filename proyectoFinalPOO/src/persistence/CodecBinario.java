@@ -0,0 +1,905 @@
+/**
+ * Clase: CodecBinario
+ * Formato binario compacto y versionado para los objetos del modelo.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.0
+ */
+
+package persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.Oferta;
+import model.Publicacion;
+import model.PublicacionSubasta;
+import model.PublicacionTrueque;
+import model.Reporte;
+import model.User;
+import model.chat.Chat;
+import model.chat.Mensaje;
+import util.CondicionArticulo;
+import util.EstadoOferta;
+import util.EstadoPublicacion;
+import util.EstadoReporte;
+import util.RolUsuario;
+import util.TipoPublicacion;
+import util.TipoReporte;
+
+/**
+ * Codificador binario escrito a mano para reemplazar la serialización de
+ * Java en los archivos de datos.
+ *
+ * Formato:
+ * - Cabecera: "TRQB" + byte de versión.
+ * - Valor: tipo (varint) seguido de su contenido.
+ * - Objetos del modelo: bloque con longitud y una secuencia de campos
+ *   etiquetados (número de campo + tipo de cable). Un lector ignora los
+ *   campos que no conoce, así que agregar campos no rompe archivos viejos.
+ * - Los enumerados se guardan por nombre, no por posición.
+ * - Cada usuario se escribe una sola vez por archivo; las apariciones
+ *   siguientes (remitentes de mensajes, participantes de chats) son
+ *   referencias a una tabla.
+ *
+ * Los objetos que no tienen codificación propia se incrustan con la
+ * serialización de Java.
+ */
+public final class CodecBinario {
+
+    private static final byte[] MAGIA = { 'T', 'R', 'Q', 'B' };
+    private static final int VERSION = 1;
+
+    // Tipos de valor
+    private static final int VALOR_NULO = 0;
+    private static final int VALOR_TEXTO = 1;
+    private static final int VALOR_MAPA = 2;
+    private static final int VALOR_LISTA = 3;
+    private static final int VALOR_SUBASTA = 10;
+    private static final int VALOR_TRUEQUE = 11;
+    private static final int VALOR_OFERTA = 12;
+    private static final int VALOR_USUARIO = 13;
+    private static final int VALOR_CHAT = 14;
+    private static final int VALOR_MENSAJE = 15;
+    private static final int VALOR_REPORTE = 16;
+    private static final int VALOR_CABECERA_CHAT = 17;
+    private static final int VALOR_JAVA = 99;
+
+    // Tipos de cable de los campos
+    private static final int CABLE_VARINT = 0;
+    private static final int CABLE_64 = 1;
+    private static final int CABLE_BYTES = 2;
+
+    private CodecBinario() {
+    }
+
+    // =========================================================
+    // API
+    // =========================================================
+
+    /**
+     * Indica si el objeto tiene representación en este formato. Los demás
+     * (por ejemplo ConfiguracionGlobal) siguen usando serialización de Java.
+     */
+    public static boolean soporta(Object objeto) {
+        if (objeto instanceof Map<?, ?>) {
+            for (Object clave : ((Map<?, ?>) objeto).keySet()) {
+                if (!(clave instanceof String)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return objeto instanceof List<?>
+                || objeto instanceof String
+                || tipoDeModelo(objeto) != VALOR_JAVA;
+    }
+
+    /**
+     * Indica si los bytes comienzan con la cabecera de este formato.
+     */
+    public static boolean esFormatoBinario(byte[] datos) {
+        if (datos == null || datos.length < MAGIA.length + 1) {
+            return false;
+        }
+        for (int i = 0; i < MAGIA.length; i++) {
+            if (datos[i] != MAGIA[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static byte[] codificar(Object objeto) throws IOException {
+        Escritor escritor = new Escritor();
+        escritor.salida.write(MAGIA);
+        escritor.salida.write(VERSION);
+        escritor.escribirValor(escritor.salida, objeto);
+        return escritor.salida.toByteArray();
+    }
+
+    public static Object decodificar(byte[] datos) throws IOException, ClassNotFoundException {
+        if (!esFormatoBinario(datos)) {
+            throw new IOException("Los datos no están en formato binario.");
+        }
+        int version = datos[MAGIA.length] & 0xFF;
+        if (version > VERSION) {
+            throw new IOException("Versión de formato no soportada: " + version);
+        }
+        Lector lector = new Lector(datos, MAGIA.length + 1, datos.length);
+        return lector.leerValor();
+    }
+
+    private static int tipoDeModelo(Object objeto) {
+        if (objeto instanceof PublicacionSubasta) {
+            return VALOR_SUBASTA;
+        }
+        if (objeto instanceof PublicacionTrueque) {
+            return VALOR_TRUEQUE;
+        }
+        if (objeto instanceof Oferta) {
+            return VALOR_OFERTA;
+        }
+        if (objeto instanceof User) {
+            return VALOR_USUARIO;
+        }
+        if (objeto instanceof Chat) {
+            return VALOR_CHAT;
+        }
+        if (objeto instanceof Mensaje) {
+            return VALOR_MENSAJE;
+        }
+        if (objeto instanceof Reporte) {
+            return VALOR_REPORTE;
+        }
+        if (objeto instanceof CabeceraChat) {
+            return VALOR_CABECERA_CHAT;
+        }
+        return VALOR_JAVA;
+    }
+
+    // =========================================================
+    // Escritura
+    // =========================================================
+
+    private static final class Escritor {
+
+        private final ByteArrayOutputStream salida = new ByteArrayOutputStream();
+
+        // Usuarios ya escritos en este archivo → posición en la tabla
+        private final Map<User, Integer> usuarios = new IdentityHashMap<>();
+
+        void escribirValor(ByteArrayOutputStream destino, Object valor) throws IOException {
+            if (valor == null) {
+                escribirVarint(destino, VALOR_NULO);
+            } else if (valor instanceof String) {
+                escribirVarint(destino, VALOR_TEXTO);
+                escribirTexto(destino, (String) valor);
+            } else if (valor instanceof Map<?, ?> && soporta(valor)) {
+                Map<?, ?> mapa = (Map<?, ?>) valor;
+                escribirVarint(destino, VALOR_MAPA);
+                escribirVarint(destino, mapa.size());
+                for (Map.Entry<?, ?> entrada : mapa.entrySet()) {
+                    escribirTexto(destino, (String) entrada.getKey());
+                    escribirValor(destino, entrada.getValue());
+                }
+            } else if (valor instanceof List<?>) {
+                List<?> lista = (List<?>) valor;
+                escribirVarint(destino, VALOR_LISTA);
+                escribirVarint(destino, lista.size());
+                for (Object elemento : lista) {
+                    escribirValor(destino, elemento);
+                }
+            } else {
+                int tipo = tipoDeModelo(valor);
+                escribirVarint(destino, tipo);
+                if (tipo == VALOR_JAVA) {
+                    escribirBytes(destino, serializarJava(valor));
+                } else {
+                    escribirBytes(destino, codificarModelo(tipo, valor));
+                }
+            }
+        }
+
+        private byte[] codificarModelo(int tipo, Object valor) throws IOException {
+            Campos campos = new Campos();
+            switch (tipo) {
+                case VALOR_SUBASTA:
+                    escribirPublicacion(campos, (Publicacion) valor);
+                    PublicacionSubasta subasta = (PublicacionSubasta) valor;
+                    campos.decimal(20, subasta.getPrecioMinimo());
+                    campos.fecha(21, subasta.getFechaCierre());
+                    break;
+                case VALOR_TRUEQUE:
+                    escribirPublicacion(campos, (Publicacion) valor);
+                    campos.texto(30, ((PublicacionTrueque) valor).getObjetosDeseados());
+                    break;
+                case VALOR_OFERTA:
+                    escribirOferta(campos, (Oferta) valor);
+                    break;
+                case VALOR_USUARIO:
+                    escribirUsuario(campos, (User) valor);
+                    // Disponible para referencias posteriores
+                    usuarios.put((User) valor, usuarios.size());
+                    break;
+                case VALOR_CHAT:
+                    escribirChat(campos, (Chat) valor);
+                    break;
+                case VALOR_MENSAJE:
+                    escribirMensaje(campos, (Mensaje) valor);
+                    break;
+                case VALOR_REPORTE:
+                    escribirReporte(campos, (Reporte) valor);
+                    break;
+                case VALOR_CABECERA_CHAT:
+                    escribirCabecera(campos, (CabeceraChat) valor);
+                    break;
+                default:
+                    throw new IOException("Tipo sin codificación: " + tipo);
+            }
+            return campos.bytes();
+        }
+
+        private void escribirPublicacion(Campos c, Publicacion p) {
+            c.texto(1, p.getIdArticulo());
+            c.texto(2, p.getTitulo());
+            c.texto(3, p.getDescripcion());
+            c.texto(4, p.getIdVendedor());
+            c.fecha(5, p.getFechaPublicacion());
+            c.enumerado(6, p.getEstado());
+            c.enumerado(7, p.getTipoPublicacion());
+            c.texto(8, p.getCategoria());
+            c.enumerado(9, p.getCondicion());
+            c.textos(10, p.getFotosPaths());
+        }
+
+        private void escribirOferta(Campos c, Oferta o) {
+            c.texto(1, o.getIdOferta());
+            c.texto(2, o.getIdPublicacion());
+            c.texto(3, o.getIdOfertante());
+            c.fecha(4, o.getFechaOferta());
+            c.decimal(5, o.getMontoOferta());
+            c.texto(6, o.getDescripcionTrueque());
+            c.enumerado(7, o.getEstadoOferta());
+            c.textos(8, o.getRutasImagenes());
+        }
+
+        private void escribirUsuario(Campos c, User u) {
+            c.texto(1, u.getNombreUsuario());
+            c.texto(2, u.getNombre());
+            c.texto(3, u.getApellido());
+            c.texto(4, u.getCorreo());
+            c.texto(5, u.getContraseñaHash());
+            c.texto(6, u.getId());
+            c.texto(7, u.getUbicacion());
+            c.decimal(8, u.getReputacion());
+            c.entero(9, u.getNumeroCalificaciones());
+            c.textos(10, u.getHistorialTransacciones());
+            c.textos(11, u.getPublicacionesCalificadas());
+            c.enumerado(12, u.getRol());
+        }
+
+        /**
+         * Escribe un usuario completo la primera vez y una referencia a la
+         * tabla las siguientes.
+         */
+        private void usuario(Campos c, int campoCompleto, int campoReferencia, User u) {
+            if (u == null) {
+                return;
+            }
+            Integer posicion = usuarios.get(u);
+            if (posicion != null) {
+                c.entero(campoReferencia, posicion);
+                return;
+            }
+            Campos anidado = new Campos();
+            escribirUsuario(anidado, u);
+            c.anidado(campoCompleto, anidado.bytes());
+            usuarios.put(u, usuarios.size());
+        }
+
+        private void escribirMensaje(Campos c, Mensaje m) {
+            c.texto(1, m.getIdentificadorMensaje());
+            usuario(c, 2, 3, m.getUsuarioRemitente());
+            c.texto(4, m.getContenidoMensaje());
+            c.texto(5, m.getFechaHoraEnvio().toString());
+            c.enumerado(6, m.getTipoMensaje());
+            c.texto(7, m.getIdPublicacionAsociada());
+            c.textos(8, m.getImagesPaths());
+        }
+
+        private void escribirChat(Campos c, Chat chat) {
+            c.texto(1, chat.getIdentificadorChat());
+            usuario(c, 2, 3, chat.getUsuarioEmisor());
+            usuario(c, 4, 5, chat.getUsuarioReceptor());
+            for (Mensaje m : chat.getListaMensajes()) {
+                Campos anidado = new Campos();
+                escribirMensaje(anidado, m);
+                c.anidado(6, anidado.bytes());
+            }
+            c.entero(7, chat.isTieneMensajesNoLeidos() ? 1 : 0);
+        }
+
+        private void escribirReporte(Campos c, Reporte r) {
+            c.texto(1, r.getIdReporte());
+            c.texto(2, r.getIdReportante());
+            c.enumerado(3, r.getTipo());
+            c.texto(4, r.getIdObjetoReportado());
+            c.texto(5, r.getMotivo());
+            c.texto(6, r.getDescripcion());
+            c.enumerado(7, r.getEstado());
+            c.fecha(8, r.getFechaCreacion());
+            c.texto(9, r.getIdAdminAsignado());
+            c.texto(10, r.getResolucion());
+        }
+
+        private void escribirCabecera(Campos c, CabeceraChat cab) {
+            c.texto(1, cab.getIdentificadorChat());
+            usuario(c, 2, 3, cab.getUsuarioEmisor());
+            usuario(c, 4, 5, cab.getUsuarioReceptor());
+            c.entero(6, cab.isTieneMensajesNoLeidos() ? 1 : 0);
+            if (cab.getUltimoMensaje() != null) {
+                Campos anidado = new Campos();
+                escribirMensaje(anidado, cab.getUltimoMensaje());
+                c.anidado(7, anidado.bytes());
+            }
+            c.entero(8, cab.getCantidadMensajes());
+            c.entero(9, cab.getLongitudSegmento());
+            c.entero(10, cab.getOrden());
+        }
+    }
+
+    /**
+     * Acumula los campos etiquetados de un objeto.
+     */
+    private static final class Campos {
+
+        private final ByteArrayOutputStream salida = new ByteArrayOutputStream();
+
+        void texto(int campo, String valor) {
+            if (valor != null) {
+                etiqueta(campo, CABLE_BYTES);
+                escribirTexto(salida, valor);
+            }
+        }
+
+        void textos(int campo, List<String> valores) {
+            if (valores != null) {
+                for (String valor : valores) {
+                    texto(campo, valor);
+                }
+            }
+        }
+
+        void entero(int campo, long valor) {
+            etiqueta(campo, CABLE_VARINT);
+            escribirVarint(salida, (valor << 1) ^ (valor >> 63));
+        }
+
+        void decimal(int campo, double valor) {
+            etiqueta(campo, CABLE_64);
+            escribirFijo64(salida, Double.doubleToLongBits(valor));
+        }
+
+        void fecha(int campo, Date valor) {
+            if (valor != null) {
+                entero(campo, valor.getTime());
+            }
+        }
+
+        void enumerado(int campo, Enum<?> valor) {
+            if (valor != null) {
+                texto(campo, valor.name());
+            }
+        }
+
+        void anidado(int campo, byte[] cuerpo) {
+            etiqueta(campo, CABLE_BYTES);
+            escribirBytes(salida, cuerpo);
+        }
+
+        byte[] bytes() {
+            return salida.toByteArray();
+        }
+
+        private void etiqueta(int campo, int cable) {
+            escribirVarint(salida, ((long) campo << 3) | cable);
+        }
+    }
+
+    // =========================================================
+    // Lectura
+    // =========================================================
+
+    private static final class Lector {
+
+        private final byte[] datos;
+        private int posicion;
+        private final int fin;
+
+        // Usuarios leídos en este archivo, en orden de aparición
+        private final List<User> usuarios;
+
+        Lector(byte[] datos, int inicio, int fin) {
+            this(datos, inicio, fin, new ArrayList<>());
+        }
+
+        private Lector(byte[] datos, int inicio, int fin, List<User> usuarios) {
+            this.datos = datos;
+            this.posicion = inicio;
+            this.fin = fin;
+            this.usuarios = usuarios;
+        }
+
+        Object leerValor() throws IOException, ClassNotFoundException {
+            int tipo = (int) leerVarint();
+            switch (tipo) {
+                case VALOR_NULO:
+                    return null;
+                case VALOR_TEXTO:
+                    return leerTexto();
+                case VALOR_MAPA: {
+                    int cantidad = (int) leerVarint();
+                    Map<String, Object> mapa = new HashMap<>();
+                    for (int i = 0; i < cantidad; i++) {
+                        String clave = leerTexto();
+                        mapa.put(clave, leerValor());
+                    }
+                    return mapa;
+                }
+                case VALOR_LISTA: {
+                    int cantidad = (int) leerVarint();
+                    List<Object> lista = new ArrayList<>(cantidad);
+                    for (int i = 0; i < cantidad; i++) {
+                        lista.add(leerValor());
+                    }
+                    return lista;
+                }
+                case VALOR_JAVA:
+                    return deserializarJava(leerBytes());
+                default:
+                    return leerModelo(tipo, subLector());
+            }
+        }
+
+        private Object leerModelo(int tipo, Lector campos) throws IOException {
+            switch (tipo) {
+                case VALOR_SUBASTA:
+                case VALOR_TRUEQUE:
+                    return campos.leerPublicacion(tipo);
+                case VALOR_OFERTA:
+                    return campos.leerOferta();
+                case VALOR_USUARIO:
+                    User usuario = campos.leerUsuario();
+                    usuarios.add(usuario);
+                    return usuario;
+                case VALOR_CHAT:
+                    return campos.leerChat();
+                case VALOR_MENSAJE:
+                    return campos.leerMensaje();
+                case VALOR_REPORTE:
+                    return campos.leerReporte();
+                case VALOR_CABECERA_CHAT:
+                    return campos.leerCabecera();
+                default:
+                    throw new IOException("Tipo de valor desconocido: " + tipo);
+            }
+        }
+
+        private Publicacion leerPublicacion(int tipo) throws IOException {
+            String id = null, titulo = null, descripcion = null, idVendedor = null;
+            String categoria = null, objetosDeseados = null;
+            Date fechaPublicacion = null, fechaCierre = null;
+            EstadoPublicacion estado = null;
+            TipoPublicacion tipoPublicacion = null;
+            CondicionArticulo condicion = null;
+            List<String> fotos = new ArrayList<>();
+            double precioMinimo = 0;
+
+            while (hayMas()) {
+                long etiqueta = leerVarint();
+                int campo = (int) (etiqueta >>> 3);
+                int cable = (int) (etiqueta & 7);
+                switch (campo) {
+                    case 1: id = leerTexto(); break;
+                    case 2: titulo = leerTexto(); break;
+                    case 3: descripcion = leerTexto(); break;
+                    case 4: idVendedor = leerTexto(); break;
+                    case 5: fechaPublicacion = new Date(leerEntero()); break;
+                    case 6: estado = enumerado(EstadoPublicacion.class, leerTexto()); break;
+                    case 7: tipoPublicacion = enumerado(TipoPublicacion.class, leerTexto()); break;
+                    case 8: categoria = leerTexto(); break;
+                    case 9: condicion = enumerado(CondicionArticulo.class, leerTexto()); break;
+                    case 10: fotos.add(leerTexto()); break;
+                    case 20: precioMinimo = leerDecimal(); break;
+                    case 21: fechaCierre = new Date(leerEntero()); break;
+                    case 30: objetosDeseados = leerTexto(); break;
+                    default: saltar(cable);
+                }
+            }
+
+            Publicacion publicacion;
+            if (tipo == VALOR_SUBASTA) {
+                publicacion = new PublicacionSubasta(id, titulo, descripcion, idVendedor, fotos,
+                        precioMinimo, null, fechaCierre);
+            } else {
+                publicacion = new PublicacionTrueque(id, titulo, descripcion, idVendedor, fotos,
+                        objetosDeseados);
+            }
+            publicacion.setFechaPublicacion(fechaPublicacion);
+            publicacion.setEstado(estado);
+            if (tipoPublicacion != null) {
+                publicacion.setTipoPublicacion(tipoPublicacion);
+            }
+            publicacion.setCategoria(categoria);
+            publicacion.setCondicion(condicion);
+            return publicacion;
+        }
+
+        private Oferta leerOferta() throws IOException {
+            String id = null, idPublicacion = null, idOfertante = null, descripcion = null;
+            Date fecha = null;
+            double monto = 0;
+            EstadoOferta estado = null;
+            List<String> rutas = new ArrayList<>();
+
+            while (hayMas()) {
+                long etiqueta = leerVarint();
+                int cable = (int) (etiqueta & 7);
+                switch ((int) (etiqueta >>> 3)) {
+                    case 1: id = leerTexto(); break;
+                    case 2: idPublicacion = leerTexto(); break;
+                    case 3: idOfertante = leerTexto(); break;
+                    case 4: fecha = new Date(leerEntero()); break;
+                    case 5: monto = leerDecimal(); break;
+                    case 6: descripcion = leerTexto(); break;
+                    case 7: estado = enumerado(EstadoOferta.class, leerTexto()); break;
+                    case 8: rutas.add(leerTexto()); break;
+                    default: saltar(cable);
+                }
+            }
+
+            Oferta oferta = new Oferta(id, idPublicacion, idOfertante, fecha, monto, descripcion, estado);
+            oferta.setRutasImagenes(rutas);
+            return oferta;
+        }
+
+        private User leerUsuario() throws IOException {
+            String nombreUsuario = null, nombre = null, apellido = null, correo = null;
+            String contrasena = null, id = null, ubicacion = null;
+            double reputacion = 0;
+            int calificaciones = 0;
+            List<String> historial = new ArrayList<>();
+            List<String> calificadas = new ArrayList<>();
+            RolUsuario rol = null;
+
+            while (hayMas()) {
+                long etiqueta = leerVarint();
+                int cable = (int) (etiqueta & 7);
+                switch ((int) (etiqueta >>> 3)) {
+                    case 1: nombreUsuario = leerTexto(); break;
+                    case 2: nombre = leerTexto(); break;
+                    case 3: apellido = leerTexto(); break;
+                    case 4: correo = leerTexto(); break;
+                    case 5: contrasena = leerTexto(); break;
+                    case 6: id = leerTexto(); break;
+                    case 7: ubicacion = leerTexto(); break;
+                    case 8: reputacion = leerDecimal(); break;
+                    case 9: calificaciones = (int) leerEntero(); break;
+                    case 10: historial.add(leerTexto()); break;
+                    case 11: calificadas.add(leerTexto()); break;
+                    case 12: rol = enumerado(RolUsuario.class, leerTexto()); break;
+                    default: saltar(cable);
+                }
+            }
+
+            User usuario = new User(nombreUsuario, nombre, apellido, correo, contrasena, id, ubicacion);
+            usuario.restaurarReputacion(reputacion, calificaciones);
+            for (String idPublicacion : historial) {
+                usuario.agregarTransaccion(idPublicacion);
+            }
+            for (String idPublicacion : calificadas) {
+                usuario.agregarPublicacionCalificada(idPublicacion);
+            }
+            if (rol != null) {
+                usuario.setRol(rol);
+            }
+            return usuario;
+        }
+
+        /**
+         * Lee un usuario completo (y lo agrega a la tabla) o una referencia.
+         */
+        private User leerUsuarioCampo(boolean esReferencia) throws IOException {
+            if (esReferencia) {
+                int posicion = (int) leerEntero();
+                if (posicion < 0 || posicion >= usuarios.size()) {
+                    throw new IOException("Referencia a usuario inválida: " + posicion);
+                }
+                return usuarios.get(posicion);
+            }
+            User usuario = subLector().leerUsuario();
+            usuarios.add(usuario);
+            return usuario;
+        }
+
+        private Mensaje leerMensaje() throws IOException {
+            String id = null, contenido = null, idPublicacion = null;
+            User remitente = null;
+            LocalDateTime fecha = null;
+            Mensaje.TipoMensaje tipo = Mensaje.TipoMensaje.NORMAL;
+            List<String> imagenes = new ArrayList<>();
+
+            while (hayMas()) {
+                long etiqueta = leerVarint();
+                int cable = (int) (etiqueta & 7);
+                switch ((int) (etiqueta >>> 3)) {
+                    case 1: id = leerTexto(); break;
+                    case 2: remitente = leerUsuarioCampo(false); break;
+                    case 3: remitente = leerUsuarioCampo(true); break;
+                    case 4: contenido = leerTexto(); break;
+                    case 5: fecha = LocalDateTime.parse(leerTexto()); break;
+                    case 6:
+                        Mensaje.TipoMensaje leido = enumerado(Mensaje.TipoMensaje.class, leerTexto());
+                        if (leido != null) {
+                            tipo = leido;
+                        }
+                        break;
+                    case 7: idPublicacion = leerTexto(); break;
+                    case 8: imagenes.add(leerTexto()); break;
+                    default: saltar(cable);
+                }
+            }
+
+            Mensaje mensaje = new Mensaje(id, remitente, contenido, fecha, tipo, idPublicacion);
+            mensaje.setImagesPaths(imagenes);
+            return mensaje;
+        }
+
+        private Chat leerChat() throws IOException {
+            String id = null;
+            User emisor = null, receptor = null;
+            List<Mensaje> mensajes = new ArrayList<>();
+            boolean noLeidos = false;
+
+            while (hayMas()) {
+                long etiqueta = leerVarint();
+                int cable = (int) (etiqueta & 7);
+                switch ((int) (etiqueta >>> 3)) {
+                    case 1: id = leerTexto(); break;
+                    case 2: emisor = leerUsuarioCampo(false); break;
+                    case 3: emisor = leerUsuarioCampo(true); break;
+                    case 4: receptor = leerUsuarioCampo(false); break;
+                    case 5: receptor = leerUsuarioCampo(true); break;
+                    case 6: mensajes.add(subLector().leerMensaje()); break;
+                    case 7: noLeidos = leerEntero() != 0; break;
+                    default: saltar(cable);
+                }
+            }
+
+            Chat chat = new Chat(id, emisor, receptor);
+            for (Mensaje mensaje : mensajes) {
+                chat.agregarMensaje(mensaje);
+            }
+            if (!noLeidos) {
+                chat.marcarComoLeido();
+            }
+            return chat;
+        }
+
+        private Reporte leerReporte() throws IOException {
+            String id = null, reportante = null, idObjeto = null, motivo = null;
+            String descripcion = null, admin = null, resolucion = null;
+            TipoReporte tipo = null;
+            EstadoReporte estado = null;
+            Date fecha = null;
+
+            while (hayMas()) {
+                long etiqueta = leerVarint();
+                int cable = (int) (etiqueta & 7);
+                switch ((int) (etiqueta >>> 3)) {
+                    case 1: id = leerTexto(); break;
+                    case 2: reportante = leerTexto(); break;
+                    case 3: tipo = enumerado(TipoReporte.class, leerTexto()); break;
+                    case 4: idObjeto = leerTexto(); break;
+                    case 5: motivo = leerTexto(); break;
+                    case 6: descripcion = leerTexto(); break;
+                    case 7: estado = enumerado(EstadoReporte.class, leerTexto()); break;
+                    case 8: fecha = new Date(leerEntero()); break;
+                    case 9: admin = leerTexto(); break;
+                    case 10: resolucion = leerTexto(); break;
+                    default: saltar(cable);
+                }
+            }
+
+            Reporte reporte = new Reporte(id, reportante, tipo, idObjeto, motivo, descripcion);
+            reporte.setEstado(estado);
+            reporte.setFechaCreacion(fecha);
+            reporte.setIdAdminAsignado(admin);
+            reporte.setResolucion(resolucion);
+            return reporte;
+        }
+
+        private CabeceraChat leerCabecera() throws IOException {
+            String id = null;
+            User emisor = null, receptor = null;
+            boolean noLeidos = false;
+            Mensaje ultimo = null;
+            int cantidad = 0;
+            long longitud = 0, orden = 0;
+
+            while (hayMas()) {
+                long etiqueta = leerVarint();
+                int cable = (int) (etiqueta & 7);
+                switch ((int) (etiqueta >>> 3)) {
+                    case 1: id = leerTexto(); break;
+                    case 2: emisor = leerUsuarioCampo(false); break;
+                    case 3: emisor = leerUsuarioCampo(true); break;
+                    case 4: receptor = leerUsuarioCampo(false); break;
+                    case 5: receptor = leerUsuarioCampo(true); break;
+                    case 6: noLeidos = leerEntero() != 0; break;
+                    case 7: ultimo = subLector().leerMensaje(); break;
+                    case 8: cantidad = (int) leerEntero(); break;
+                    case 9: longitud = leerEntero(); break;
+                    case 10: orden = leerEntero(); break;
+                    default: saltar(cable);
+                }
+            }
+
+            return new CabeceraChat(id, emisor, receptor, noLeidos, ultimo, cantidad, longitud, orden);
+        }
+
+        // ---------- primitivas ----------
+
+        private boolean hayMas() {
+            return posicion < fin;
+        }
+
+        /**
+         * Crea un lector para el bloque con longitud que sigue y avanza
+         * esta posición hasta su final. Comparte la tabla de usuarios.
+         */
+        private Lector subLector() throws IOException {
+            int longitud = leerLongitud();
+            Lector sub = new Lector(datos, posicion, posicion + longitud, usuarios);
+            posicion += longitud;
+            return sub;
+        }
+
+        private long leerVarint() throws IOException {
+            long resultado = 0;
+            for (int desplazamiento = 0; desplazamiento < 64; desplazamiento += 7) {
+                if (posicion >= fin) {
+                    throw new IOException("Datos binarios truncados.");
+                }
+                byte b = datos[posicion++];
+                resultado |= (long) (b & 0x7F) << desplazamiento;
+                if ((b & 0x80) == 0) {
+                    return resultado;
+                }
+            }
+            throw new IOException("Varint mal formado.");
+        }
+
+        private long leerEntero() throws IOException {
+            long crudo = leerVarint();
+            return (crudo >>> 1) ^ -(crudo & 1);
+        }
+
+        private double leerDecimal() throws IOException {
+            if (fin - posicion < 8) {
+                throw new IOException("Datos binarios truncados.");
+            }
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | (datos[posicion++] & 0xFF);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        private int leerLongitud() throws IOException {
+            long longitud = leerVarint();
+            if (longitud < 0 || longitud > fin - posicion) {
+                throw new IOException("Longitud de bloque inválida: " + longitud);
+            }
+            return (int) longitud;
+        }
+
+        private byte[] leerBytes() throws IOException {
+            int longitud = leerLongitud();
+            byte[] resultado = new byte[longitud];
+            System.arraycopy(datos, posicion, resultado, 0, longitud);
+            posicion += longitud;
+            return resultado;
+        }
+
+        private String leerTexto() throws IOException {
+            int longitud = leerLongitud();
+            String texto = new String(datos, posicion, longitud, StandardCharsets.UTF_8);
+            posicion += longitud;
+            return texto;
+        }
+
+        /**
+         * Omite un campo desconocido (escrito por una versión más nueva).
+         */
+        private void saltar(int cable) throws IOException {
+            switch (cable) {
+                case CABLE_VARINT:
+                    leerVarint();
+                    break;
+                case CABLE_64:
+                    if (fin - posicion < 8) {
+                        throw new IOException("Datos binarios truncados.");
+                    }
+                    posicion += 8;
+                    break;
+                case CABLE_BYTES:
+                    posicion += leerLongitud();
+                    break;
+                default:
+                    throw new IOException("Tipo de cable desconocido: " + cable);
+            }
+        }
+
+        private static <E extends Enum<E>> E enumerado(Class<E> clase, String nombre) {
+            try {
+                return Enum.valueOf(clase, nombre);
+            } catch (IllegalArgumentException e) {
+                // Valor eliminado del enumerado en esta versión
+                return null;
+            }
+        }
+    }
+
+    // =========================================================
+    // Primitivas de escritura
+    // =========================================================
+
+    private static void escribirVarint(ByteArrayOutputStream salida, long valor) {
+        while ((valor & ~0x7FL) != 0) {
+            salida.write((int) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        salida.write((int) valor);
+    }
+
+    private static void escribirFijo64(ByteArrayOutputStream salida, long valor) {
+        for (int i = 56; i >= 0; i -= 8) {
+            salida.write((int) (valor >>> i) & 0xFF);
+        }
+    }
+
+    private static void escribirBytes(ByteArrayOutputStream salida, byte[] datos) {
+        escribirVarint(salida, datos.length);
+        salida.write(datos, 0, datos.length);
+    }
+
+    private static void escribirTexto(ByteArrayOutputStream salida, String texto) {
+        escribirBytes(salida, texto.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] serializarJava(Object objeto) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(buffer)) {
+            oos.writeObject(objeto);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static Object deserializarJava(byte[] datos) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(datos))) {
+            return ois.readObject();
+        }
+    }
+}
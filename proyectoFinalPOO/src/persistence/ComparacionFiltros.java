@@ -0,0 +1,220 @@
+/**
+ * Clase: ComparacionFiltros
+ * Medición del filtro del catálogo con y sin los índices de mapas de bits.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.0
+ */
+
+package persistence;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import model.Publicacion;
+import model.PublicacionSubasta;
+import model.PublicacionTrueque;
+import util.CondicionArticulo;
+import util.EstadoPublicacion;
+import util.TipoPublicacion;
+
+/**
+ * Arma en memoria N publicaciones ficticias (sin tocar el directorio data)
+ * y compara, para varias combinaciones de filtros:
+ * - el recorrido anterior, que revisa cada publicación activa campo por
+ *   campo;
+ * - {@link IndiceFiltros#filtrar}, que cruza los conjuntos de bits.
+ *
+ * Primero comprueba que ambos devuelven los mismos ids y luego mide el
+ * tiempo promedio por consulta de cada uno, tras un calentamiento.
+ *
+ * Uso: java persistence.ComparacionFiltros [publicaciones] [repeticiones]
+ * Termina con código 1 si los resultados no coinciden.
+ */
+public class ComparacionFiltros {
+
+    private static final String[] CATEGORIAS = {
+            "Hogar", "Tecnología", "Ropa", "Deportes", "Libros", "Juguetes", "Vehículos", "Otros"
+    };
+
+    /**
+     * Criterios de una consulta; null significa "sin filtro".
+     */
+    private static final class Consulta {
+        final TipoPublicacion tipo;
+        final String categoria;
+        final CondicionArticulo condicion;
+        final Double minPrecio;
+        final Double maxPrecio;
+
+        Consulta(TipoPublicacion tipo, String categoria, CondicionArticulo condicion,
+                Double minPrecio, Double maxPrecio) {
+            this.tipo = tipo;
+            this.categoria = categoria;
+            this.condicion = condicion;
+            this.minPrecio = minPrecio;
+            this.maxPrecio = maxPrecio;
+        }
+
+        @Override
+        public String toString() {
+            return "tipo=" + tipo + " categoria=" + categoria + " condicion=" + condicion
+                    + " precio=[" + minPrecio + ", " + maxPrecio + "]";
+        }
+    }
+
+    public static void main(String[] args) {
+        int cantidad = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int repeticiones = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        List<Publicacion> publicaciones = generar(cantidad, new Random(42));
+        IndiceFiltros indice = new IndiceFiltros();
+        for (Publicacion publicacion : publicaciones) {
+            indice.indexar(publicacion.getIdArticulo(), valores(publicacion));
+        }
+
+        Consulta[] consultas = {
+                new Consulta(null, null, null, null, null),
+                new Consulta(TipoPublicacion.SUBASTA, null, null, null, null),
+                new Consulta(null, "Hogar", null, null, null),
+                new Consulta(TipoPublicacion.TRUEQUE, "Libros", CondicionArticulo.NUEVO, null, null),
+                new Consulta(null, null, null, 100.0, 400.0),
+                new Consulta(TipoPublicacion.SUBASTA, "Hogar", CondicionArticulo.NUEVO, 100.0, 400.0),
+        };
+
+        // Ambos caminos deben dar los mismos ids, en el mismo orden
+        boolean coinciden = true;
+        for (Consulta consulta : consultas) {
+            List<String> esperado = ids(recorrer(publicaciones, consulta));
+            List<String> obtenido = filtrar(indice, consulta);
+            if (!esperado.equals(obtenido)) {
+                System.err.println(" ERROR: resultados distintos para " + consulta
+                        + " (" + esperado.size() + " vs " + obtenido.size() + ")");
+                coinciden = false;
+            }
+        }
+        if (!coinciden) {
+            System.exit(1);
+        }
+
+        // Calentamiento para que ambos caminos lleguen compilados a la medición
+        for (int i = 0; i < repeticiones; i++) {
+            for (Consulta consulta : consultas) {
+                recorrer(publicaciones, consulta);
+                filtrar(indice, consulta);
+            }
+        }
+
+        System.out.printf("%d publicaciones, %d repeticiones por consulta%n", cantidad, repeticiones);
+        System.out.printf("%-90s %12s %12s%n", "consulta", "recorrido", "indice");
+        long sumidero = 0;
+        for (Consulta consulta : consultas) {
+            long inicio = System.nanoTime();
+            for (int i = 0; i < repeticiones; i++) {
+                sumidero += recorrer(publicaciones, consulta).size();
+            }
+            long medio = System.nanoTime();
+            for (int i = 0; i < repeticiones; i++) {
+                sumidero += filtrar(indice, consulta).size();
+            }
+            long fin = System.nanoTime();
+            System.out.printf("%-90s %9.4f ms %9.4f ms%n", consulta,
+                    (medio - inicio) / 1e6 / repeticiones, (fin - medio) / 1e6 / repeticiones);
+        }
+        // Evita que el compilador descarte los resultados
+        if (sumidero == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Publicaciones con valores repartidos al azar; una de cada cinco no
+     * está activa.
+     */
+    private static List<Publicacion> generar(int cantidad, Random azar) {
+        List<Publicacion> publicaciones = new ArrayList<>(cantidad);
+        CondicionArticulo[] condiciones = CondicionArticulo.values();
+        long ahora = System.currentTimeMillis();
+        for (int i = 0; i < cantidad; i++) {
+            String id = "BENCH-" + i;
+            Publicacion publicacion;
+            if (azar.nextBoolean()) {
+                publicacion = new PublicacionSubasta(id, "Artículo " + i, "Descripción " + i, "vendedor",
+                        new ArrayList<>(), azar.nextInt(1000), new Date(ahora + 86_400_000L), null);
+            } else {
+                publicacion = new PublicacionTrueque(id, "Artículo " + i, "Descripción " + i, "vendedor",
+                        new ArrayList<>(), "Cualquier cosa");
+            }
+            publicacion.setCategoria(CATEGORIAS[azar.nextInt(CATEGORIAS.length)]);
+            publicacion.setCondicion(condiciones[azar.nextInt(condiciones.length)]);
+            publicacion.setEstado(azar.nextInt(5) == 0 ? EstadoPublicacion.FINALIZADA : EstadoPublicacion.ACTIVA);
+            publicaciones.add(publicacion);
+        }
+        return publicaciones;
+    }
+
+    /**
+     * Los mismos valores que PublicacionRepository guarda para el índice.
+     */
+    private static IndiceFiltros.Valores valores(Publicacion publicacion) {
+        Double precio = null;
+        Long cierre = null;
+        if (publicacion instanceof PublicacionSubasta) {
+            PublicacionSubasta subasta = (PublicacionSubasta) publicacion;
+            precio = subasta.getPrecioMinimo();
+            cierre = (subasta.getFechaCierre() == null) ? null : subasta.getFechaCierre().getTime();
+        }
+        Long fecha = (publicacion.getFechaPublicacion() == null) ? null : publicacion.getFechaPublicacion().getTime();
+        return new IndiceFiltros.Valores(publicacion.getEstado(), publicacion.getTipoPublicacion(),
+                publicacion.getCategoria(), publicacion.getCondicion(), precio, fecha, cierre);
+    }
+
+    /**
+     * El filtro anterior: recorre todas las publicaciones y revisa cada
+     * criterio sobre el objeto.
+     */
+    private static List<Publicacion> recorrer(List<Publicacion> publicaciones, Consulta consulta) {
+        List<Publicacion> resultado = new ArrayList<>();
+        for (Publicacion p : publicaciones) {
+            if (p.getEstado() != EstadoPublicacion.ACTIVA) {
+                continue;
+            }
+            if (consulta.tipo != null && p.getTipoPublicacion() != consulta.tipo) {
+                continue;
+            }
+            if ((consulta.minPrecio != null || consulta.maxPrecio != null) && p instanceof PublicacionSubasta) {
+                double precio = ((PublicacionSubasta) p).getPrecioMinimo();
+                if (consulta.minPrecio != null && precio < consulta.minPrecio) {
+                    continue;
+                }
+                if (consulta.maxPrecio != null && precio > consulta.maxPrecio) {
+                    continue;
+                }
+            }
+            if (consulta.categoria != null
+                    && (p.getCategoria() == null || !p.getCategoria().equals(consulta.categoria))) {
+                continue;
+            }
+            if (consulta.condicion != null
+                    && (p.getCondicion() == null || !p.getCondicion().equals(consulta.condicion))) {
+                continue;
+            }
+            resultado.add(p);
+        }
+        return resultado;
+    }
+
+    private static List<String> filtrar(IndiceFiltros indice, Consulta consulta) {
+        return indice.filtrar(EstadoPublicacion.ACTIVA, consulta.tipo, consulta.categoria,
+                consulta.condicion, consulta.minPrecio, consulta.maxPrecio);
+    }
+
+    private static List<String> ids(List<Publicacion> publicaciones) {
+        List<String> ids = new ArrayList<>(publicaciones.size());
+        for (Publicacion publicacion : publicaciones) {
+            ids.add(publicacion.getIdArticulo());
+        }
+        return ids;
+    }
+}
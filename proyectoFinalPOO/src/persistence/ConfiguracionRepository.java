@@ -2,7 +2,7 @@
  * Clase: ConfiguracionRepository
  * configuración del repositorio
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.2
+ * @version 1.4
  */
 
 package persistence;
@@ -13,50 +13,72 @@ import java.io.*;
 
 /**
  * Repositorio para gestionar la configuración global del sistema.
+ *
+ * La configuración se comparte entre todas las instancias y se lee del
+ * archivo una sola vez por proceso: un cambio hecho desde una vista se ve
+ * de inmediato en las demás instancias sin volver a leer el disco.
  */
 public class ConfiguracionRepository {
 
     private static final String ARCHIVO_CONFIG = "data/config.dat";
-    private ConfiguracionGlobal configuracion;
+
+    // Protege la configuración compartida
+    private static final Object CANDADO = new Object();
+    private static ConfiguracionGlobal configuracion;
+    private static boolean cargado = false;
 
     public ConfiguracionRepository() {
-        cargarConfiguracion();
+        synchronized (CANDADO) {
+            if (!cargado) {
+                cargarConfiguracion();
+                cargado = true;
+            }
+        }
     }
 
      /**
      * Carga la configuración desde el archivo. 
      * Si el archivo no existe, está vacío, corrupto o contiene un tipo de objeto incorrecto, se genera una nueva configuración por defecto y se almacena inmediatamente.
      */
-    private void cargarConfiguracion() {
+    private static void cargarConfiguracion() {
         try {
             Object obj = Persistencia.cargarObjeto(ARCHIVO_CONFIG);
             if (obj instanceof ConfiguracionGlobal) {
-                this.configuracion = (ConfiguracionGlobal) obj;
+                configuracion = (ConfiguracionGlobal) obj;
             } else {
                 // Crear configuración por defecto
-                this.configuracion = new ConfiguracionGlobal();
+                configuracion = new ConfiguracionGlobal();
                 guardarEnArchivo();
             }
         } catch (IOException | ClassNotFoundException e) {
             // Crear configuración por defecto si no existe
-            this.configuracion = new ConfiguracionGlobal();
+            configuracion = new ConfiguracionGlobal();
             guardarEnArchivo();
         }
     }
 
-    private void guardarEnArchivo() {
-        try {
-            Persistencia.guardarObjeto(ARCHIVO_CONFIG, configuracion);
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Programa la escritura del archivo en el escritor en segundo plano.
+     */
+    private static void guardarEnArchivo() {
+        ServicioPersistencia.getInstancia().marcarSucio(ARCHIVO_CONFIG, ConfiguracionRepository::volcar);
+    }
+
+    private static void volcar() throws IOException {
+        byte[] datos;
+        synchronized (CANDADO) {
+            datos = Persistencia.serializar(configuracion);
         }
+        Persistencia.guardarBytes(ARCHIVO_CONFIG, datos);
     }
 
     /**
      * Obtiene la configuración actual
      */
     public ConfiguracionGlobal obtenerConfiguracion() {
-        return configuracion;
+        synchronized (CANDADO) {
+            return configuracion;
+        }
     }
 
     /**
@@ -66,7 +88,9 @@ public class ConfiguracionRepository {
         if (nuevaConfig == null) {
             throw new IllegalArgumentException("La configuración no puede ser nula");
         }
-        this.configuracion = nuevaConfig;
+        synchronized (CANDADO) {
+            configuracion = nuevaConfig;
+        }
         guardarEnArchivo();
     }
 }
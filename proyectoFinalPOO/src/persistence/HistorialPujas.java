@@ -0,0 +1,163 @@
+/**
+ * Clase: HistorialPujas
+ * Índice ordenado de las ofertas de una publicación.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.1
+ */
+
+package persistence;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Ofertas de una publicación ordenadas de dos formas: por monto (mayor
+ * primero) y por fecha. Guarda solo ids, montos y fechas; los objetos Oferta
+ * siguen en el repositorio.
+ *
+ * Agregar, actualizar y quitar cuestan O(log n). La mejor oferta es el
+ * primer elemento del orden por monto, de modo que al quitarla la siguiente
+ * queda disponible sin recorrer el resto.
+ *
+ * Las páginas se piden con un cursor (la última oferta de la página
+ * anterior) en lugar de una posición: cada página cuesta O(log n + k) sin
+ * importar cuántas ofertas hay antes.
+ *
+ * No es seguro para varios hilos; OfertaRepository lo usa bajo su candado.
+ */
+class HistorialPujas {
+
+    /**
+     * Posición de una oferta en los dos órdenes. Se conservan el monto y la
+     * fecha con que se indexó para poder retirarla aunque el objeto Oferta
+     * se haya modificado en sitio.
+     */
+    private static final class Entrada {
+        final String idOferta;
+        final double monto;
+        final long fechaMs;
+
+        Entrada(String idOferta, double monto, long fechaMs) {
+            this.idOferta = idOferta;
+            this.monto = monto;
+            this.fechaMs = fechaMs;
+        }
+    }
+
+    // Mayor monto primero; ante empate, la más antigua. El id desempata el
+    // resto, de modo que cualquier oferta sirve como cursor
+    private static final Comparator<Entrada> POR_MONTO = Comparator
+            .comparingDouble((Entrada e) -> -e.monto)
+            .thenComparingLong(e -> e.fechaMs)
+            .thenComparing(e -> e.idOferta);
+
+    // Más antigua primero
+    private static final Comparator<Entrada> POR_FECHA = Comparator
+            .comparingLong((Entrada e) -> e.fechaMs)
+            .thenComparing(e -> e.idOferta);
+
+    // Ids en orden de llegada
+    private final Map<String, Entrada> porId = new LinkedHashMap<>();
+    private final TreeSet<Entrada> porMonto = new TreeSet<>(POR_MONTO);
+    private final TreeSet<Entrada> porFecha = new TreeSet<>(POR_FECHA);
+
+    /**
+     * Agrega una oferta o actualiza su monto y fecha si ya estaba.
+     */
+    void agregar(String idOferta, double monto, long fechaMs) {
+        Entrada anterior = porId.get(idOferta);
+        if (anterior != null) {
+            if (anterior.monto == monto && anterior.fechaMs == fechaMs) {
+                return;
+            }
+            porMonto.remove(anterior);
+            porFecha.remove(anterior);
+        }
+        Entrada entrada = new Entrada(idOferta, monto, fechaMs);
+        porId.put(idOferta, entrada);
+        porMonto.add(entrada);
+        porFecha.add(entrada);
+    }
+
+    void quitar(String idOferta) {
+        Entrada entrada = porId.remove(idOferta);
+        if (entrada != null) {
+            porMonto.remove(entrada);
+            porFecha.remove(entrada);
+        }
+    }
+
+    boolean estaVacio() {
+        return porId.isEmpty();
+    }
+
+    int cantidad() {
+        return porId.size();
+    }
+
+    /**
+     * Id de la oferta de mayor monto, o null si no hay ofertas.
+     */
+    String mejor() {
+        return porMonto.isEmpty() ? null : porMonto.first().idOferta;
+    }
+
+    /**
+     * Monto de la oferta de mayor monto. Solo válido si hay ofertas.
+     */
+    double montoMejor() {
+        return porMonto.first().monto;
+    }
+
+    /**
+     * Ids en orden de llegada.
+     */
+    Iterable<String> idsEnOrdenDeLlegada() {
+        return porId.keySet();
+    }
+
+    /**
+     * Página de ids por monto, del mayor al menor.
+     *
+     * @param idCursor Última oferta de la página anterior, o null para la
+     *                 primera página. Si ya no está en el historial, se usan
+     *                 el monto y la fecha indicados para ubicarla.
+     */
+    List<String> paginaPorMonto(String idCursor, double monto, long fechaMs, int cantidad) {
+        return pagina(porMonto, cursor(idCursor, monto, fechaMs), cantidad);
+    }
+
+    /**
+     * Página de ids por fecha, de la más reciente a la más antigua.
+     *
+     * @param idCursor Última oferta de la página anterior, o null para la
+     *                 primera página.
+     */
+    List<String> paginaRecientes(String idCursor, double monto, long fechaMs, int cantidad) {
+        return pagina(porFecha.descendingSet(), cursor(idCursor, monto, fechaMs), cantidad);
+    }
+
+    private Entrada cursor(String idCursor, double monto, long fechaMs) {
+        if (idCursor == null) {
+            return null;
+        }
+        // La posición con que se indexó, aunque la oferta cambiara en sitio
+        Entrada indexada = porId.get(idCursor);
+        return (indexada != null) ? indexada : new Entrada(idCursor, monto, fechaMs);
+    }
+
+    private static List<String> pagina(NavigableSet<Entrada> orden, Entrada cursor, int cantidad) {
+        List<String> ids = new ArrayList<>(Math.max(0, Math.min(cantidad, orden.size())));
+        Iterator<Entrada> it = (cursor == null) ? orden.iterator() : orden.tailSet(cursor, false).iterator();
+        while (ids.size() < cantidad && it.hasNext()) {
+            ids.add(it.next().idOferta);
+        }
+        return ids;
+    }
+}
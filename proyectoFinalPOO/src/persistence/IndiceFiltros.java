@@ -0,0 +1,290 @@
+/**
+ * Clase: IndiceFiltros
+ * Índices de mapas de bits para los filtros y el orden del catálogo.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.1
+ */
+
+package persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import util.CondicionArticulo;
+import util.EstadoPublicacion;
+import util.OrdenCatalogo;
+import util.TipoPublicacion;
+
+/**
+ * Un conjunto de bits por cada valor de tipo, categoría, condición y estado,
+ * más un índice ordenado por precio mínimo de las subastas. Cada publicación
+ * ocupa una posición fija (en orden de llegada), y un filtro combinado es un
+ * AND de los conjuntos de sus valores y un corte por rango de precio, sin
+ * recorrer las publicaciones.
+ *
+ * Las posiciones no se reutilizan: una publicación eliminada deja un hueco,
+ * de modo que el orden de los resultados es siempre el de llegada.
+ *
+ * No es seguro para varios hilos; PublicacionRepository lo usa bajo su
+ * candado.
+ */
+class IndiceFiltros {
+
+    /**
+     * Valores con que se indexa una publicación. El precio y la fecha de
+     * cierre solo aplican a subastas; null para las demás. Las fechas van en
+     * milisegundos.
+     */
+    static final class Valores {
+        final EstadoPublicacion estado;
+        final TipoPublicacion tipo;
+        final String categoria;
+        final CondicionArticulo condicion;
+        final Double precio;
+        final Long fechaPublicacion;
+        final Long fechaCierre;
+
+        Valores(EstadoPublicacion estado, TipoPublicacion tipo, String categoria,
+                CondicionArticulo condicion, Double precio, Long fechaPublicacion, Long fechaCierre) {
+            this.estado = estado;
+            this.tipo = tipo;
+            this.categoria = categoria;
+            this.condicion = condicion;
+            this.precio = precio;
+            this.fechaPublicacion = fechaPublicacion;
+            this.fechaCierre = fechaCierre;
+        }
+    }
+
+    private final Map<EstadoPublicacion, BitSet> porEstado = new EnumMap<>(EstadoPublicacion.class);
+    private final Map<TipoPublicacion, BitSet> porTipo = new EnumMap<>(TipoPublicacion.class);
+    private final Map<String, BitSet> porCategoria = new HashMap<>();
+    private final Map<CondicionArticulo, BitSet> porCondicion = new EnumMap<>(CondicionArticulo.class);
+    // Precio -> posiciones con ese precio. No se usan conjuntos de bits:
+    // habría uno por cada precio distinto, del tamaño de todo el catálogo.
+    private final TreeMap<Double, int[]> porPrecio = new TreeMap<>();
+    // Posiciones sin precio (las que no son subastas)
+    private final BitSet sinPrecio = new BitSet();
+
+    private final Map<String, Integer> posicionPorId = new HashMap<>();
+    private String[] idPorPosicion = new String[64];
+    // Valores con que se indexó cada posición, para poder retirarla
+    private Valores[] valoresPorPosicion = new Valores[64];
+    private int posiciones;
+
+    /**
+     * Indexa una publicación o actualiza sus valores si ya estaba.
+     */
+    void indexar(String id, Valores valores) {
+        Integer posicion = posicionPorId.get(id);
+        if (posicion == null) {
+            if (posiciones == idPorPosicion.length) {
+                idPorPosicion = Arrays.copyOf(idPorPosicion, posiciones * 2);
+                valoresPorPosicion = Arrays.copyOf(valoresPorPosicion, posiciones * 2);
+            }
+            posicion = posiciones++;
+            posicionPorId.put(id, posicion);
+            idPorPosicion[posicion] = id;
+        } else {
+            limpiar(posicion);
+        }
+
+        valoresPorPosicion[posicion] = valores;
+        marcar(porEstado, valores.estado, posicion);
+        marcar(porTipo, valores.tipo, posicion);
+        marcar(porCategoria, valores.categoria, posicion);
+        marcar(porCondicion, valores.condicion, posicion);
+        if (valores.precio != null) {
+            int[] anteriores = porPrecio.get(valores.precio);
+            int[] nuevas = (anteriores == null) ? new int[1] : Arrays.copyOf(anteriores, anteriores.length + 1);
+            nuevas[nuevas.length - 1] = posicion;
+            porPrecio.put(valores.precio, nuevas);
+        } else {
+            sinPrecio.set(posicion);
+        }
+    }
+
+    void quitar(String id) {
+        Integer posicion = posicionPorId.remove(id);
+        if (posicion != null) {
+            limpiar(posicion);
+            idPorPosicion[posicion] = null;
+        }
+    }
+
+    /**
+     * Ids que cumplen todos los criterios no nulos, en orden de llegada.
+     *
+     * El rango de precio, como en el filtro del catálogo, solo descarta
+     * subastas: las publicaciones sin precio lo cumplen siempre.
+     */
+    List<String> filtrar(EstadoPublicacion estado, TipoPublicacion tipo, String categoria,
+            CondicionArticulo condicion, Double minPrecio, Double maxPrecio) {
+        BitSet resultado = null;
+        resultado = intersectar(resultado, porEstado, estado);
+        resultado = intersectar(resultado, porTipo, tipo);
+        resultado = intersectar(resultado, porCategoria, categoria);
+        resultado = intersectar(resultado, porCondicion, condicion);
+
+        if (minPrecio != null || maxPrecio != null) {
+            BitSet cumplenPrecio = (BitSet) sinPrecio.clone();
+            double desde = (minPrecio != null) ? minPrecio : Double.NEGATIVE_INFINITY;
+            double hasta = (maxPrecio != null) ? maxPrecio : Double.POSITIVE_INFINITY;
+            if (desde <= hasta) {
+                for (int[] conPrecio : porPrecio.subMap(desde, true, hasta, true).values()) {
+                    for (int posicion : conPrecio) {
+                        cumplenPrecio.set(posicion);
+                    }
+                }
+            }
+            resultado = intersectar(resultado, cumplenPrecio);
+        }
+
+        List<String> ids = new ArrayList<>();
+        if (resultado == null) {
+            // Sin criterios: todas las indexadas
+            for (int i = 0; i < posiciones; i++) {
+                if (idPorPosicion[i] != null) {
+                    ids.add(idPorPosicion[i]);
+                }
+            }
+            return ids;
+        }
+        for (int i = resultado.nextSetBit(0); i >= 0; i = resultado.nextSetBit(i + 1)) {
+            ids.add(idPorPosicion[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Ordena los ids según el orden pedido, con los valores indexados y sin
+     * leer las publicaciones. Los empates conservan el orden de llegada (el
+     * inverso en RECIENTES); RELEVANCIA deja la lista como está.
+     */
+    void ordenar(List<String> ids, OrdenCatalogo orden) {
+        Comparator<Valores> porValor;
+        switch (orden) {
+            case RECIENTES:
+                porValor = Comparator.comparing((Valores v) -> v.fechaPublicacion,
+                        Comparator.nullsLast(Comparator.reverseOrder()));
+                break;
+            case PRECIO_MENOR:
+                porValor = Comparator.comparing((Valores v) -> v.precio,
+                        Comparator.nullsLast(Comparator.naturalOrder()));
+                break;
+            case PRECIO_MAYOR:
+                porValor = Comparator.comparing((Valores v) -> v.precio,
+                        Comparator.nullsLast(Comparator.reverseOrder()));
+                break;
+            case CIERRE_PROXIMO:
+                porValor = Comparator.comparing((Valores v) -> v.fechaCierre,
+                        Comparator.nullsLast(Comparator.naturalOrder()));
+                break;
+            default:
+                return;
+        }
+        Comparator<Integer> porLlegada = (orden == OrdenCatalogo.RECIENTES)
+                ? Comparator.reverseOrder()
+                : Comparator.naturalOrder();
+        Comparator<Integer> comparador = Comparator
+                .comparing((Integer posicion) -> valoresPorPosicion[posicion],
+                        Comparator.nullsLast(porValor))
+                .thenComparing(porLlegada);
+
+        // Se ordenan posiciones para no buscar cada id en cada comparación
+        List<Integer> ordenadas = new ArrayList<>(ids.size());
+        List<String> sinIndexar = new ArrayList<>();
+        for (String id : ids) {
+            Integer posicion = posicionPorId.get(id);
+            if (posicion != null) {
+                ordenadas.add(posicion);
+            } else {
+                sinIndexar.add(id);
+            }
+        }
+        ordenadas.sort(comparador);
+
+        ids.clear();
+        for (Integer posicion : ordenadas) {
+            ids.add(idPorPosicion[posicion]);
+        }
+        ids.addAll(sinIndexar);
+    }
+
+    private void limpiar(int posicion) {
+        Valores anteriores = valoresPorPosicion[posicion];
+        if (anteriores == null) {
+            return;
+        }
+        desmarcar(porEstado, anteriores.estado, posicion);
+        desmarcar(porTipo, anteriores.tipo, posicion);
+        desmarcar(porCategoria, anteriores.categoria, posicion);
+        desmarcar(porCondicion, anteriores.condicion, posicion);
+        if (anteriores.precio != null) {
+            int[] conPrecio = porPrecio.get(anteriores.precio);
+            if (conPrecio != null) {
+                int[] restantes = new int[conPrecio.length];
+                int cantidad = 0;
+                for (int otra : conPrecio) {
+                    if (otra != posicion) {
+                        restantes[cantidad++] = otra;
+                    }
+                }
+                if (cantidad == 0) {
+                    porPrecio.remove(anteriores.precio);
+                } else {
+                    porPrecio.put(anteriores.precio, Arrays.copyOf(restantes, cantidad));
+                }
+            }
+        } else {
+            sinPrecio.clear(posicion);
+        }
+        valoresPorPosicion[posicion] = null;
+    }
+
+    private static <K> void marcar(Map<K, BitSet> indice, K valor, int posicion) {
+        if (valor != null) {
+            indice.computeIfAbsent(valor, v -> new BitSet()).set(posicion);
+        }
+    }
+
+    private static <K> void desmarcar(Map<K, BitSet> indice, K valor, int posicion) {
+        if (valor == null) {
+            return;
+        }
+        BitSet bits = indice.get(valor);
+        if (bits != null) {
+            bits.clear(posicion);
+            if (bits.isEmpty()) {
+                indice.remove(valor);
+            }
+        }
+    }
+
+    /**
+     * AND del resultado parcial con el conjunto del valor pedido. Un valor
+     * null no filtra; un valor sin publicaciones deja el resultado vacío.
+     */
+    private static <K> BitSet intersectar(BitSet resultado, Map<K, BitSet> indice, K valor) {
+        if (valor == null) {
+            return resultado;
+        }
+        BitSet bits = indice.get(valor);
+        return intersectar(resultado, (bits != null) ? bits : new BitSet());
+    }
+
+    private static BitSet intersectar(BitSet resultado, BitSet bits) {
+        if (resultado == null) {
+            return (BitSet) bits.clone();
+        }
+        resultado.and(bits);
+        return resultado;
+    }
+}
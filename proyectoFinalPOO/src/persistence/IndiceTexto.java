@@ -0,0 +1,334 @@
+/**
+ * Clase: IndiceTexto
+ * Índice invertido de palabras de las publicaciones.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.0
+ */
+
+package persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import model.Publicacion;
+import model.PublicacionTrueque;
+import util.CampoBusqueda;
+import util.NormalizadorTexto;
+
+/**
+ * Índice invertido sobre título, descripción, categoría y objetos deseados:
+ * para cada palabra normalizada (sin acentos, en minúsculas) guarda las
+ * publicaciones que la contienen y en qué campos aparece.
+ *
+ * Una consulta solo recorre las publicaciones de sus palabras, no todo el
+ * catálogo. Cada palabra de la consulta también encuentra las palabras que
+ * empiezan por ella ("bici" encuentra "bicicleta"), con la mitad de peso.
+ * El puntaje suma, por cada palabra, el peso de los campos donde aparece
+ * multiplicado por su rareza (las palabras comunes aportan menos).
+ *
+ * Internamente cada publicación indexada es un número de documento y las
+ * listas de cada palabra son arreglos de enteros. Retirar una publicación
+ * solo la marca como retirada; sus entradas se descartan al compactar,
+ * cuando las retiradas superan a las vigentes.
+ *
+ * No es seguro para varios hilos; PublicacionRepository lo usa bajo su
+ * candado.
+ */
+class IndiceTexto {
+
+    // Palabras más cortas no se indexan (de, la, el, y...)
+    static final int LONGITUD_MINIMA = 2;
+
+    private static final float PESO_PREFIJO = 0.5f;
+
+    // No se compacta por debajo de esta cantidad de entradas retiradas
+    private static final int COMPACTAR_DESDE = 4096;
+
+    // Peso de cada combinación de campos (máscara de bits por ordinal)
+    private static final int[] PESOS = new int[1 << CampoBusqueda.values().length];
+
+    static {
+        for (int mascara = 0; mascara < PESOS.length; mascara++) {
+            for (CampoBusqueda campo : CampoBusqueda.values()) {
+                if ((mascara & (1 << campo.ordinal())) != 0) {
+                    PESOS[mascara] += campo.getPeso();
+                }
+            }
+        }
+    }
+
+    /**
+     * Documentos que contienen una palabra, con los campos donde aparece.
+     * Puede incluir documentos retirados.
+     */
+    private static final class Lista {
+        int[] documentos = new int[4];
+        byte[] campos = new byte[4];
+        int tamano;
+        int vigentes;
+
+        void agregar(int documento, int mascara) {
+            if (tamano == documentos.length) {
+                documentos = Arrays.copyOf(documentos, tamano * 2);
+                campos = Arrays.copyOf(campos, tamano * 2);
+            }
+            documentos[tamano] = documento;
+            campos[tamano] = (byte) mascara;
+            tamano++;
+            vigentes++;
+        }
+    }
+
+    private final TreeMap<String, Lista> listasPorPalabra = new TreeMap<>();
+    private final Map<String, Integer> documentoPorId = new HashMap<>();
+
+    // Por documento: id de la publicación (null si se retiró) y las palabras
+    // con que se indexó, para poder retirarla o compactar
+    private String[] idPorDocumento = new String[64];
+    private String[][] palabrasPorDocumento = new String[64][];
+    private byte[][] camposPorDocumento = new byte[64][];
+    private int documentos;
+
+    private int entradasVigentes;
+    private int entradasRetiradas;
+
+    // Espacio de trabajo de las consultas, por número de documento. Se
+    // reutiliza entre consultas: los puntajes se vuelven a cero al terminar y
+    // las marcas de palabra usan un contador que nunca se repite.
+    private float[] puntajes = new float[0];
+    private float[] parcial = new float[0];
+    private int[] vistoEnPalabra = new int[0];
+    private int ultimaPalabra;
+
+    /**
+     * Indexa una publicación, retirando antes las palabras con que estaba
+     * indexada.
+     */
+    void indexar(Publicacion publicacion) {
+        String id = publicacion.getIdArticulo();
+        quitar(id);
+
+        Map<String, Integer> campos = new LinkedHashMap<>();
+        agregarCampo(campos, publicacion.getTitulo(), CampoBusqueda.TITULO);
+        agregarCampo(campos, publicacion.getDescripcion(), CampoBusqueda.DESCRIPCION);
+        agregarCampo(campos, publicacion.getCategoria(), CampoBusqueda.CATEGORIA);
+        if (publicacion instanceof PublicacionTrueque) {
+            agregarCampo(campos, ((PublicacionTrueque) publicacion).getObjetosDeseados(),
+                    CampoBusqueda.OBJETOS_DESEADOS);
+        }
+        if (campos.isEmpty()) {
+            return;
+        }
+
+        String[] palabras = new String[campos.size()];
+        byte[] mascaras = new byte[campos.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entrada : campos.entrySet()) {
+            palabras[i] = entrada.getKey();
+            mascaras[i] = entrada.getValue().byteValue();
+            i++;
+        }
+        agregarDocumento(id, palabras, mascaras);
+    }
+
+    void quitar(String id) {
+        Integer documento = documentoPorId.remove(id);
+        if (documento == null) {
+            return;
+        }
+        for (String palabra : palabrasPorDocumento[documento]) {
+            Lista lista = listasPorPalabra.get(palabra);
+            lista.vigentes--;
+            if (lista.vigentes == 0) {
+                listasPorPalabra.remove(palabra);
+                entradasRetiradas -= lista.tamano - 1;
+            } else {
+                entradasRetiradas++;
+            }
+            entradasVigentes--;
+        }
+        idPorDocumento[documento] = null;
+        palabrasPorDocumento[documento] = null;
+        camposPorDocumento[documento] = null;
+
+        if (entradasRetiradas > COMPACTAR_DESDE && entradasRetiradas > entradasVigentes) {
+            compactar();
+        }
+    }
+
+    /**
+     * Busca las publicaciones que contienen alguna de las palabras.
+     *
+     * @param palabras Palabras ya normalizadas.
+     * @param campos   Campos en los que buscar.
+     * @param admitir  Filtro sobre los ids candidatos (por ejemplo, solo
+     *                 activas); solo se evalúa para los que entrarían en el
+     *                 resultado.
+     * @param limite   Máximo de resultados.
+     * @return Ids del mayor al menor puntaje; ante empate, el más reciente
+     *         primero.
+     */
+    List<String> buscar(Collection<String> palabras, Set<CampoBusqueda> campos,
+            Predicate<String> admitir, int limite) {
+        int mascaraConsulta = 0;
+        for (CampoBusqueda campo : campos) {
+            mascaraConsulta |= 1 << campo.ordinal();
+        }
+
+        if (puntajes.length < documentos) {
+            puntajes = new float[idPorDocumento.length];
+            parcial = new float[idPorDocumento.length];
+            vistoEnPalabra = new int[idPorDocumento.length];
+        }
+        float total = documentoPorId.size();
+        int[] candidatos = new int[16];
+        int cantidadCandidatos = 0;
+
+        // Una publicación suma cada palabra de la consulta una sola vez, por
+        // la mejor de sus coincidencias
+        int[] tocados = new int[16];
+
+        for (String palabra : palabras) {
+            int numeroPalabra = ++ultimaPalabra;
+            int cantidadTocados = 0;
+
+            for (Map.Entry<String, Lista> coincidencia : listasPorPalabra
+                    .subMap(palabra, true, palabra + Character.MAX_VALUE, true).entrySet()) {
+                Lista lista = coincidencia.getValue();
+                float rareza = (float) Math.log(1 + total / lista.vigentes);
+                float factor = coincidencia.getKey().equals(palabra) ? rareza : rareza * PESO_PREFIJO;
+
+                for (int i = 0; i < lista.tamano; i++) {
+                    int documento = lista.documentos[i];
+                    int peso = PESOS[lista.campos[i] & mascaraConsulta];
+                    if (peso == 0 || idPorDocumento[documento] == null) {
+                        continue;
+                    }
+                    float valor = peso * factor;
+                    if (vistoEnPalabra[documento] != numeroPalabra) {
+                        vistoEnPalabra[documento] = numeroPalabra;
+                        parcial[documento] = valor;
+                        if (cantidadTocados == tocados.length) {
+                            tocados = Arrays.copyOf(tocados, cantidadTocados * 2);
+                        }
+                        tocados[cantidadTocados++] = documento;
+                    } else if (valor > parcial[documento]) {
+                        parcial[documento] = valor;
+                    }
+                }
+            }
+
+            for (int i = 0; i < cantidadTocados; i++) {
+                int documento = tocados[i];
+                if (puntajes[documento] == 0) {
+                    if (cantidadCandidatos == candidatos.length) {
+                        candidatos = Arrays.copyOf(candidatos, cantidadCandidatos * 2);
+                    }
+                    candidatos[cantidadCandidatos++] = documento;
+                }
+                puntajes[documento] += parcial[documento];
+            }
+        }
+
+        // Los mejores en un montículo de tamaño limite; el peor queda arriba
+        Comparator<Integer> peorPrimero = (a, b) -> {
+            int porPuntaje = Float.compare(puntajes[a], puntajes[b]);
+            return (porPuntaje != 0) ? porPuntaje : idPorDocumento[a].compareTo(idPorDocumento[b]);
+        };
+        PriorityQueue<Integer> mejores = new PriorityQueue<>(Math.max(1, Math.min(limite, cantidadCandidatos)),
+                peorPrimero);
+        // Puntaje del peor de los mejores: descarta sin comparar objetos
+        float umbral = -1;
+        for (int i = 0; i < cantidadCandidatos; i++) {
+            int documento = candidatos[i];
+            if (puntajes[documento] < umbral) {
+                continue;
+            }
+            if (mejores.size() >= limite && peorPrimero.compare(documento, mejores.peek()) <= 0) {
+                continue;
+            }
+            if (!admitir.test(idPorDocumento[documento])) {
+                continue;
+            }
+            if (mejores.size() >= limite) {
+                mejores.poll();
+            }
+            mejores.add(documento);
+            if (mejores.size() >= limite) {
+                umbral = puntajes[mejores.peek()];
+            }
+        }
+
+        String[] ids = new String[mejores.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = idPorDocumento[mejores.poll()];
+        }
+        for (int i = 0; i < cantidadCandidatos; i++) {
+            puntajes[candidatos[i]] = 0;
+        }
+        return new ArrayList<>(Arrays.asList(ids));
+    }
+
+    private void agregarDocumento(String id, String[] palabras, byte[] mascaras) {
+        if (documentos == idPorDocumento.length) {
+            int capacidad = documentos * 2;
+            idPorDocumento = Arrays.copyOf(idPorDocumento, capacidad);
+            palabrasPorDocumento = Arrays.copyOf(palabrasPorDocumento, capacidad);
+            camposPorDocumento = Arrays.copyOf(camposPorDocumento, capacidad);
+        }
+        int documento = documentos++;
+        idPorDocumento[documento] = id;
+        palabrasPorDocumento[documento] = palabras;
+        camposPorDocumento[documento] = mascaras;
+        documentoPorId.put(id, documento);
+
+        for (int i = 0; i < palabras.length; i++) {
+            listasPorPalabra.computeIfAbsent(palabras[i], p -> new Lista()).agregar(documento, mascaras[i]);
+        }
+        entradasVigentes += palabras.length;
+    }
+
+    /**
+     * Vuelve a numerar los documentos vigentes y rehace las listas sin las
+     * entradas retiradas.
+     */
+    private void compactar() {
+        String[] ids = idPorDocumento;
+        String[][] palabras = palabrasPorDocumento;
+        byte[][] mascaras = camposPorDocumento;
+        int anteriores = documentos;
+
+        int capacidad = Math.max(64, documentoPorId.size() * 2);
+        idPorDocumento = new String[capacidad];
+        palabrasPorDocumento = new String[capacidad][];
+        camposPorDocumento = new byte[capacidad][];
+        documentos = 0;
+        documentoPorId.clear();
+        listasPorPalabra.clear();
+        entradasVigentes = 0;
+        entradasRetiradas = 0;
+
+        for (int documento = 0; documento < anteriores; documento++) {
+            if (ids[documento] != null) {
+                agregarDocumento(ids[documento], palabras[documento], mascaras[documento]);
+            }
+        }
+    }
+
+    private static void agregarCampo(Map<String, Integer> campos, String texto, CampoBusqueda campo) {
+        int bit = 1 << campo.ordinal();
+        for (String palabra : NormalizadorTexto.palabras(texto, LONGITUD_MINIMA)) {
+            campos.merge(palabra, bit, (a, b) -> a | b);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ * Clase: InstantaneaMapeada
+ * Formato de instantánea con índice, leído desde un archivo mapeado en memoria.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.1
+ */
+
+package persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Instantánea de un mapa clave → objeto que se puede abrir sin decodificar
+ * sus registros.
+ *
+ * Estructura del archivo:
+ * - Cabecera: "TRQM" + versión (int) + cantidad de registros (int) +
+ *   longitud del índice (int).
+ * - Índice: por cada registro, su clave, desplazamiento y longitud dentro
+ *   de la zona de datos y sus etiquetas (valores de texto que el
+ *   repositorio necesita para armar sus índices secundarios sin leer el
+ *   objeto). Termina con el CRC32 del índice.
+ * - Datos: cada objeto serializado con {@link Persistencia#serializar}.
+ *
+ * Al abrir, el archivo se mapea con {@link FileChannel#map} y solo se lee
+ * el índice; cada objeto se decodifica la primera vez que se pide (ver
+ * {@link MapaPerezoso}).
+ *
+ * Una instantánea nueva se escribe en un archivo temporal que se renombra
+ * sobre la anterior; el mapa pasa a apuntar al archivo nuevo y el mapeo
+ * viejo se libera con el GC. Windows no permite reemplazar un archivo
+ * mientras está mapeado: ahí el renombrado falla, la instantánea anterior
+ * queda intacta y los cambios siguen en la bitácora, que se reproduce al
+ * arrancar.
+ */
+public final class InstantaneaMapeada {
+
+    /**
+     * Bytes serializados de un objeto y sus etiquetas, dentro de un buffer
+     * (la zona de datos de un archivo mapeado o un arreglo en memoria).
+     */
+    static final class Registro {
+        private final ByteBuffer datos;
+        private final int desplazamiento;
+        final int longitud;
+        final String[] etiquetas;
+
+        Registro(ByteBuffer datos, int desplazamiento, int longitud, String[] etiquetas) {
+            this.datos = datos;
+            this.desplazamiento = desplazamiento;
+            this.longitud = longitud;
+            this.etiquetas = etiquetas;
+        }
+
+        static Registro deBytes(byte[] bytes, String[] etiquetas) {
+            return new Registro(ByteBuffer.wrap(bytes), 0, bytes.length, etiquetas);
+        }
+
+        byte[] leer() {
+            byte[] bytes = new byte[longitud];
+            datos.get(desplazamiento, bytes);
+            return bytes;
+        }
+
+        ByteBuffer contenido() {
+            return datos.slice(desplazamiento, longitud);
+        }
+    }
+
+    private static final byte[] MAGIA = { 'T', 'R', 'Q', 'M' };
+    private static final int VERSION = 1;
+
+    // Magia + versión + cantidad + longitud del índice
+    private static final int LONGITUD_CABECERA = 4 + 4 + 4 + 4;
+
+    private InstantaneaMapeada() {
+    }
+
+    /**
+     * Indica si el archivo está en este formato.
+     */
+    public static boolean esFormatoMapeado(File archivo) {
+        if (!archivo.isFile() || archivo.length() < LONGITUD_CABECERA) {
+            return false;
+        }
+        try (InputStream entrada = new FileInputStream(archivo)) {
+            return esFormatoMapeado(entrada.readNBytes(MAGIA.length));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Indica si los bytes comienzan con la cabecera de este formato.
+     */
+    public static boolean esFormatoMapeado(byte[] datos) {
+        return datos != null && datos.length >= MAGIA.length
+                && Arrays.equals(Arrays.copyOf(datos, MAGIA.length), MAGIA);
+    }
+
+    /**
+     * Mapea el archivo en memoria y lee su índice. Los objetos quedan sin
+     * decodificar hasta que se consultan.
+     *
+     * @param ruta Ruta de la instantánea.
+     * @return Mapa perezoso respaldado por el archivo.
+     * @throws IOException Si el archivo no tiene este formato o está dañado.
+     */
+    static <V> MapaPerezoso<V> abrir(String ruta) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel canal = FileChannel.open(new File(ruta).toPath(), StandardOpenOption.READ)) {
+            // El mapeo sigue siendo válido después de cerrar el canal
+            buffer = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+
+        byte[] magia = new byte[MAGIA.length];
+        buffer.get(magia);
+        if (!Arrays.equals(magia, MAGIA)) {
+            throw new IOException("Formato de instantánea no reconocido: " + ruta);
+        }
+        int version = buffer.getInt();
+        if (version > VERSION) {
+            throw new IOException("Versión de instantánea no soportada (" + version + "): " + ruta);
+        }
+        int cantidad = buffer.getInt();
+        int longitudIndice = buffer.getInt();
+        if (cantidad < 0 || longitudIndice < 0 || LONGITUD_CABECERA + longitudIndice + 8 > buffer.capacity()) {
+            throw new IOException("Cabecera de instantánea inválida: " + ruta);
+        }
+
+        ByteBuffer indice = buffer.slice(LONGITUD_CABECERA, longitudIndice);
+        long crcLeido = buffer.getLong(LONGITUD_CABECERA + longitudIndice);
+        CRC32 crc = new CRC32();
+        crc.update(indice.duplicate());
+        if (crc.getValue() != crcLeido) {
+            throw new IOException("Índice de instantánea corrupto: " + ruta);
+        }
+
+        int inicioDatos = LONGITUD_CABECERA + longitudIndice + 8;
+        ByteBuffer datos = buffer.slice(inicioDatos, buffer.capacity() - inicioDatos);
+
+        MapaPerezoso<V> mapa = new MapaPerezoso<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            String clave = leerTexto(indice);
+            int desplazamiento = indice.getInt();
+            int longitud = indice.getInt();
+            String[] etiquetas = new String[indice.get() & 0xFF];
+            for (int j = 0; j < etiquetas.length; j++) {
+                etiquetas[j] = leerTexto(indice);
+            }
+            if (desplazamiento < 0 || longitud < 0 || desplazamiento + longitud > datos.capacity()) {
+                throw new IOException("Registro fuera de rango en " + ruta + ": " + clave);
+            }
+            mapa.agregarRegistro(clave, new Registro(datos, desplazamiento, longitud, etiquetas));
+        }
+        return mapa;
+    }
+
+    /**
+     * Arma el contenido de una instantánea a partir del mapa: los registros
+     * que nunca se decodificaron se toman tal cual del archivo mapeado y el
+     * resto se serializa. Se invoca bajo el candado del repositorio; la
+     * escritura con {@link #guardar(String, Map)} puede hacerse fuera de él.
+     *
+     * @param estado    Mapa a escribir.
+     * @param etiquetas Etiquetas que se guardan en el índice para cada objeto.
+     * @return Registros por clave, en el orden del mapa.
+     */
+    static <V> Map<String, Registro> planificar(Map<String, V> estado, Function<V, String[]> etiquetas)
+            throws IOException {
+        MapaPerezoso<V> perezoso = (estado instanceof MapaPerezoso) ? (MapaPerezoso<V>) estado : null;
+        Map<String, Registro> registros = new LinkedHashMap<>(Math.max(16, estado.size() * 4 / 3 + 1));
+        for (String clave : estado.keySet()) {
+            Registro registro = (perezoso != null) ? perezoso.registroSinDecodificar(clave) : null;
+            if (registro == null) {
+                V valor = estado.get(clave);
+                if (valor == null) {
+                    continue;
+                }
+                registro = Registro.deBytes(Persistencia.serializar(valor), etiquetas.apply(valor));
+            }
+            registros.put(clave, registro);
+        }
+        return registros;
+    }
+
+    /**
+     * Escribe los registros en este formato sobre un archivo temporal, lo
+     * renombra sobre la ruta y mapea el archivo nuevo.
+     *
+     * El mapeo anterior no se toca: los registros que apuntan a él siguen
+     * siendo legibles (el renombrado no borra el contenido mientras esté
+     * mapeado) y el GC lo libera cuando el repositorio pasa a usar los
+     * registros devueltos.
+     *
+     * @param ruta      Ruta de la instantánea.
+     * @param registros Registros a escribir, armados con
+     *                  {@link #planificar(Map, Function)}.
+     * @return Registros equivalentes respaldados por el archivo nuevo.
+     */
+    static Map<String, Registro> guardar(String ruta, Map<String, Registro> registros) throws IOException {
+        ByteArrayOutputStream bufferIndice = new ByteArrayOutputStream();
+        DataOutputStream indice = new DataOutputStream(bufferIndice);
+        int desplazamiento = 0;
+        for (Map.Entry<String, Registro> entrada : registros.entrySet()) {
+            Registro registro = entrada.getValue();
+            escribirTexto(indice, entrada.getKey());
+            indice.writeInt(desplazamiento);
+            indice.writeInt(registro.longitud);
+            indice.writeByte(registro.etiquetas.length);
+            for (String etiqueta : registro.etiquetas) {
+                escribirTexto(indice, etiqueta);
+            }
+            desplazamiento += registro.longitud;
+        }
+        indice.flush();
+
+        byte[] bytesIndice = bufferIndice.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytesIndice);
+
+        ByteBuffer cabecera = ByteBuffer.allocate(LONGITUD_CABECERA + bytesIndice.length + 8);
+        cabecera.put(MAGIA);
+        cabecera.putInt(VERSION);
+        cabecera.putInt(registros.size());
+        cabecera.putInt(bytesIndice.length);
+        cabecera.put(bytesIndice);
+        cabecera.putLong(crc.getValue());
+        cabecera.flip();
+        int inicioDatos = cabecera.remaining();
+
+        Persistencia.escribirAtomico(ruta, canal -> {
+            Persistencia.escribirCompleto(canal, cabecera);
+            for (Registro registro : registros.values()) {
+                Persistencia.escribirCompleto(canal, registro.contenido());
+            }
+        });
+
+        ByteBuffer datos;
+        try (FileChannel canal = FileChannel.open(new File(ruta).toPath(), StandardOpenOption.READ)) {
+            datos = canal.map(FileChannel.MapMode.READ_ONLY, inicioDatos, desplazamiento);
+        }
+        Map<String, Registro> nuevos = new LinkedHashMap<>(Math.max(16, registros.size() * 4 / 3 + 1));
+        int posicion = 0;
+        for (Map.Entry<String, Registro> entrada : registros.entrySet()) {
+            Registro registro = entrada.getValue();
+            nuevos.put(entrada.getKey(), new Registro(datos, posicion, registro.longitud, registro.etiquetas));
+            posicion += registro.longitud;
+        }
+        return nuevos;
+    }
+
+    // Texto con longitud; -1 representa null
+    private static void escribirTexto(DataOutputStream salida, String texto) throws IOException {
+        if (texto == null) {
+            salida.writeInt(-1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        salida.writeInt(bytes.length);
+        salida.write(bytes);
+    }
+
+    private static String leerTexto(ByteBuffer entrada) {
+        int longitud = entrada.getInt();
+        if (longitud < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[longitud];
+        entrada.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
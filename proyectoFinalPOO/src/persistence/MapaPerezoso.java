@@ -0,0 +1,220 @@
+/**
+ * Clase: MapaPerezoso
+ * Mapa que decodifica sus valores desde una instantánea mapeada al consultarlos.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.3
+ */
+
+package persistence;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import persistence.InstantaneaMapeada.Registro;
+
+/**
+ * Mapa devuelto por {@link InstantaneaMapeada#abrir(String)}.
+ *
+ * Mientras un valor no se consulta, el mapa solo guarda dónde está en el
+ * archivo mapeado. Al pedirlo con {@link #get(Object)} (o al recorrer los
+ * valores) se decodifica y se reemplaza por el objeto. Las escrituras
+ * funcionan como en cualquier mapa.
+ *
+ * No es seguro para varios hilos: los repositorios lo usan bajo su candado,
+ * incluso en las lecturas, porque decodificar modifica el mapa.
+ */
+class MapaPerezoso<V> extends AbstractMap<String, V> {
+
+    // Valor decodificado o Registro pendiente, en el orden del archivo
+    private final Map<String, Object> entradas;
+    // Registro del que se decodificó cada valor que no se reemplazó después
+    private final Map<String, Registro> origenes = new HashMap<>();
+
+    MapaPerezoso(int capacidad) {
+        this.entradas = new LinkedHashMap<>(Math.max(16, capacidad * 4 / 3 + 1));
+    }
+
+    void agregarRegistro(String clave, Registro registro) {
+        entradas.put(clave, registro);
+    }
+
+    /**
+     * Etiquetas guardadas en el índice para un valor aún no decodificado.
+     *
+     * @return Etiquetas, o null si el valor ya se decodificó o se reemplazó.
+     */
+    String[] etiquetas(String clave) {
+        Object entrada = entradas.get(clave);
+        return (entrada instanceof Registro) ? ((Registro) entrada).etiquetas : null;
+    }
+
+    /**
+     * Registro tal como está en el archivo para un valor aún no decodificado.
+     *
+     * @return Registro, o null si el valor ya está en memoria.
+     */
+    Registro registroSinDecodificar(String clave) {
+        Object entrada = entradas.get(clave);
+        return (entrada instanceof Registro) ? (Registro) entrada : null;
+    }
+
+    /**
+     * Registro del que proviene el valor, esté decodificado o no.
+     *
+     * @return Registro, o null si el valor se reemplazó con put.
+     */
+    Registro registro(String clave) {
+        Object entrada = entradas.get(clave);
+        return (entrada instanceof Registro) ? (Registro) entrada : origenes.get(clave);
+    }
+
+    /**
+     * Cambia el registro de un valor por su copia en una instantánea nueva.
+     * No hace nada si entre tanto el valor se reemplazó o se eliminó.
+     */
+    void reubicar(String clave, Registro anterior, Registro nuevo) {
+        Object entrada = entradas.get(clave);
+        if (entrada == anterior) {
+            entradas.put(clave, nuevo);
+        } else if (entrada != null && origenes.get(clave) == anterior) {
+            origenes.put(clave, nuevo);
+        }
+    }
+
+    /**
+     * Indica que el valor actual, puesto con put, quedó escrito en el
+     * registro indicado de una instantánea nueva.
+     */
+    void asignarOrigen(String clave, Registro registro) {
+        Object entrada = entradas.get(clave);
+        if (entrada != null && !(entrada instanceof Registro)) {
+            origenes.put(clave, registro);
+        }
+    }
+
+    @Override
+    public V get(Object clave) {
+        Object entrada = entradas.get(clave);
+        if (entrada instanceof Registro) {
+            return decodificar((String) clave, (Registro) entrada);
+        }
+        @SuppressWarnings("unchecked")
+        V valor = (V) entrada;
+        return valor;
+    }
+
+    @Override
+    public boolean containsKey(Object clave) {
+        return entradas.containsKey(clave);
+    }
+
+    @Override
+    public V put(String clave, V valor) {
+        origenes.remove(clave);
+        Object anterior = entradas.put(clave, valor);
+        return (anterior instanceof Registro) ? null : castear(anterior);
+    }
+
+    /**
+     * Elimina la entrada. Si el valor no estaba decodificado, se decodifica
+     * para devolverlo, ya que los repositorios lo usan para actualizar sus
+     * índices.
+     */
+    @Override
+    public V remove(Object clave) {
+        Object entrada = entradas.get(clave);
+        V valor = (entrada instanceof Registro) ? decodificar((String) clave, (Registro) entrada) : castear(entrada);
+        entradas.remove(clave);
+        origenes.remove(clave);
+        return valor;
+    }
+
+    @Override
+    public int size() {
+        return entradas.size();
+    }
+
+    @Override
+    public void clear() {
+        entradas.clear();
+        origenes.clear();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return entradas.keySet();
+    }
+
+    /**
+     * Recorre las entradas decodificando cada valor al llegar a él.
+     */
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        return new AbstractSet<Map.Entry<String, V>>() {
+            @Override
+            public Iterator<Map.Entry<String, V>> iterator() {
+                Iterator<Map.Entry<String, Object>> base = entradas.entrySet().iterator();
+                return new Iterator<Map.Entry<String, V>>() {
+                    private String ultima;
+
+                    @Override
+                    public boolean hasNext() {
+                        return base.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<String, V> next() {
+                        Map.Entry<String, Object> entrada = base.next();
+                        ultima = entrada.getKey();
+                        Object valor = entrada.getValue();
+                        if (valor instanceof Registro) {
+                            Registro registro = (Registro) valor;
+                            valor = leer(entrada.getKey(), registro);
+                            entrada.setValue(valor);
+                            origenes.put(entrada.getKey(), registro);
+                        }
+                        return new SimpleEntry<>(entrada.getKey(), castear(valor));
+                    }
+
+                    @Override
+                    public void remove() {
+                        base.remove();
+                        origenes.remove(ultima);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entradas.size();
+            }
+        };
+    }
+
+    private V decodificar(String clave, Registro registro) {
+        V valor = leer(clave, registro);
+        entradas.put(clave, valor);
+        origenes.put(clave, registro);
+        return valor;
+    }
+
+    private V leer(String clave, Registro registro) {
+        try {
+            return castear(Persistencia.deserializar(registro.leer()));
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            System.err.println("No se pudo decodificar el registro " + clave + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V castear(Object valor) {
+        return (V) valor;
+    }
+}
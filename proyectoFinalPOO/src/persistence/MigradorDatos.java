@@ -0,0 +1,111 @@
+/**
+ * Clase: MigradorDatos
+ * Herramienta para pasar los archivos de datos al formato binario.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.1
+ */
+
+package persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Migración única de los archivos .dat escritos con serialización de Java
+ * al formato de {@link CodecBinario}.
+ *
+ * No es obligatorio ejecutarla: Persistencia lee ambos formatos y cada
+ * archivo se reescribe en binario la próxima vez que se guarda. La
+ * herramienta adelanta ese paso y reporta el tamaño y el tiempo de carga
+ * antes y después de migrar.
+ *
+ * Uso: java persistence.MigradorDatos [directorioDatos]
+ */
+public class MigradorDatos {
+
+    private static final String[] ARCHIVOS = {
+            "users.dat",
+            "publicaciones.dat",
+            "ofertas.dat",
+            "reportes.dat",
+            "config.dat",
+            "chats/cabeceras.dat"
+    };
+
+    // Repeticiones para medir el tiempo de carga
+    private static final int REPETICIONES = 20;
+
+    public static void main(String[] args) {
+        File directorio = new File(args.length > 0 ? args[0] : "data");
+        long totalAntes = 0;
+        long totalDespues = 0;
+
+        for (String nombre : ARCHIVOS) {
+            File archivo = new File(directorio, nombre);
+            if (!archivo.exists()) {
+                continue;
+            }
+            try {
+                long[] resultado = migrarArchivo(archivo);
+                totalAntes += resultado[0];
+                totalDespues += resultado[1];
+            } catch (IOException | ClassNotFoundException e) {
+                System.err.println(" ERROR: No se pudo migrar " + archivo.getPath() + ": " + e.getMessage());
+            }
+        }
+
+        System.out.printf("Total: %d bytes -> %d bytes%n", totalAntes, totalDespues);
+    }
+
+    /**
+     * Reescribe un archivo en formato binario si aún está en el formato
+     * anterior.
+     *
+     * @return Tamaño antes y después, en bytes.
+     */
+    private static long[] migrarArchivo(File archivo) throws IOException, ClassNotFoundException {
+        String ruta = archivo.getPath();
+        byte[] original = Files.readAllBytes(archivo.toPath());
+
+        if (CodecBinario.esFormatoBinario(original) || InstantaneaMapeada.esFormatoMapeado(original)) {
+            System.out.printf("%-28s ya migrado (%d bytes)%n", ruta, original.length);
+            return new long[] { original.length, original.length };
+        }
+
+        double msAntes = medirCarga(original);
+        Object objeto = Persistencia.deserializar(original);
+
+        if (!CodecBinario.soporta(objeto)) {
+            // Sin codificación propia (p. ej. la configuración global)
+            System.out.printf("%-28s sin cambios (%d bytes)%n", ruta, original.length);
+            return new long[] { original.length, original.length };
+        }
+
+        // Respaldo del archivo anterior antes de reemplazarlo
+        File respaldo = new File(ruta + ".java.bak");
+        Files.write(respaldo.toPath(), original);
+
+        byte[] migrado = Persistencia.serializar(objeto);
+        Persistencia.guardarBytes(ruta, migrado);
+        double msDespues = medirCarga(migrado);
+
+        System.out.printf("%-28s %7d -> %7d bytes (%.0f%%)   carga %.3f -> %.3f ms%n",
+                ruta, original.length, migrado.length,
+                100.0 * migrado.length / original.length, msAntes, msDespues);
+        return new long[] { original.length, migrado.length };
+    }
+
+    /**
+     * Tiempo promedio de decodificación en milisegundos.
+     */
+    private static double medirCarga(byte[] datos) throws IOException, ClassNotFoundException {
+        // Calentamiento
+        Persistencia.deserializar(datos);
+        long inicio = System.nanoTime();
+        for (int i = 0; i < REPETICIONES; i++) {
+            Persistencia.deserializar(datos);
+        }
+        return (System.nanoTime() - inicio) / 1_000_000.0 / REPETICIONES;
+    }
+}
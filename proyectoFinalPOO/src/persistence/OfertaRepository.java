@@ -2,78 +2,272 @@
  * Clase:  OfertaRepository
  * Gestionaa la persistencia de ofertas realizadas por usuarios dentro del sistema.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.1
+ * @version 1.13
  */
 
 package persistence;
 
 import model.Oferta;
+import util.EstadoOferta;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 public class OfertaRepository {
 
 	// 1. Base de datos principal (busqueda por ID de oferta)
+	// Con la instantánea mapeada, cada oferta se decodifica al consultarla
 	private static Map<String, Oferta> baseDeDatos = new HashMap<>();
-	private static final String RUTA_ARCHIVO = "data/ofertas.dat";
+	private static final String DIRECTORIO_POR_DEFECTO = "data";
+
+	// Directorio de los archivos; lo fija la primera instancia que carga
+	private static String directorioDatos = DIRECTORIO_POR_DEFECTO;
+	private static volatile String rutaArchivo = new File(DIRECTORIO_POR_DEFECTO, "ofertas.dat").getPath();
 
 	// 2. Indice secundario (Busqueda por publicacion)
-	// HashMap<String, List<Oferta>
-	private static Map<String, List<Oferta>> indicePorPublicacion = new HashMap<>();
+	// Key: idPublicacion, Value: sus ofertas ordenadas por monto y por fecha.
+	// La mejor oferta (mayor monto) es la primera del orden por monto
+	private static Map<String, HistorialPujas> historialPorPublicacion = new HashMap<>();
+
+	// 3. Indice por ofertante
+	// Key: idOfertante, Value: ids de sus ofertas agrupados por publicación,
+	// en orden de llegada
+	private static Map<String, Map<String, Set<String>>> indicePorOfertante = new HashMap<>();
+
+	// 4. Ofertas PENDIENTES
+	// Key: idOferta, Value: fecha de la oferta en milisegundos, para programar
+	// su expiración sin decodificar las demás
+	private static Map<String, Long> pendientes = new HashMap<>();
+
+	// 5. Archivo frío: ofertas retiradas del repositorio (por ejemplo, las expiradas)
+	private static volatile ArchivoOfertas archivoFrio =
+			new ArchivoOfertas(new File(DIRECTORIO_POR_DEFECTO, "ofertas_archivadas.dat").getPath());
+
+	// Etiquetas del índice de la instantánea, en este orden
+	private static final int ETIQUETA_PUBLICACION = 0;
+	private static final int ETIQUETA_MONTO = 1;
+	private static final int ETIQUETA_FECHA = 2;
+	private static final int ETIQUETA_OFERTANTE = 3;
+	private static final int ETIQUETA_ESTADO = 4;
+
+	// Protege los mapas e índices: todas las operaciones lo toman, así el
+	// repositorio se puede usar desde varios hilos y desde el escritor en
+	// segundo plano
+	private static final Object CANDADO = new Object();
+
+	// Los datos se leen de disco una sola vez por proceso: con escritura
+	// diferida, releer el archivo podría traer un estado anterior.
+	private static boolean cargado = false;
 
 	public OfertaRepository() {
-		try {
-			@SuppressWarnings("unchecked")
-			Map<String, Oferta> loaded = (Map<String, Oferta>) Persistencia.cargarObjeto(RUTA_ARCHIVO);
-			if (loaded != null)
-				baseDeDatos = loaded;
-			// Reconstruir índice secundario
-			reconstruirIndice();
-		} catch (Exception e) {
-			baseDeDatos = new HashMap<>();
-			indicePorPublicacion = new HashMap<>();
+		this(DIRECTORIO_POR_DEFECTO);
+	}
+
+	/**
+	 * Repositorio sobre otro directorio de datos, por ejemplo uno temporal
+	 * para pruebas. Como los datos se comparten en el proceso, el directorio
+	 * lo fija la primera instancia; pedir otro después es un error.
+	 *
+	 * @throws IllegalStateException Si ya se cargó desde otro directorio
+	 */
+	OfertaRepository(String directorio) {
+		synchronized (CANDADO) {
+			if (cargado) {
+				if (!directorioDatos.equals(directorio)) {
+					throw new IllegalStateException("Las ofertas ya se cargaron desde " + directorioDatos);
+				}
+				return;
+			}
+			cargado = true;
+			if (!directorioDatos.equals(directorio)) {
+				directorioDatos = directorio;
+				rutaArchivo = new File(directorio, "ofertas.dat").getPath();
+				archivoFrio = new ArchivoOfertas(new File(directorio, "ofertas_archivadas.dat").getPath());
+			}
+			try {
+				if (InstantaneaMapeada.esFormatoMapeado(new File(rutaArchivo))) {
+					// Solo se lee el índice; las ofertas se decodifican al consultarlas
+					baseDeDatos = InstantaneaMapeada.abrir(rutaArchivo);
+				} else {
+					@SuppressWarnings("unchecked")
+					Map<String, Oferta> loaded = (Map<String, Oferta>) Persistencia.cargarObjeto(rutaArchivo);
+					if (loaded != null)
+						baseDeDatos = loaded;
+				}
+				// Reconstruir índice secundario
+				reconstruirIndice();
+			} catch (Exception e) {
+				baseDeDatos = new HashMap<>();
+				historialPorPublicacion = new HashMap<>();
+				indicePorOfertante = new HashMap<>();
+				pendientes = new HashMap<>();
+			}
 		}
 	}
 
+	@SuppressWarnings("unchecked")
 	private static void reconstruirIndice() {
-		indicePorPublicacion = new HashMap<>();
-		for (Oferta oferta : baseDeDatos.values()) {
-			String idPub = oferta.getIdPublicacion();
-			indicePorPublicacion.putIfAbsent(idPub, new ArrayList<>());
-			indicePorPublicacion.get(idPub).add(oferta);
+		historialPorPublicacion = new HashMap<>();
+		indicePorOfertante = new HashMap<>();
+		pendientes = new HashMap<>();
+		MapaPerezoso<Oferta> perezoso = (baseDeDatos instanceof MapaPerezoso)
+				? (MapaPerezoso<Oferta>) baseDeDatos
+				: null;
+		for (String idOferta : baseDeDatos.keySet()) {
+			String[] etiquetas = (perezoso != null) ? perezoso.etiquetas(idOferta) : null;
+			String idPub;
+			double monto;
+			long fechaMs;
+			String idOfertante;
+			boolean pendiente;
+			if (etiquetas != null && etiquetas.length > ETIQUETA_ESTADO) {
+				idPub = etiquetas[ETIQUETA_PUBLICACION];
+				monto = Double.parseDouble(etiquetas[ETIQUETA_MONTO]);
+				fechaMs = Long.parseLong(etiquetas[ETIQUETA_FECHA]);
+				idOfertante = etiquetas[ETIQUETA_OFERTANTE];
+				pendiente = EstadoOferta.PENDIENTE.name().equals(etiquetas[ETIQUETA_ESTADO]);
+			} else {
+				// Instantáneas anteriores no guardan todas las etiquetas: se decodifica
+				Oferta oferta = baseDeDatos.get(idOferta);
+				if (oferta == null) {
+					continue;
+				}
+				idPub = oferta.getIdPublicacion();
+				monto = oferta.getMontoOferta();
+				fechaMs = fechaMs(oferta);
+				idOfertante = oferta.getIdOfertante();
+				pendiente = oferta.getEstadoOferta() == EstadoOferta.PENDIENTE;
+			}
+			historialPorPublicacion.computeIfAbsent(idPub, id -> new HistorialPujas()).agregar(idOferta, monto, fechaMs);
+			indexarOfertante(idOfertante, idPub, idOferta);
+			if (pendiente) {
+				pendientes.put(idOferta, fechaMs);
+			}
 		}
 	}
 
+	/**
+	 * Valores de la oferta que se guardan en el índice de la instantánea
+	 * para armar los índices sin decodificarla.
+	 */
+	private static String[] etiquetas(Oferta oferta) {
+		String[] etiquetas = new String[5];
+		etiquetas[ETIQUETA_PUBLICACION] = oferta.getIdPublicacion();
+		etiquetas[ETIQUETA_MONTO] = Double.toString(oferta.getMontoOferta());
+		etiquetas[ETIQUETA_FECHA] = Long.toString(fechaMs(oferta));
+		etiquetas[ETIQUETA_OFERTANTE] = oferta.getIdOfertante();
+		etiquetas[ETIQUETA_ESTADO] = oferta.getEstadoOferta().name();
+		return etiquetas;
+	}
+
+	private static void indexarOfertante(String idOfertante, String idPub, String idOferta) {
+		if (idOfertante == null) {
+			return;
+		}
+		indicePorOfertante.computeIfAbsent(idOfertante, id -> new LinkedHashMap<>())
+				.computeIfAbsent(idPub, id -> new LinkedHashSet<>())
+				.add(idOferta);
+	}
+
+	private static void quitarOfertante(String idOfertante, String idPub, String idOferta) {
+		Map<String, Set<String>> porPublicacion = (idOfertante == null) ? null : indicePorOfertante.get(idOfertante);
+		if (porPublicacion == null) {
+			return;
+		}
+		Set<String> ids = porPublicacion.get(idPub);
+		if (ids != null) {
+			ids.remove(idOferta);
+			if (ids.isEmpty()) {
+				porPublicacion.remove(idPub);
+			}
+		}
+		if (porPublicacion.isEmpty()) {
+			indicePorOfertante.remove(idOfertante);
+		}
+	}
+
+	private static long fechaMs(Oferta oferta) {
+		return oferta.getFechaOferta() == null ? 0L : oferta.getFechaOferta().getTime();
+	}
+
 	/**
 	 * Guarda o actualiza un objeto Oferta.
 	 */
 	public void guardar(Oferta oferta) {
+		synchronized (CANDADO) {
+			ponerEnMemoria(oferta);
+		}
+
+		programarEscritura();
+	}
+
+	private static void ponerEnMemoria(Oferta oferta) {
 		// Guardar en la estructura principal
 		baseDeDatos.put(oferta.getIdOferta(), oferta);
 
 		// Actualizar el indice secundario
 		String idPub = oferta.getIdPublicacion();
 
-		// Si no existe la lista para esa publicacion, la creamos
-		indicePorPublicacion.putIfAbsent(idPub, new ArrayList<>());
-
-		// Obtenemos la lista y agregamos la oferta
-		List<Oferta> ofertasDeLaPublicacion = indicePorPublicacion.get(idPub);
+		// Si no existe el historial para esa publicacion, lo creamos.
+		// Volver a guardar la misma oferta solo la reubica
+		historialPorPublicacion.computeIfAbsent(idPub, id -> new HistorialPujas())
+				.agregar(oferta.getIdOferta(), oferta.getMontoOferta(), fechaMs(oferta));
+		indexarOfertante(oferta.getIdOfertante(), idPub, oferta.getIdOferta());
+		if (oferta.getEstadoOferta() == EstadoOferta.PENDIENTE) {
+			pendientes.put(oferta.getIdOferta(), fechaMs(oferta));
+		} else {
+			pendientes.remove(oferta.getIdOferta());
+		}
+	}
 
-		// Opcional para evitar duplicados
-		if (!ofertasDeLaPublicacion.contains(oferta)) {
-			ofertasDeLaPublicacion.add(oferta);
+	/**
+	 * Guarda o actualiza varias ofertas como una sola operación: se indexan
+	 * bajo un mismo candado y se programa una única escritura del archivo.
+	 */
+	public void guardarTodas(Collection<Oferta> ofertas) {
+		if (ofertas == null || ofertas.isEmpty()) {
+			return;
+		}
+		synchronized (CANDADO) {
+			for (Oferta oferta : ofertas) {
+				ponerEnMemoria(oferta);
+			}
 		}
 
-		try {
-			Persistencia.guardarObjeto(RUTA_ARCHIVO, baseDeDatos);
-		} catch (IOException e) {
-			e.printStackTrace();
+		programarEscritura();
+	}
+
+	/**
+	 * Deja la escritura del archivo a cargo del escritor en segundo plano.
+	 * Varios guardados seguidos producen una sola escritura.
+	 */
+	private static void programarEscritura() {
+		ServicioPersistencia.getInstancia().marcarSucio(rutaArchivo, OfertaRepository::volcar);
+	}
+
+	private static void volcar() throws IOException {
+		Map<String, InstantaneaMapeada.Registro> registros;
+		synchronized (CANDADO) {
+			// Las ofertas que no se consultaron se copian sin decodificarlas
+			registros = InstantaneaMapeada.planificar(baseDeDatos, OfertaRepository::etiquetas);
+		}
+		Map<String, InstantaneaMapeada.Registro> nuevos = InstantaneaMapeada.guardar(rutaArchivo, registros);
+		synchronized (CANDADO) {
+			// Dejar de referenciar el archivo reemplazado
+			if (baseDeDatos instanceof MapaPerezoso) {
+				MapaPerezoso<Oferta> perezoso = (MapaPerezoso<Oferta>) baseDeDatos;
+				for (Map.Entry<String, InstantaneaMapeada.Registro> entrada : registros.entrySet()) {
+					perezoso.reubicar(entrada.getKey(), entrada.getValue(), nuevos.get(entrada.getKey()));
+				}
+			}
 		}
 	}
 
@@ -81,42 +275,267 @@ public class OfertaRepository {
 	 * Busca una oferta por su ID de Oferta.
 	 */
 	public Oferta buscarPorIdOferta(String idOferta) {
-		return baseDeDatos.get(idOferta);
+		synchronized (CANDADO) {
+			return baseDeDatos.get(idOferta);
+		}
 	}
 
 	/**
 	 * Busca todas las ofertas realizadas por un ofertante específico.
 	 */
 	public List<Oferta> buscarOfertasPorOfertante(String idOfertante) {
-		return baseDeDatos.values().stream()
-				.filter(oferta -> oferta.getIdOfertante().equals(idOfertante))
-				.collect(Collectors.toList());
+		synchronized (CANDADO) {
+			List<Oferta> ofertas = new ArrayList<>();
+			Map<String, Set<String>> porPublicacion = indicePorOfertante.get(idOfertante);
+			if (porPublicacion != null) {
+				for (Set<String> ids : porPublicacion.values()) {
+					ofertas.addAll(resolver(ids));
+				}
+			}
+			return ofertas;
+		}
+	}
+
+	/**
+	 * Busca las ofertas de un ofertante sobre un conjunto de publicaciones,
+	 * por ejemplo las de un vendedor. Se recorre el lado más pequeño (las
+	 * publicaciones donde ofertó o las recibidas), sin revisar las demás
+	 * ofertas del sistema.
+	 *
+	 * @param idOfertante   Usuario que realizó las ofertas.
+	 * @param publicaciones Ids de las publicaciones de interés.
+	 */
+	public List<Oferta> buscarOfertasEnPublicaciones(String idOfertante, Set<String> publicaciones) {
+		synchronized (CANDADO) {
+			List<Oferta> ofertas = new ArrayList<>();
+			Map<String, Set<String>> porPublicacion = indicePorOfertante.get(idOfertante);
+			if (porPublicacion == null || publicaciones == null) {
+				return ofertas;
+			}
+			if (porPublicacion.size() <= publicaciones.size()) {
+				for (Map.Entry<String, Set<String>> entrada : porPublicacion.entrySet()) {
+					if (publicaciones.contains(entrada.getKey())) {
+						ofertas.addAll(resolver(entrada.getValue()));
+					}
+				}
+			} else {
+				for (String idPub : publicaciones) {
+					Set<String> ids = porPublicacion.get(idPub);
+					if (ids != null) {
+						ofertas.addAll(resolver(ids));
+					}
+				}
+			}
+			return ofertas;
+		}
+	}
+
+	/**
+	 * Devuelve la oferta de mayor monto de una publicación sin recorrer sus
+	 * ofertas. Ante empate, la más antigua.
+	 *
+	 * @return Mejor oferta, o null si la publicación no tiene ofertas.
+	 */
+	public Oferta buscarMejorOferta(String idPublicacion) {
+		synchronized (CANDADO) {
+			HistorialPujas historial = historialPorPublicacion.get(idPublicacion);
+			String idMejor = (historial == null) ? null : historial.mejor();
+			return idMejor == null ? null : baseDeDatos.get(idMejor);
+		}
+	}
+
+	/**
+	 * Guarda una puja solo si supera a la mejor oferta actual de su
+	 * publicación y al precio mínimo. La comparación y el guardado en
+	 * memoria ocurren bajo el mismo candado que cualquier otra escritura de
+	 * ofertas: de dos pujas simultáneas por el mismo monto, solo una se
+	 * acepta. Se puede comprobar con {@link PruebaConcurrenciaPujas}.
+	 *
+	 * @param puja         Oferta a registrar.
+	 * @param precioMinimo Monto que toda puja debe superar.
+	 * @return true si la puja se guardó; false si no superaba la actual.
+	 */
+	public boolean guardarPujaSiSupera(Oferta puja, double precioMinimo) {
+		synchronized (CANDADO) {
+			double actual = precioMinimo;
+			HistorialPujas historial = historialPorPublicacion.get(puja.getIdPublicacion());
+			if (historial != null && !historial.estaVacio() && historial.montoMejor() > actual) {
+				actual = historial.montoMejor();
+			}
+			if (puja.getMontoOferta() <= actual) {
+				return false;
+			}
+			ponerEnMemoria(puja);
+		}
+
+		programarEscritura();
+		return true;
 	}
 
 	// Buscar todas las ofertas
 	public List<Oferta> buscarTodasLasOfertas() {
-		return new ArrayList<>(baseDeDatos.values());
+		synchronized (CANDADO) {
+			return new ArrayList<>(baseDeDatos.values());
+		}
 	}
 
-	// Buscar ofertas por idPublicacion
+	// Buscar ofertas por idPublicacion (solo se decodifican las de esa publicación)
 	public List<Oferta> buscarPorPublicacion(String idPublicacion) {
-		return indicePorPublicacion.getOrDefault(idPublicacion, new ArrayList<>());
+		synchronized (CANDADO) {
+			HistorialPujas historial = historialPorPublicacion.get(idPublicacion);
+			return (historial == null) ? new ArrayList<>() : resolver(historial.idsEnOrdenDeLlegada());
+		}
+	}
+
+	/**
+	 * Devuelve una página de las ofertas de una publicación, de mayor a menor
+	 * monto. Solo se decodifican las ofertas de la página.
+	 *
+	 * @param despuesDe Última oferta de la página anterior, o null para
+	 *                  empezar por la mejor.
+	 * @param cantidad  Máximo de ofertas a devolver.
+	 */
+	public List<Oferta> buscarPujasPorMonto(String idPublicacion, Oferta despuesDe, int cantidad) {
+		synchronized (CANDADO) {
+			HistorialPujas historial = historialPorPublicacion.get(idPublicacion);
+			if (historial == null) {
+				return new ArrayList<>();
+			}
+			return (despuesDe == null)
+					? resolver(historial.paginaPorMonto(null, 0, 0, cantidad))
+					: resolver(historial.paginaPorMonto(despuesDe.getIdOferta(), despuesDe.getMontoOferta(),
+							fechaMs(despuesDe), cantidad));
+		}
+	}
+
+	/**
+	 * Devuelve una página de las ofertas de una publicación, de la más
+	 * reciente a la más antigua.
+	 *
+	 * @param despuesDe Última oferta de la página anterior, o null para
+	 *                  empezar por la más reciente.
+	 * @param cantidad  Máximo de ofertas a devolver.
+	 */
+	public List<Oferta> buscarPujasRecientes(String idPublicacion, Oferta despuesDe, int cantidad) {
+		synchronized (CANDADO) {
+			HistorialPujas historial = historialPorPublicacion.get(idPublicacion);
+			if (historial == null) {
+				return new ArrayList<>();
+			}
+			return (despuesDe == null)
+					? resolver(historial.paginaRecientes(null, 0, 0, cantidad))
+					: resolver(historial.paginaRecientes(despuesDe.getIdOferta(), despuesDe.getMontoOferta(),
+							fechaMs(despuesDe), cantidad));
+		}
+	}
+
+	/**
+	 * Cantidad de ofertas de una publicación, sin decodificarlas.
+	 */
+	public int contarOfertas(String idPublicacion) {
+		synchronized (CANDADO) {
+			HistorialPujas historial = historialPorPublicacion.get(idPublicacion);
+			return (historial == null) ? 0 : historial.cantidad();
+		}
+	}
+
+	private static List<Oferta> resolver(Iterable<String> ids) {
+		List<Oferta> ofertas = new ArrayList<>();
+		for (String idOferta : ids) {
+			Oferta oferta = baseDeDatos.get(idOferta);
+			if (oferta != null) {
+				ofertas.add(oferta);
+			}
+		}
+		return ofertas;
 	}
 
 	public void eliminar(String idOferta) {
+		Oferta oferta;
+		synchronized (CANDADO) {
+			oferta = quitarDeMemoria(idOferta);
+		}
+		if (oferta != null) {
+			// Guardar cambios
+			programarEscritura();
+		}
+	}
+
+	private static Oferta quitarDeMemoria(String idOferta) {
 		Oferta oferta = baseDeDatos.remove(idOferta);
 		if (oferta != null) {
-			// Eliminar del índice secundario
+			// Eliminar del índice secundario. Si era la mejor, pasa a
+			// serlo la siguiente de mayor monto
 			String idPub = oferta.getIdPublicacion();
-			if (indicePorPublicacion.containsKey(idPub)) {
-				indicePorPublicacion.get(idPub).remove(oferta);
+			quitarOfertante(oferta.getIdOfertante(), idPub, idOferta);
+			HistorialPujas historial = historialPorPublicacion.get(idPub);
+			if (historial != null) {
+				historial.quitar(idOferta);
+				if (historial.estaVacio()) {
+					historialPorPublicacion.remove(idPub);
+				}
 			}
-			// Guardar cambios
-			try {
-				Persistencia.guardarObjeto(RUTA_ARCHIVO, baseDeDatos);
-			} catch (IOException e) {
-				e.printStackTrace();
+			pendientes.remove(idOferta);
+		}
+		return oferta;
+	}
+
+	/**
+	 * Devuelve las ofertas PENDIENTES con su fecha (id -> milisegundos),
+	 * sin decodificarlas.
+	 */
+	public Map<String, Long> buscarFechasDePendientes() {
+		synchronized (CANDADO) {
+			return new HashMap<>(pendientes);
+		}
+	}
+
+	/**
+	 * Marca como EXPIRADAS las ofertas indicadas que sigan PENDIENTES y las
+	 * mueve al archivo frío: salen de los índices y de la instantánea
+	 * principal. El archivo se escribe antes que la instantánea, en el
+	 * escritor en segundo plano.
+	 *
+	 * @return Ofertas expiradas.
+	 */
+	public List<Oferta> expirarYArchivar(Collection<String> idsOfertas) {
+		List<Oferta> expiradas = new ArrayList<>();
+		synchronized (CANDADO) {
+			for (String idOferta : idsOfertas) {
+				Oferta oferta = baseDeDatos.get(idOferta);
+				if (oferta != null && oferta.getEstadoOferta() == EstadoOferta.PENDIENTE) {
+					oferta.setEstadoOferta(EstadoOferta.EXPIRADA);
+					expiradas.add(oferta);
+				}
+			}
+			if (expiradas.isEmpty()) {
+				return expiradas;
+			}
+			// Se encola antes de quitarlas: una instantánea posterior a este
+			// punto se escribe después del archivo
+			List<Oferta> lote = new ArrayList<>(expiradas);
+			ArchivoOfertas destino = archivoFrio;
+			ServicioPersistencia.getInstancia().encolar(() -> destino.anexar(lote));
+			for (Oferta oferta : expiradas) {
+				quitarDeMemoria(oferta.getIdOferta());
 			}
 		}
+		programarEscritura();
+		return expiradas;
+	}
+
+	/**
+	 * Lee las ofertas del archivo frío. Recorre el archivo completo, así que
+	 * no debe usarse en consultas frecuentes.
+	 */
+	public List<Oferta> buscarOfertasArchivadas() {
+		// Incluir lo archivado que aún esté pendiente de escritura
+		ServicioPersistencia.getInstancia().flush();
+		try {
+			return archivoFrio.leerTodas();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new ArrayList<>();
+		}
 	}
 }
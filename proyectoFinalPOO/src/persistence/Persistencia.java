@@ -2,52 +2,186 @@
  * Clase: Persistencia
  * Clase utilidad para serialización de objetos.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.2
- */
+ * @version 1.7
+ */
 
 package persistence;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 public class Persistencia {
 
     /**
      * Guarda un objeto serializable en la ruta especificada.
      * Crea automáticamente los directorios padre si no existen.
-     * 
+     *
      * @param ruta   Ruta del archivo (ej. "data/users.dat")
      * @param objeto Objeto a guardar (debe implementar Serializable)
      * @throws IOException Si ocurre un error de escritura
      */
     public static void guardarObjeto(String ruta, Object objeto) throws IOException {
+        guardarBytes(ruta, serializar(objeto));
+    }
+
+    /**
+     * Escribe en la ruta indicada un contenido ya serializado.
+     * Permite serializar el estado dentro de una sección crítica y hacer
+     * la escritura a disco fuera de ella.
+     *
+     * La escritura es atómica: el contenido se escribe en un archivo
+     * temporal hermano, se fuerza a disco y se renombra sobre el destino.
+     * Ante una caída, el archivo queda con la versión anterior o con la
+     * nueva, nunca a medio escribir.
+     *
+     * @param ruta  Ruta del archivo
+     * @param datos Bytes a escribir (reemplazan el contenido anterior)
+     * @throws IOException Si ocurre un error de escritura
+     */
+    public static void guardarBytes(String ruta, byte[] datos) throws IOException {
+        escribirAtomico(ruta, canal -> escribirCompleto(canal, ByteBuffer.wrap(datos)));
+    }
+
+    /**
+     * Escritura del contenido de un archivo sobre un canal abierto.
+     */
+    interface EscrituraCanal {
+        void escribir(FileChannel canal) throws IOException;
+    }
+
+    /**
+     * Igual que {@link #guardarBytes(String, byte[])}, pero el contenido se
+     * escribe directamente en el canal del archivo temporal, sin armarlo
+     * antes completo en memoria.
+     */
+    static void escribirAtomico(String ruta, EscrituraCanal escritura) throws IOException {
         // Crear directorios padre si no existen
         File archivo = new File(ruta);
-        File directorioPadre = archivo.getParentFile();
+        crearDirectorioPadre(archivo);
 
-        if (directorioPadre != null && !directorioPadre.exists()) {
-            boolean creado = directorioPadre.mkdirs();
-            if (creado) {
-                System.out.println("✓ Directorio creado: " + directorioPadre.getPath());
+        Path destino = archivo.toPath().toAbsolutePath();
+        Path temporal = destino.resolveSibling(archivo.getName() + ".tmp");
+
+        try {
+            try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                escritura.escribir(canal);
+                canal.force(true);
             }
-        }
 
-        // Guardar el objeto
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(archivo))) {
-            oos.writeObject(objeto);
+            try {
+                Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporal);
+            throw e;
         }
+
+        sincronizarDirectorio(destino.getParent());
     }
 
     /**
      * Carga un objeto desde la ruta especificada.
-     * 
+     *
      * @param ruta Ruta del archivo
      * @return El objeto cargado
      * @throws IOException            Si ocurre un error de lectura
      * @throws ClassNotFoundException Si la clase del objeto no se encuentra
      */
     public static Object cargarObjeto(String ruta) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(ruta))) {
+        return deserializar(Files.readAllBytes(new File(ruta).toPath()));
+    }
+
+    /**
+     * Serializa un objeto a un arreglo de bytes en memoria.
+     * Los objetos del modelo (y mapas o listas de ellos) usan el formato
+     * compacto de {@link CodecBinario}; el resto, serialización de Java.
+     *
+     * @param objeto Objeto a serializar (debe implementar Serializable)
+     * @return Representación binaria del objeto
+     * @throws IOException Si el objeto no se puede serializar
+     */
+    public static byte[] serializar(Object objeto) throws IOException {
+        if (CodecBinario.soporta(objeto)) {
+            return CodecBinario.codificar(objeto);
+        }
+        return serializarJava(objeto);
+    }
+
+    /**
+     * Serializa un objeto con la serialización estándar de Java.
+     */
+    static byte[] serializarJava(Object objeto) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(buffer)) {
+            oos.writeObject(objeto);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Reconstruye un objeto a partir de los bytes generados por
+     * {@link #serializar(Object)}. Reconoce tanto el formato binario como
+     * la serialización de Java de los archivos anteriores.
+     *
+     * @param datos Bytes del objeto
+     * @return El objeto reconstruido
+     * @throws IOException            Si los bytes están corruptos
+     * @throws ClassNotFoundException Si la clase del objeto no se encuentra
+     */
+    public static Object deserializar(byte[] datos) throws IOException, ClassNotFoundException {
+        if (CodecBinario.esFormatoBinario(datos)) {
+            return CodecBinario.decodificar(datos);
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(datos))) {
             return ois.readObject();
         }
     }
+
+    /**
+     * Escribe todo el contenido restante del buffer en el canal.
+     */
+    static void escribirCompleto(FileChannel canal, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+    }
+
+    /**
+     * Fuerza a disco la entrada de directorio del renombrado. No todos los
+     * sistemas permiten abrir un directorio; en ese caso se omite.
+     */
+    private static void sincronizarDirectorio(Path directorio) {
+        if (directorio == null) {
+            return;
+        }
+        try (FileChannel canal = FileChannel.open(directorio, StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (IOException e) {
+            // No soportado en esta plataforma (p. ej. Windows)
+        }
+    }
+
+    /**
+     * Crea el directorio padre del archivo si aún no existe.
+     */
+    static void crearDirectorioPadre(File archivo) {
+        File directorioPadre = archivo.getParentFile();
+
+        if (directorioPadre != null && !directorioPadre.exists()) {
+            boolean creado = directorioPadre.mkdirs();
+            if (creado) {
+                System.out.println("✓ Directorio creado: " + directorioPadre.getPath());
+            }
+        }
+    }
 }
@@ -0,0 +1,206 @@
+/**
+ * Clase: PruebaConcurrenciaPujas
+ * Prueba de carga para las pujas simultáneas sobre una misma subasta.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.1
+ */
+
+package persistence;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import model.Oferta;
+import util.EstadoOferta;
+
+/**
+ * Lanza varios hilos que pujan a la vez sobre unas pocas subastas ficticias
+ * con {@link OfertaRepository#guardarPujaSiSupera(Oferta, double)} y
+ * comprueba que:
+ * - en cada subasta no se aceptan dos pujas por el mismo monto;
+ * - si una puja aceptada terminó antes de que empezara otra aceptada, la
+ *   segunda tiene un monto estrictamente mayor;
+ * - la mejor oferta final es la puja aceptada de mayor monto.
+ *
+ * Los montos se eligen cerca de la mejor oferta vigente para forzar
+ * empates.
+ *
+ * El repositorio trabaja sobre un directorio temporal, nunca sobre data:
+ * si la prueba se interrumpe, las pujas ficticias no quedan en los datos
+ * reales. El directorio se borra al terminar.
+ *
+ * Uso: java persistence.PruebaConcurrenciaPujas [hilos] [pujasPorHilo] [subastas]
+ * Termina con código 1 si alguna comprobación falla.
+ */
+public class PruebaConcurrenciaPujas {
+
+    private static final String PREFIJO = "PRUEBA-CONCURRENCIA-";
+
+    /**
+     * Resultado de una puja, con los instantes en que empezó y terminó la
+     * llamada al repositorio.
+     */
+    private static final class Intento {
+        final Oferta puja;
+        final long inicio;
+        final long fin;
+        final boolean aceptada;
+
+        Intento(Oferta puja, long inicio, long fin, boolean aceptada) {
+            this.puja = puja;
+            this.inicio = inicio;
+            this.fin = fin;
+            this.aceptada = aceptada;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        int hilos = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int pujasPorHilo = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int cantidadSubastas = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        Path directorio = Files.createTempDirectory("prueba-pujas");
+        OfertaRepository repositorio = new OfertaRepository(directorio.toString());
+        String[] subastas = new String[cantidadSubastas];
+        for (int i = 0; i < cantidadSubastas; i++) {
+            subastas[i] = PREFIJO + "SUBASTA-" + i + "-" + System.nanoTime();
+        }
+
+        List<List<Intento>> porHilo = new ArrayList<>();
+        CountDownLatch salida = new CountDownLatch(1);
+        Thread[] trabajadores = new Thread[hilos];
+        for (int h = 0; h < hilos; h++) {
+            List<Intento> intentos = new ArrayList<>(pujasPorHilo);
+            porHilo.add(intentos);
+            int numeroHilo = h;
+            trabajadores[h] = new Thread(() -> {
+                Random azar = new Random(numeroHilo);
+                try {
+                    salida.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < pujasPorHilo; i++) {
+                    String subasta = subastas[azar.nextInt(subastas.length)];
+                    Oferta mejor = repositorio.buscarMejorOferta(subasta);
+                    double base = (mejor == null) ? 0 : mejor.getMontoOferta();
+                    Oferta puja = new Oferta(PREFIJO + numeroHilo + "-" + i, subasta, "ofertante-" + numeroHilo,
+                            new java.util.Date(), base + azar.nextInt(3), null, EstadoOferta.PENDIENTE);
+
+                    long inicio = System.nanoTime();
+                    boolean aceptada = repositorio.guardarPujaSiSupera(puja, 0);
+                    long fin = System.nanoTime();
+                    intentos.add(new Intento(puja, inicio, fin, aceptada));
+                }
+            }, "pujador-" + h);
+            trabajadores[h].start();
+        }
+
+        long inicioPrueba = System.nanoTime();
+        salida.countDown();
+        for (Thread trabajador : trabajadores) {
+            trabajador.join();
+        }
+        long duracionMs = (System.nanoTime() - inicioPrueba) / 1_000_000;
+
+        List<Intento> todos = new ArrayList<>();
+        for (List<Intento> intentos : porHilo) {
+            todos.addAll(intentos);
+        }
+
+        List<String> errores = new ArrayList<>();
+        int aceptadas = 0;
+        for (String subasta : subastas) {
+            List<Intento> aceptadasSubasta = new ArrayList<>();
+            for (Intento intento : todos) {
+                if (intento.aceptada && intento.puja.getIdPublicacion().equals(subasta)) {
+                    aceptadasSubasta.add(intento);
+                }
+            }
+            aceptadas += aceptadasSubasta.size();
+            comprobar(subasta, aceptadasSubasta, repositorio.buscarMejorOferta(subasta), errores);
+        }
+
+        ServicioPersistencia.getInstancia().detener();
+        borrar(directorio);
+
+        System.out.printf("%d hilos, %d pujas, %d aceptadas en %d ms%n",
+                hilos, todos.size(), aceptadas, duracionMs);
+        if (!errores.isEmpty()) {
+            for (String error : errores) {
+                System.err.println(" ERROR: " + error);
+            }
+            System.exit(1);
+        }
+        System.out.println("Sin inconsistencias.");
+    }
+
+    /**
+     * Borra el directorio temporal con todo su contenido.
+     */
+    private static void borrar(Path directorio) throws IOException {
+        List<Path> rutas;
+        try (Stream<Path> recorrido = Files.walk(directorio)) {
+            // Primero el contenido, luego los directorios que lo contienen
+            rutas = recorrido.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path ruta : rutas) {
+            Files.deleteIfExists(ruta);
+        }
+    }
+
+    /**
+     * Comprueba las pujas aceptadas de una subasta.
+     */
+    private static void comprobar(String subasta, List<Intento> aceptadas, Oferta mejorFinal, List<String> errores) {
+        // Montos repetidos
+        Set<Double> montos = new HashSet<>();
+        double maximo = Double.NEGATIVE_INFINITY;
+        for (Intento intento : aceptadas) {
+            double monto = intento.puja.getMontoOferta();
+            if (!montos.add(monto)) {
+                errores.add(subasta + ": dos pujas aceptadas por " + monto);
+            }
+            maximo = Math.max(maximo, monto);
+        }
+
+        // Orden en tiempo real: para cada puja, el mayor monto aceptado entre
+        // las que terminaron antes de que ella empezara
+        List<Intento> porFin = new ArrayList<>(aceptadas);
+        porFin.sort(Comparator.comparingLong(intento -> intento.fin));
+        long[] fines = new long[porFin.size()];
+        double[] maximoHasta = new double[porFin.size()];
+        double acumulado = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < porFin.size(); i++) {
+            fines[i] = porFin.get(i).fin;
+            acumulado = Math.max(acumulado, porFin.get(i).puja.getMontoOferta());
+            maximoHasta[i] = acumulado;
+        }
+        for (Intento intento : aceptadas) {
+            // Cantidad de pujas que terminaron antes del inicio de esta
+            int previas = Arrays.binarySearch(fines, intento.inicio);
+            previas = (previas < 0) ? -previas - 1 : previas;
+            if (previas > 0 && maximoHasta[previas - 1] >= intento.puja.getMontoOferta()) {
+                errores.add(subasta + ": se aceptó " + intento.puja.getMontoOferta()
+                        + " después de aceptar " + maximoHasta[previas - 1]);
+            }
+        }
+
+        if (!aceptadas.isEmpty()
+                && (mejorFinal == null || mejorFinal.getMontoOferta() != maximo)) {
+            errores.add(subasta + ": la mejor oferta final no es la puja aceptada de mayor monto ("
+                    + maximo + ")");
+        }
+    }
+}
@@ -2,20 +2,31 @@
  * Clase:PublicacionRepository
  * Repositorio de persistencia de publicaciones.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.0
- */
+ * @version 1.10
+ */
 
 package persistence;
 
 import model.Publicacion;
+import model.PublicacionSubasta;
+import util.CampoBusqueda;
+import util.CondicionArticulo;
 import util.EstadoPublicacion;
+import util.NormalizadorTexto;
+import util.OrdenCatalogo;
+import util.TipoPublicacion;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 public class PublicacionRepository {
 
@@ -24,14 +35,61 @@ public class PublicacionRepository {
 	private static Map<String, Publicacion> baseDeDatos = new HashMap<>();
 	private static final String RUTA_ARCHIVO = "data/publicaciones.dat";
 
+	// Protege el mapa frente al hilo compactador de la bitácora
+	private static final Object CANDADO = new Object();
+
+	// Bitácora de cambios: cada guardar/eliminar anexa un registro en lugar de
+	// reescribir todo el archivo. Se abre una sola vez por proceso.
+	// La instantánea es mapeada: al iniciar solo se lee su índice y cada
+	// publicación se decodifica la primera vez que se consulta.
+	private static BitacoraCambios<Publicacion> bitacora;
+
+	// Etiquetas del índice de la instantánea, en este orden
+	private static final int ETIQUETA_ESTADO = 0;
+	private static final int ETIQUETA_VENDEDOR = 1;
+	private static final int ETIQUETA_TIPO = 2;
+	private static final int ETIQUETA_CATEGORIA = 3;
+	private static final int ETIQUETA_CONDICION = 4;
+	private static final int ETIQUETA_PRECIO = 5;
+	private static final int ETIQUETA_FECHA = 6;
+	private static final int ETIQUETA_CIERRE = 7;
+
+	// Índices secundarios: estado -> ids y vendedor -> ids
+	private static Map<EstadoPublicacion, Set<String>> indicePorEstado = new EnumMap<>(EstadoPublicacion.class);
+	private static Map<String, Set<String>> indicePorVendedor = new HashMap<>();
+	// Valores con los que se indexó cada publicación. Como los objetos se
+	// modifican en sitio antes de volver a guardarse, el estado anterior no
+	// se puede leer del propio objeto.
+	private static Map<String, EstadoPublicacion> estadoIndexado = new HashMap<>();
+	private static Map<String, String> vendedorIndexado = new HashMap<>();
+
+	// Mapas de bits por tipo, categoría, condición y estado, y precios
+	// ordenados, para los filtros del catálogo
+	private static IndiceFiltros indiceFiltros = new IndiceFiltros();
+
+	// Aumenta con cada guardado o eliminación, para saber si un resultado
+	// calculado antes sigue vigente. Solo se escribe bajo el candado.
+	private static volatile long version;
+
+	// Índice de palabras. Requiere decodificar todas las publicaciones, así
+	// que no se arma al cargar sino en la primera búsqueda por texto; desde
+	// entonces se mantiene al guardar y eliminar.
+	private static IndiceTexto indiceTexto;
+
 	public PublicacionRepository() {
-		try {
-			@SuppressWarnings("unchecked")
-			Map<String, Publicacion> loaded = (Map<String, Publicacion>) Persistencia.cargarObjeto(RUTA_ARCHIVO);
-			if (loaded != null)
-				baseDeDatos = loaded;
-		} catch (Exception e) {
-			baseDeDatos = new HashMap<>();
+		synchronized (CANDADO) {
+			if (bitacora != null) {
+				return;
+			}
+			bitacora = new BitacoraCambios<>(RUTA_ARCHIVO, CANDADO, () -> baseDeDatos,
+					PublicacionRepository::etiquetas);
+			try {
+				baseDeDatos = bitacora.cargar();
+			} catch (Exception e) {
+				System.err.println("No se pudieron cargar las publicaciones: " + e.getMessage());
+				baseDeDatos = new HashMap<>();
+			}
+			indexarCargadas();
 		}
 	}
 
@@ -39,54 +97,318 @@ public class PublicacionRepository {
 	 * Guarda o actualiza un objeto Publicacion, usando el idArticulo como clave.
 	 */
 	public void guardar(Publicacion publicacion) {
-		baseDeDatos.put(publicacion.getIdArticulo(), publicacion);
-		guardarCambios();
+		try {
+			synchronized (CANDADO) {
+				baseDeDatos.put(publicacion.getIdArticulo(), publicacion);
+				indexar(publicacion);
+				if (indiceTexto != null) {
+					indiceTexto.indexar(publicacion);
+				}
+				version++;
+				// El fsync lo hace el escritor en segundo plano, uno por lote
+				bitacora.registrarGuardado(publicacion.getIdArticulo(), publicacion);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 
 	/**
 	 * Elimina una publicación por su ID.
 	 */
 	public void eliminar(String idArticulo) {
-		baseDeDatos.remove(idArticulo);
-		guardarCambios();
-	}
-
-	private void guardarCambios() {
 		try {
-			Persistencia.guardarObjeto(RUTA_ARCHIVO, baseDeDatos);
+			synchronized (CANDADO) {
+				if (baseDeDatos.remove(idArticulo) == null) {
+					return;
+				}
+				desindexar(idArticulo);
+				indiceFiltros.quitar(idArticulo);
+				if (indiceTexto != null) {
+					indiceTexto.quitar(idArticulo);
+				}
+				version++;
+				bitacora.registrarEliminacion(idArticulo);
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Versión actual de las publicaciones. Cambia con cada guardar o
+	 * eliminar, también cuando el objeto guardado se modificó en sitio.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
 	/**
 	 * Busca una publicación por su ID de Artículo.
 	 */
 	public Publicacion buscarPorIdArticulo(String idArticulo) {
-		return baseDeDatos.get(idArticulo);
+		synchronized (CANDADO) {
+			return baseDeDatos.get(idArticulo);
+		}
 	}
 
 	/**
 	 * Busca todas las publicaciones con un estado activo.
 	 */
 	public List<Publicacion> buscarPublicacionesActivas() {
-		return baseDeDatos.values().stream()
-				.filter(pub -> pub.getEstado() == EstadoPublicacion.ACTIVA)
-				.collect(Collectors.toList());
+		return buscarPublicacionesPorEstado(EstadoPublicacion.ACTIVA);
+	}
+
+	/**
+	 * Busca todas las publicaciones con el estado indicado usando el índice
+	 * por estado.
+	 */
+	public List<Publicacion> buscarPublicacionesPorEstado(EstadoPublicacion estado) {
+		synchronized (CANDADO) {
+			return resolver(indicePorEstado.get(estado));
+		}
 	}
 
 	// Buscar todas las publicaciones
 	public List<Publicacion> buscarTodasLasPublicaciones() {
-		return new ArrayList<>(baseDeDatos.values());
+		synchronized (CANDADO) {
+			return new ArrayList<>(baseDeDatos.values());
+		}
 	}
 
 	/**
 	 * Busca todas las publicaciones de un vendedor específico.
 	 */
 	public List<Publicacion> buscarPublicacionesPorVendedor(String idVendedor) {
-		return baseDeDatos.values().stream()
-				.filter(pub -> pub.getIdVendedor().equals(idVendedor))
-				.collect(Collectors.toList());
+		synchronized (CANDADO) {
+			return resolver(indicePorVendedor.get(idVendedor));
+		}
+	}
+
+	/**
+	 * Devuelve los ids de las publicaciones de un vendedor, sin copiar los
+	 * objetos.
+	 */
+	public Set<String> buscarIdsPorVendedor(String idVendedor) {
+		synchronized (CANDADO) {
+			Set<String> ids = indicePorVendedor.get(idVendedor);
+			return ids == null ? Collections.emptySet() : new LinkedHashSet<>(ids);
+		}
+	}
+
+	/**
+	 * Busca las publicaciones con los ids indicados, en ese orden. Los ids
+	 * que no existen se omiten.
+	 */
+	public List<Publicacion> buscarPorIds(Collection<String> ids) {
+		synchronized (CANDADO) {
+			return resolver(ids);
+		}
+	}
+
+	/**
+	 * Ids de las publicaciones de varios vendedores con el estado indicado.
+	 * Recorre el índice por vendedor y consulta el de estado por cada id, sin
+	 * leer las publicaciones.
+	 */
+	public Set<String> buscarIdsPorVendedores(Collection<String> idsVendedores, EstadoPublicacion estado) {
+		Set<String> ids = new LinkedHashSet<>();
+		synchronized (CANDADO) {
+			for (String idVendedor : idsVendedores) {
+				Set<String> delVendedor = indicePorVendedor.get(idVendedor);
+				if (delVendedor == null) {
+					continue;
+				}
+				for (String id : delVendedor) {
+					if (estadoIndexado.get(id) == estado) {
+						ids.add(id);
+					}
+				}
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Ids de las publicaciones que cumplen todos los filtros no nulos, en
+	 * orden de llegada. Se resuelve con los mapas de bits, sin leer las
+	 * publicaciones.
+	 *
+	 * @param minPrecio Precio mínimo; como el máximo, solo descarta subastas.
+	 */
+	public List<String> buscarIdsConFiltros(EstadoPublicacion estado, TipoPublicacion tipo, String categoria,
+			CondicionArticulo condicion, Double minPrecio, Double maxPrecio) {
+		synchronized (CANDADO) {
+			return indiceFiltros.filtrar(estado, tipo, categoria, condicion, minPrecio, maxPrecio);
+		}
+	}
+
+	/**
+	 * Ordena en sitio una lista de ids de publicaciones, con los valores ya
+	 * indexados. Los empates quedan en orden de llegada, así que el orden es
+	 * el mismo en consultas sucesivas.
+	 */
+	public void ordenarIds(List<String> ids, OrdenCatalogo orden) {
+		if (orden == null || orden == OrdenCatalogo.RELEVANCIA) {
+			return;
+		}
+		synchronized (CANDADO) {
+			indiceFiltros.ordenar(ids, orden);
+		}
+	}
+
+	/**
+	 * Busca publicaciones por palabras clave en los campos indicados.
+	 *
+	 * @param consulta Texto libre; se normaliza igual que el contenido
+	 *                 indexado.
+	 * @param estado   Estado requerido, o null para cualquiera.
+	 * @param limite   Máximo de resultados.
+	 * @return Publicaciones de la más a la menos relevante.
+	 */
+	public List<Publicacion> buscarPorPalabras(String consulta, Set<CampoBusqueda> campos,
+			EstadoPublicacion estado, int limite) {
+		List<String> palabras = NormalizadorTexto.palabras(consulta, IndiceTexto.LONGITUD_MINIMA);
+		if (palabras.isEmpty() || campos.isEmpty() || limite <= 0) {
+			return new ArrayList<>();
+		}
+		synchronized (CANDADO) {
+			List<String> ids = indiceTexto().buscar(palabras, campos,
+					id -> estado == null || estadoIndexado.get(id) == estado, limite);
+			return resolver(ids);
+		}
+	}
+
+	private static IndiceTexto indiceTexto() {
+		if (indiceTexto == null) {
+			IndiceTexto nuevo = new IndiceTexto();
+			for (Publicacion publicacion : baseDeDatos.values()) {
+				nuevo.indexar(publicacion);
+			}
+			indiceTexto = nuevo;
+		}
+		return indiceTexto;
+	}
+
+	/**
+	 * Arma los índices secundarios después de la carga. Las publicaciones
+	 * que siguen sin decodificar se indexan con las etiquetas de la
+	 * instantánea, sin leerlas.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void indexarCargadas() {
+		MapaPerezoso<Publicacion> perezoso = (baseDeDatos instanceof MapaPerezoso)
+				? (MapaPerezoso<Publicacion>) baseDeDatos
+				: null;
+		for (String id : baseDeDatos.keySet()) {
+			String[] etiquetas = (perezoso != null) ? perezoso.etiquetas(id) : null;
+			if (etiquetas != null && etiquetas.length > ETIQUETA_CIERRE) {
+				indexar(id, etiquetas);
+			} else {
+				// Instantánea anterior, sin todas las etiquetas
+				Publicacion publicacion = baseDeDatos.get(id);
+				if (publicacion != null) {
+					indexar(publicacion);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Valores de la publicación que se guardan en el índice de la
+	 * instantánea para armar los índices sin decodificarla.
+	 */
+	private static String[] etiquetas(Publicacion publicacion) {
+		String[] etiquetas = new String[8];
+		etiquetas[ETIQUETA_ESTADO] = publicacion.getEstado() == null ? null : publicacion.getEstado().name();
+		etiquetas[ETIQUETA_VENDEDOR] = publicacion.getIdVendedor();
+		etiquetas[ETIQUETA_TIPO] = publicacion.getTipoPublicacion() == null
+				? null
+				: publicacion.getTipoPublicacion().name();
+		etiquetas[ETIQUETA_CATEGORIA] = publicacion.getCategoria();
+		etiquetas[ETIQUETA_CONDICION] = publicacion.getCondicion() == null ? null : publicacion.getCondicion().name();
+		etiquetas[ETIQUETA_PRECIO] = (publicacion instanceof PublicacionSubasta)
+				? Double.toString(((PublicacionSubasta) publicacion).getPrecioMinimo())
+				: null;
+		etiquetas[ETIQUETA_FECHA] = publicacion.getFechaPublicacion() == null
+				? null
+				: Long.toString(publicacion.getFechaPublicacion().getTime());
+		Date cierre = (publicacion instanceof PublicacionSubasta)
+				? ((PublicacionSubasta) publicacion).getFechaCierre()
+				: null;
+		etiquetas[ETIQUETA_CIERRE] = (cierre == null) ? null : Long.toString(cierre.getTime());
+		return etiquetas;
+	}
+
+	/**
+	 * Ubica la publicación en los índices secundarios, retirándola antes de
+	 * las entradas con las que estaba indexada.
+	 */
+	private static void indexar(Publicacion publicacion) {
+		indexar(publicacion.getIdArticulo(), etiquetas(publicacion));
+	}
+
+	private static void indexar(String id, String[] etiquetas) {
+		EstadoPublicacion estado = (etiquetas[ETIQUETA_ESTADO] == null)
+				? null
+				: EstadoPublicacion.valueOf(etiquetas[ETIQUETA_ESTADO]);
+		String idVendedor = etiquetas[ETIQUETA_VENDEDOR];
+		desindexar(id);
+
+		indiceFiltros.indexar(id, new IndiceFiltros.Valores(
+				estado,
+				(etiquetas[ETIQUETA_TIPO] == null) ? null : TipoPublicacion.valueOf(etiquetas[ETIQUETA_TIPO]),
+				etiquetas[ETIQUETA_CATEGORIA],
+				(etiquetas[ETIQUETA_CONDICION] == null)
+						? null
+						: CondicionArticulo.valueOf(etiquetas[ETIQUETA_CONDICION]),
+				(etiquetas[ETIQUETA_PRECIO] == null) ? null : Double.valueOf(etiquetas[ETIQUETA_PRECIO]),
+				(etiquetas[ETIQUETA_FECHA] == null) ? null : Long.valueOf(etiquetas[ETIQUETA_FECHA]),
+				(etiquetas[ETIQUETA_CIERRE] == null) ? null : Long.valueOf(etiquetas[ETIQUETA_CIERRE])));
+
+		if (estado != null) {
+			indicePorEstado.computeIfAbsent(estado, e -> new LinkedHashSet<>()).add(id);
+			estadoIndexado.put(id, estado);
+		}
+		if (idVendedor != null) {
+			indicePorVendedor.computeIfAbsent(idVendedor, v -> new LinkedHashSet<>()).add(id);
+			vendedorIndexado.put(id, idVendedor);
+		}
+	}
+
+	private static void desindexar(String id) {
+		EstadoPublicacion estadoAnterior = estadoIndexado.remove(id);
+		if (estadoAnterior != null) {
+			quitarDeIndice(indicePorEstado, estadoAnterior, id);
+		}
+		String vendedorAnterior = vendedorIndexado.remove(id);
+		if (vendedorAnterior != null) {
+			quitarDeIndice(indicePorVendedor, vendedorAnterior, id);
+		}
+	}
+
+	private static <K> void quitarDeIndice(Map<K, Set<String>> indice, K clave, String id) {
+		Set<String> ids = indice.get(clave);
+		if (ids != null) {
+			ids.remove(id);
+			if (ids.isEmpty()) {
+				indice.remove(clave);
+			}
+		}
+	}
+
+	private static List<Publicacion> resolver(Collection<String> ids) {
+		if (ids == null) {
+			return new ArrayList<>();
+		}
+		List<Publicacion> resultado = new ArrayList<>(ids.size());
+		for (String id : ids) {
+			Publicacion publicacion = baseDeDatos.get(id);
+			if (publicacion != null) {
+				resultado.add(publicacion);
+			}
+		}
+		return resultado;
 	}
 
 }
@@ -0,0 +1,164 @@
+/**
+ * Clase: PujaAutomaticaRepository
+ * Repositorio de persistencia de las pujas automáticas.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.1
+ */
+
+package persistence;
+
+import model.PujaAutomatica;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Guarda las pujas automáticas agrupadas por subasta. Cada usuario tiene a
+ * lo sumo una por subasta: registrar otra reemplaza el máximo anterior.
+ */
+public class PujaAutomaticaRepository {
+
+    private static final String ARCHIVO_PUJAS = "data/pujasAutomaticas.dat";
+
+    // Key: idPublicacion, Value: pujas automáticas activas sobre ella
+    private Map<String, List<PujaAutomatica>> pujasPorPublicacion;
+
+    public PujaAutomaticaRepository() {
+        // Leer lo que otra instancia haya dejado pendiente de escribir
+        ServicioPersistencia.getInstancia().flush();
+        cargarPujas();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void cargarPujas() {
+        try {
+            Object obj = Persistencia.cargarObjeto(ARCHIVO_PUJAS);
+            if (obj instanceof Map<?, ?>) {
+                this.pujasPorPublicacion = (Map<String, List<PujaAutomatica>>) obj;
+            } else {
+                this.pujasPorPublicacion = new HashMap<>();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            this.pujasPorPublicacion = new HashMap<>();
+        }
+    }
+
+    /**
+     * Programa la escritura del archivo en el escritor en segundo plano.
+     */
+    private void guardarEnArchivo() {
+        ServicioPersistencia.getInstancia().marcarSucio(ARCHIVO_PUJAS, this::volcar);
+    }
+
+    private void volcar() throws IOException {
+        byte[] datos;
+        synchronized (this) {
+            datos = Persistencia.serializar(pujasPorPublicacion);
+        }
+        Persistencia.guardarBytes(ARCHIVO_PUJAS, datos);
+    }
+
+    /**
+     * Registra una puja automática. Si el usuario ya tenía una sobre la misma
+     * subasta, la nueva la reemplaza.
+     */
+    public void guardar(PujaAutomatica puja) {
+        if (puja == null) {
+            throw new IllegalArgumentException("La puja automática no puede ser nula");
+        }
+        synchronized (this) {
+            List<PujaAutomatica> pujas = pujasPorPublicacion.computeIfAbsent(puja.getIdPublicacion(),
+                    id -> new ArrayList<>());
+            pujas.removeIf(p -> p.getIdOfertante().equals(puja.getIdOfertante()));
+            pujas.add(puja);
+        }
+        guardarEnArchivo();
+    }
+
+    /**
+     * Devuelve una copia de las pujas automáticas de una subasta.
+     */
+    public synchronized List<PujaAutomatica> buscarPorPublicacion(String idPublicacion) {
+        List<PujaAutomatica> pujas = pujasPorPublicacion.get(idPublicacion);
+        return pujas == null ? new ArrayList<>() : new ArrayList<>(pujas);
+    }
+
+    /**
+     * Busca la puja automática de un usuario sobre una subasta.
+     *
+     * @return La puja, o null si el usuario no registró ninguna.
+     */
+    public synchronized PujaAutomatica buscar(String idPublicacion, String idOfertante) {
+        List<PujaAutomatica> pujas = pujasPorPublicacion.get(idPublicacion);
+        if (pujas == null) {
+            return null;
+        }
+        for (PujaAutomatica puja : pujas) {
+            if (puja.getIdOfertante().equals(idOfertante)) {
+                return puja;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Elimina varias pujas automáticas de una subasta con una sola escritura.
+     * Se comparan por identidad: si el usuario registró otra mientras tanto,
+     * la nueva se conserva.
+     */
+    public void eliminar(String idPublicacion, Collection<PujaAutomatica> aEliminar) {
+        if (aEliminar == null || aEliminar.isEmpty()) {
+            return;
+        }
+        boolean cambio;
+        synchronized (this) {
+            List<PujaAutomatica> pujas = pujasPorPublicacion.get(idPublicacion);
+            if (pujas == null) {
+                return;
+            }
+            cambio = pujas.removeIf(aEliminar::contains);
+            if (pujas.isEmpty()) {
+                pujasPorPublicacion.remove(idPublicacion);
+            }
+        }
+        if (cambio) {
+            guardarEnArchivo();
+        }
+    }
+
+    /**
+     * Elimina todas las pujas automáticas de una subasta.
+     */
+    public void eliminarPorPublicacion(String idPublicacion) {
+        eliminarPorPublicaciones(List.of(idPublicacion));
+    }
+
+    /**
+     * Elimina las pujas automáticas de varias subastas con una sola
+     * escritura.
+     */
+    public void eliminarPorPublicaciones(Collection<String> idsPublicaciones) {
+        boolean cambio = false;
+        synchronized (this) {
+            for (String idPublicacion : idsPublicaciones) {
+                cambio |= pujasPorPublicacion.remove(idPublicacion) != null;
+            }
+        }
+        if (cambio) {
+            guardarEnArchivo();
+        }
+    }
+
+    /**
+     * Ids de las subastas que tienen al menos una puja automática.
+     */
+    public synchronized Set<String> buscarIdsPublicaciones() {
+        return new HashSet<>(pujasPorPublicacion.keySet());
+    }
+}
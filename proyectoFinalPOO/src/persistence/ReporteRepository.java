@@ -2,7 +2,7 @@
  * Clase: ReporteRepository
  *Repositorio de persistencia.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.1
+ * @version 1.2
  */
 
 package persistence;
@@ -24,6 +24,8 @@ public class ReporteRepository {
     private List<Reporte> reportes;
 
     public ReporteRepository() {
+        // Leer lo que otra instancia haya dejado pendiente de escribir
+        ServicioPersistencia.getInstancia().flush();
         cargarReportes();
     }
 
@@ -41,12 +43,19 @@ public class ReporteRepository {
         }
     }
 
+    /**
+     * Programa la escritura del archivo en el escritor en segundo plano.
+     */
     private void guardarEnArchivo() {
-        try {
-            Persistencia.guardarObjeto(ARCHIVO_REPORTES, reportes);
-        } catch (IOException e) {
-            e.printStackTrace();
+        ServicioPersistencia.getInstancia().marcarSucio(ARCHIVO_REPORTES, this::volcar);
+    }
+
+    private void volcar() throws IOException {
+        byte[] datos;
+        synchronized (this) {
+            datos = Persistencia.serializar(reportes);
         }
+        Persistencia.guardarBytes(ARCHIVO_REPORTES, datos);
     }
 
     /**
@@ -56,7 +65,9 @@ public class ReporteRepository {
         if (reporte == null) {
             throw new IllegalArgumentException("El reporte no puede ser nulo");
         }
-        reportes.add(reporte);
+        synchronized (this) {
+            reportes.add(reporte);
+        }
         guardarEnArchivo();
     }
 
@@ -103,11 +114,13 @@ public class ReporteRepository {
             return false;
         }
 
-        for (int i = 0; i < reportes.size(); i++) {
-            if (reportes.get(i).getIdReporte().equals(reporte.getIdReporte())) {
-                reportes.set(i, reporte);
-                guardarEnArchivo();
-                return true;
+        synchronized (this) {
+            for (int i = 0; i < reportes.size(); i++) {
+                if (reportes.get(i).getIdReporte().equals(reporte.getIdReporte())) {
+                    reportes.set(i, reporte);
+                    guardarEnArchivo();
+                    return true;
+                }
             }
         }
         return false;
@@ -117,7 +130,10 @@ public class ReporteRepository {
      * Elimina un reporte
      */
     public boolean eliminarReporte(String idReporte) {
-        boolean eliminado = reportes.removeIf(r -> r.getIdReporte().equals(idReporte));
+        boolean eliminado;
+        synchronized (this) {
+            eliminado = reportes.removeIf(r -> r.getIdReporte().equals(idReporte));
+        }
         if (eliminado) {
             guardarEnArchivo();
         }
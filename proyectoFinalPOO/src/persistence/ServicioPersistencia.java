@@ -0,0 +1,346 @@
+/**
+ * Clase: ServicioPersistencia
+ * Escritor único en segundo plano para los repositorios.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.2
+ */
+
+package persistence;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Saca la escritura a disco del hilo de la interfaz (EDT).
+ *
+ * Los repositorios no escriben al guardar: se marcan como sucios con el
+ * volcado que deben ejecutar. Un único hilo escritor ejecuta los volcados
+ * pendientes; si un repositorio se marca varias veces antes de que el
+ * escritor lo atienda, se escribe una sola vez con el estado más reciente.
+ *
+ * Para escrituras que no se pueden fusionar (registros de bitácora,
+ * mensajes de chat) existe una cola de tareas que se ejecutan en orden.
+ *
+ * Los archivos de solo anexado no hacen fsync en cada escritura: piden una
+ * sincronización con {@link #programarSincronizacion(String, Tarea)} y el
+ * escritor hace un único fsync por archivo para todo el lote. Lo que deba
+ * llegar a disco después de esos datos (la cabecera que cuenta mensajes
+ * ya anexados) se deja en {@link #alSincronizar(Tarea)}. Orden de cada
+ * lote: tareas, sincronizaciones, volcados y las sincronizaciones que estos
+ * hayan pedido.
+ *
+ * Los cambios que deben llegar juntos a disco (por ejemplo, el rechazo de
+ * ofertas y los avisos de chat que lo explican) se hacen dentro de
+ * {@link #escribirJuntos(Supplier)}: todo lo que pidan entra en un mismo
+ * lote y se espera una sola vez.
+ *
+ * {@link #flush()} espera a que todo lo solicitado hasta ese momento esté
+ * en disco; {@link #detener()} se invoca desde el gancho de cierre.
+ */
+public class ServicioPersistencia {
+
+    /**
+     * Escritura completa del estado de un repositorio.
+     */
+    public interface Volcado {
+        void volcar() throws IOException;
+    }
+
+    /**
+     * Escritura puntual que debe ejecutarse en orden.
+     */
+    public interface Tarea {
+        void ejecutar() throws IOException;
+    }
+
+    // Espera antes de escribir para agrupar ráfagas de cambios
+    private static final long RETARDO_AGRUPACION_MS = 20;
+    private static final long ESPERA_CIERRE_MS = 10_000;
+
+    private static final ServicioPersistencia INSTANCIA = new ServicioPersistencia();
+
+    private final Object candado = new Object();
+    private final Map<String, Volcado> sucios = new LinkedHashMap<>();
+    private final ArrayDeque<Tarea> tareas = new ArrayDeque<>();
+    // fsync pendiente por archivo y lo que debe ejecutarse después
+    private final Map<String, Tarea> sincronizaciones = new LinkedHashMap<>();
+    private final ArrayDeque<Tarea> posteriores = new ArrayDeque<>();
+
+    // Solicitudes recibidas y atendidas, para saber hasta dónde esperar en flush()
+    private long solicitadas;
+    private long completadas;
+    private int esperandoFlush;
+    private boolean detenido;
+
+    // Grupos de escribirJuntos() abiertos; el escritor no arma un lote
+    // mientras haya alguno, para no partir sus solicitudes en dos
+    private int gruposAbiertos;
+    private final ThreadLocal<Boolean> agrupando = ThreadLocal.withInitial(() -> false);
+
+    private final Thread escritor;
+
+    private ServicioPersistencia() {
+        escritor = new Thread(this::procesar, "escritor-persistencia");
+        escritor.setDaemon(true);
+        escritor.start();
+    }
+
+    public static ServicioPersistencia getInstancia() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Marca un archivo como pendiente de escritura. Si ya estaba pendiente,
+     * se reemplaza su volcado y se escribe una sola vez.
+     *
+     * @param clave   Identificador del archivo (normalmente su ruta).
+     * @param volcado Escritura del estado actual del repositorio.
+     */
+    public void marcarSucio(String clave, Volcado volcado) {
+        synchronized (candado) {
+            if (detenido) {
+                ejecutarAhora(volcado::volcar);
+                return;
+            }
+            sucios.put(clave, volcado);
+            solicitadas++;
+            candado.notifyAll();
+        }
+    }
+
+    /**
+     * Encola una escritura que se ejecutará en orden de llegada.
+     */
+    public void encolar(Tarea tarea) {
+        synchronized (candado) {
+            if (detenido) {
+                ejecutarAhora(tarea);
+                return;
+            }
+            tareas.addLast(tarea);
+            solicitadas++;
+            candado.notifyAll();
+        }
+    }
+
+    /**
+     * Pide un fsync del archivo en el lote actual del escritor. Varias
+     * solicitudes para el mismo archivo producen un único fsync.
+     *
+     * @param clave          Identificador del archivo (normalmente su ruta).
+     * @param sincronizacion Fuerza a disco lo escrito en el archivo.
+     */
+    public void programarSincronizacion(String clave, Tarea sincronizacion) {
+        synchronized (candado) {
+            if (detenido) {
+                ejecutarAhora(sincronizacion);
+                return;
+            }
+            if (sincronizaciones.putIfAbsent(clave, sincronizacion) == null) {
+                contarSolicitud();
+            }
+        }
+    }
+
+    /**
+     * Ejecuta la tarea cuando terminen los fsync pedidos hasta este momento.
+     */
+    public void alSincronizar(Tarea tarea) {
+        synchronized (candado) {
+            if (detenido) {
+                ejecutarAhora(tarea);
+                return;
+            }
+            posteriores.addLast(tarea);
+            contarSolicitud();
+        }
+    }
+
+    // Lo que pide el propio escritor se atiende en el lote en curso
+    private void contarSolicitud() {
+        if (Thread.currentThread() != escritor) {
+            solicitadas++;
+            candado.notifyAll();
+        }
+    }
+
+    /**
+     * Ejecuta los cambios y espera a que lo que soliciten esté en disco.
+     * Los volcados, tareas y fsync pedidos dentro del grupo se atienden en
+     * un mismo lote del escritor, en el orden habitual del lote: no queda
+     * una parte escrita y la otra esperando al lote siguiente.
+     *
+     * No es una transacción: si el proceso cae a mitad del lote, los
+     * archivos ya escritos conservan su versión nueva y los demás la
+     * anterior. Un grupo iniciado dentro de otro se suma al exterior.
+     *
+     * @param cambios Cambios en memoria que programan sus escrituras.
+     * @return Lo que devuelvan los cambios.
+     */
+    public <T> T escribirJuntos(Supplier<T> cambios) {
+        if (Thread.currentThread() == escritor || agrupando.get()) {
+            return cambios.get();
+        }
+        synchronized (candado) {
+            gruposAbiertos++;
+        }
+        agrupando.set(true);
+        try {
+            return cambios.get();
+        } finally {
+            agrupando.set(false);
+            synchronized (candado) {
+                gruposAbiertos--;
+                candado.notifyAll();
+            }
+            flush();
+        }
+    }
+
+    /**
+     * Igual que {@link #escribirJuntos(Supplier)}, para cambios sin
+     * resultado.
+     */
+    public void escribirJuntos(Runnable cambios) {
+        escribirJuntos(() -> {
+            cambios.run();
+            return null;
+        });
+    }
+
+    /**
+     * Espera a que se escriba todo lo solicitado hasta este momento.
+     * Invocado desde el propio hilo escritor no espera (no hay nada previo
+     * pendiente que no se esté atendiendo ya). Dentro de un grupo tampoco:
+     * el escritor no avanza hasta que el grupo termine, y al cerrarse el
+     * grupo se espera de todos modos.
+     */
+    public void flush() {
+        if (Thread.currentThread() == escritor || agrupando.get()) {
+            return;
+        }
+        synchronized (candado) {
+            long objetivo = solicitadas;
+            esperandoFlush++;
+            candado.notifyAll();
+            try {
+                while (completadas < objetivo && escritor.isAlive()) {
+                    candado.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                esperandoFlush--;
+            }
+        }
+    }
+
+    /**
+     * Escribe lo pendiente y detiene el escritor. A partir de aquí las
+     * escrituras se hacen de forma síncrona en el hilo que las solicita.
+     */
+    public void detener() {
+        flush();
+        synchronized (candado) {
+            detenido = true;
+            candado.notifyAll();
+        }
+        try {
+            escritor.join(ESPERA_CIERRE_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void procesar() {
+        while (true) {
+            List<Tarea> lote;
+            List<Volcado> volcados;
+            long objetivo;
+
+            synchronized (candado) {
+                try {
+                    // Una solicitud ya atendida en el lote anterior solo
+                    // necesita que se actualice el contador
+                    while (tareas.isEmpty() && sucios.isEmpty() && sincronizaciones.isEmpty()
+                            && posteriores.isEmpty() && completadas == solicitadas) {
+                        if (detenido) {
+                            return;
+                        }
+                        candado.wait();
+                    }
+                    // Dejar que la ráfaga termine, salvo que alguien espere un flush
+                    if (esperandoFlush == 0 && !detenido) {
+                        candado.wait(RETARDO_AGRUPACION_MS);
+                    }
+                    // Lo que pide un grupo abierto va entero en el mismo lote
+                    while (gruposAbiertos > 0 && !detenido) {
+                        candado.wait();
+                    }
+                } catch (InterruptedException e) {
+                    // Seguir atendiendo lo pendiente
+                }
+                lote = new ArrayList<>(tareas);
+                tareas.clear();
+                volcados = new ArrayList<>(sucios.values());
+                sucios.clear();
+                objetivo = solicitadas;
+            }
+
+            for (Tarea tarea : lote) {
+                ejecutarAhora(tarea);
+            }
+            // Los datos anexados llegan a disco antes que las instantáneas
+            sincronizarPendientes();
+            for (Volcado volcado : volcados) {
+                ejecutarAhora(volcado::volcar);
+            }
+            sincronizarPendientes();
+
+            synchronized (candado) {
+                completadas = objetivo;
+                candado.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Hace los fsync pendientes y luego lo que esperaba por ellos, hasta que
+     * no quede nada (lo que espera puede pedir nuevos fsync).
+     */
+    private void sincronizarPendientes() {
+        while (true) {
+            List<Tarea> fsyncs;
+            List<Tarea> despues;
+            synchronized (candado) {
+                if (sincronizaciones.isEmpty() && posteriores.isEmpty()) {
+                    return;
+                }
+                fsyncs = new ArrayList<>(sincronizaciones.values());
+                sincronizaciones.clear();
+                despues = new ArrayList<>(posteriores);
+                posteriores.clear();
+            }
+            for (Tarea fsync : fsyncs) {
+                ejecutarAhora(fsync);
+            }
+            for (Tarea tarea : despues) {
+                ejecutarAhora(tarea);
+            }
+        }
+    }
+
+    private static void ejecutarAhora(Tarea tarea) {
+        try {
+            tarea.ejecutar();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error al escribir datos en segundo plano: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
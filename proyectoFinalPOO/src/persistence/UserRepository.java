@@ -2,14 +2,17 @@
  * Clase: UserRepository
  * Repositorio de persistencia de usuarios.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.2
+ * @version 1.7
  */
 
 package persistence;
 
 import model.User;
+import util.NormalizadorTexto;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.io.IOException;
 
 public class UserRepository {
@@ -17,38 +20,59 @@ public class UserRepository {
     private static Map<String, User> baseDeDatos = new HashMap<>();
     private static final String RUTA_ARCHIVO = "data/users.dat";
 
+    // Protege el mapa y sus índices: los comparten todas las instancias y el
+    // escritor en segundo plano los serializa
+    private static final Object CANDADO = new Object();
+
+    // Índice secundario: Key: id (Cédula), Value: Objeto User
+    private static Map<String, User> indicePorId = new HashMap<>();
+    // Último id indexado para cada nombreUsuario, para retirar entradas viejas
+    private static Map<String, String> idIndexadoPorNombre = new HashMap<>();
+    // Índice por ubicación: Key: ubicación normalizada (sin acentos, en
+    // minúsculas), Value: ids de los usuarios. Se actualiza al guardar, de
+    // modo que el filtro por ciudad no normaliza ubicaciones en cada consulta.
+    private static Map<String, Set<String>> indicePorCiudad = new HashMap<>();
+    // Ubicación normalizada con que se indexó cada nombreUsuario
+    private static Map<String, String> ciudadIndexadaPorNombre = new HashMap<>();
+    // Aumenta con cada guardado o eliminación; solo se escribe bajo el candado
+    private static volatile long version;
+
     public UserRepository() {
         // Solo inicializar si el mapa está vacío (primera vez que se crea el
-        // repositorio)
-        if (baseDeDatos.isEmpty()) {
-            try {
-                // Intentar cargar datos existentes del archivo
-                @SuppressWarnings("unchecked")
-                Map<String, User> loaded = (Map<String, User>) Persistencia.cargarObjeto(RUTA_ARCHIVO);
-
-                if (loaded != null && !loaded.isEmpty()) {
-                    // Datos cargados exitosamente
-                    baseDeDatos = loaded;
-                    System.out.println(" Datos de usuarios cargados desde archivo: " + loaded.size() + " usuarios");
-                } else {
-                    // Archivo existe pero está vacío, crear datos de prueba
-                    crearDatosDePrueba();
-                }
-            } catch (Exception e) {
-                // El archivo no existe o hay error de deserialización
-                // Solo crear datos de prueba si el archivo NO existe
-                java.io.File archivo = new java.io.File(RUTA_ARCHIVO);
-                if (!archivo.exists()) {
-                    System.out.println(" Archivo de usuarios no encontrado. Creando datos de prueba...");
-                    crearDatosDePrueba();
-                } else {
-                    // El archivo existe pero no se puede deserializar
-                    // NO sobrescribir, solo mostrar advertencia
-                    System.err.println(" ERROR: No se pudo cargar el archivo de usuarios existente.");
-                    System.err.println(" Archivo: " + RUTA_ARCHIVO);
-                    System.err.println(" Razón: " + e.getMessage());
-                    System.err.println("  El archivo NO será sobrescrito. Revise la compatibilidad de versiones.");
-                    e.printStackTrace();
+        // repositorio). El candado evita que dos instancias creadas a la vez
+        // carguen el archivo por separado.
+        synchronized (CANDADO) {
+            if (baseDeDatos.isEmpty()) {
+                try {
+                    // Intentar cargar datos existentes del archivo
+                    @SuppressWarnings("unchecked")
+                    Map<String, User> loaded = (Map<String, User>) Persistencia.cargarObjeto(RUTA_ARCHIVO);
+
+                    if (loaded != null && !loaded.isEmpty()) {
+                        // Datos cargados exitosamente
+                        baseDeDatos = loaded;
+                        reconstruirIndice();
+                        System.out.println(" Datos de usuarios cargados desde archivo: " + loaded.size() + " usuarios");
+                    } else {
+                        // Archivo existe pero está vacío, crear datos de prueba
+                        crearDatosDePrueba();
+                    }
+                } catch (Exception e) {
+                    // El archivo no existe o hay error de deserialización
+                    // Solo crear datos de prueba si el archivo NO existe
+                    java.io.File archivo = new java.io.File(RUTA_ARCHIVO);
+                    if (!archivo.exists()) {
+                        System.out.println(" Archivo de usuarios no encontrado. Creando datos de prueba...");
+                        crearDatosDePrueba();
+                    } else {
+                        // El archivo existe pero no se puede deserializar
+                        // NO sobrescribir, solo mostrar advertencia
+                        System.err.println(" ERROR: No se pudo cargar el archivo de usuarios existente.");
+                        System.err.println(" Archivo: " + RUTA_ARCHIVO);
+                        System.err.println(" Razón: " + e.getMessage());
+                        System.err.println("  El archivo NO será sobrescrito. Revise la compatibilidad de versiones.");
+                        e.printStackTrace();
+                    }
                 }
             }
         }
@@ -58,24 +82,30 @@ public class UserRepository {
      * Crea y guarda los datos de prueba iniciales (admin y vendedor)
      */
     private void crearDatosDePrueba() {
-        baseDeDatos = new HashMap<>();
+        Map<String, User> datosDePrueba = new HashMap<>();
 
         // Key: "admin" / ID (Cédula): "10000000"
         User adminUser = new User(
                 "admin", "Juan", "Pérez", "admin@marketplace.com",
                 "12345", "10000000", "Bogotá");
         adminUser.setRol(util.RolUsuario.ADMIN); // Asignar rol de ADMIN
-        baseDeDatos.put("admin", adminUser);
+        datosDePrueba.put("admin", adminUser);
 
         // Key: "vendedor" / ID (Cédula): "20000000"
-        baseDeDatos.put("vendedor", new User(
+        datosDePrueba.put("vendedor", new User(
                 "vendedor", "María", "Gómez", "vendedor@email.com",
                 "pass", "20000000", "Medellín"));
 
+        synchronized (CANDADO) {
+            baseDeDatos = datosDePrueba;
+            reconstruirIndice();
+            version++;
+        }
+
         // Guardar los datos iniciales
         try {
-            Persistencia.guardarObjeto(RUTA_ARCHIVO, baseDeDatos);
-            System.out.println(" Datos de prueba creados y guardados: " + baseDeDatos.size() + " usuarios");
+            volcar();
+            System.out.println(" Datos de prueba creados y guardados: " + datosDePrueba.size() + " usuarios");
         } catch (IOException ex) {
             System.err.println(" ERROR: No se pudieron guardar los datos de prueba");
             ex.printStackTrace();
@@ -86,48 +116,115 @@ public class UserRepository {
      * Guarda o actualiza un objeto Usuario, usando el nombreUsuario como clave.
      */
     public void guardar(User usuario) {
+        synchronized (CANDADO) {
+            ponerEnMemoria(usuario);
+        }
+        programarEscritura();
+    }
+
+    // Se invoca bajo el candado
+    private void ponerEnMemoria(User usuario) {
         baseDeDatos.put(usuario.getNombreUsuario(), usuario);
-        try {
-            Persistencia.guardarObjeto(RUTA_ARCHIVO, baseDeDatos);
-        } catch (IOException e) {
-            e.printStackTrace();
+        indexar(usuario);
+        version++;
+    }
+
+    /**
+     * Deja la escritura del archivo a cargo del escritor en segundo plano.
+     * Varios guardados seguidos producen una sola escritura.
+     */
+    private static void programarEscritura() {
+        ServicioPersistencia.getInstancia().marcarSucio(RUTA_ARCHIVO, UserRepository::volcar);
+    }
+
+    private static void volcar() throws IOException {
+        byte[] datos;
+        synchronized (CANDADO) {
+            datos = Persistencia.serializar(baseDeDatos);
         }
+        Persistencia.guardarBytes(RUTA_ARCHIVO, datos);
     }
 
     /**
      * Busca un usuario usando su NOMBRE DE USUARIO (búsqueda rápida O(1)).
      */
     public User buscarPorNombreUsuario(String username) {
-        return baseDeDatos.get(username);
+        synchronized (CANDADO) {
+            return baseDeDatos.get(username);
+        }
     }
 
     /**
-     * Busca un usuario usando su ID (Cédula). Requiere iterar (O(n)).
+     * Busca un usuario usando su ID (Cédula) mediante el índice secundario (O(1)).
      */
     public User buscarPorId(String id) {
-        for (User user : baseDeDatos.values()) {
-            if (user.getId().equals(id)) {
-                return user;
+        if (id == null) {
+            return null;
+        }
+        synchronized (CANDADO) {
+            return buscarIndexadoPorId(id);
+        }
+    }
+
+    // Se invoca bajo el candado
+    private User buscarIndexadoPorId(String id) {
+        User user = indicePorId.get(id);
+        // Descartar entradas cuyo id haya cambiado sin volver a guardarse
+        if (user == null || !id.equals(user.getId())) {
+            return null;
+        }
+        return user;
+    }
+
+    /**
+     * Ids de los usuarios cuya ubicación contiene el texto buscado, sin
+     * importar tildes ni mayúsculas. Solo se recorren las ubicaciones
+     * distintas, no los usuarios.
+     */
+    public Set<String> buscarIdsPorCiudad(String ciudad) {
+        String busqueda = NormalizadorTexto.normalizar(ciudad);
+        Set<String> ids = new LinkedHashSet<>();
+        synchronized (CANDADO) {
+            for (Map.Entry<String, Set<String>> entrada : indicePorCiudad.entrySet()) {
+                if (entrada.getKey().contains(busqueda)) {
+                    ids.addAll(entrada.getValue());
+                }
             }
         }
-        return null;
+        return ids;
+    }
+
+    /**
+     * Versión actual de los usuarios, para saber si un resultado que depende
+     * de ellos (como el filtro por ciudad) sigue vigente.
+     */
+    public long getVersion() {
+        return version;
     }
 
     /**
      * Lista todos los usuarios del sistema
      */
     public java.util.List<User> listarTodos() {
-        return new java.util.ArrayList<>(baseDeDatos.values());
+        synchronized (CANDADO) {
+            return new java.util.ArrayList<>(baseDeDatos.values());
+        }
     }
 
     /**
      * Actualiza un usuario existente
      */
     public boolean actualizar(User usuario) {
-        if (usuario == null || !baseDeDatos.containsKey(usuario.getNombreUsuario())) {
+        if (usuario == null) {
             return false;
         }
-        guardar(usuario);
+        synchronized (CANDADO) {
+            if (!baseDeDatos.containsKey(usuario.getNombreUsuario())) {
+                return false;
+            }
+            ponerEnMemoria(usuario);
+        }
+        programarEscritura();
         return true;
     }
 
@@ -135,17 +232,73 @@ public class UserRepository {
      * Elimina un usuario por su ID
      */
     public boolean eliminar(String id) {
-        User usuario = buscarPorId(id);
-        if (usuario == null) {
+        if (id == null) {
             return false;
         }
-        baseDeDatos.remove(usuario.getNombreUsuario());
-        try {
-            Persistencia.guardarObjeto(RUTA_ARCHIVO, baseDeDatos);
-            return true;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
+        synchronized (CANDADO) {
+            User usuario = buscarIndexadoPorId(id);
+            if (usuario == null) {
+                return false;
+            }
+            baseDeDatos.remove(usuario.getNombreUsuario());
+            desindexar(usuario.getNombreUsuario());
+            version++;
+        }
+        programarEscritura();
+        return true;
+    }
+
+    /**
+     * Registra el usuario en los índices por id y por ciudad, retirando
+     * antes las entradas con que estaba indexado (la cédula o la ubicación
+     * pudieron cambiar).
+     */
+    private void indexar(User usuario) {
+        desindexar(usuario.getNombreUsuario());
+        if (usuario.getId() != null) {
+            indicePorId.put(usuario.getId(), usuario);
+            idIndexadoPorNombre.put(usuario.getNombreUsuario(), usuario.getId());
+
+            if (usuario.getUbicacion() != null) {
+                String ciudad = NormalizadorTexto.normalizar(usuario.getUbicacion());
+                indicePorCiudad.computeIfAbsent(ciudad, c -> new LinkedHashSet<>()).add(usuario.getId());
+                ciudadIndexadaPorNombre.put(usuario.getNombreUsuario(), ciudad);
+            }
+        }
+    }
+
+    private void desindexar(String nombreUsuario) {
+        String idAnterior = idIndexadoPorNombre.remove(nombreUsuario);
+        if (idAnterior != null) {
+            User indexado = indicePorId.get(idAnterior);
+            if (indexado != null && nombreUsuario.equals(indexado.getNombreUsuario())) {
+                indicePorId.remove(idAnterior);
+            }
+        }
+
+        String ciudadAnterior = ciudadIndexadaPorNombre.remove(nombreUsuario);
+        if (ciudadAnterior != null && idAnterior != null) {
+            Set<String> ids = indicePorCiudad.get(ciudadAnterior);
+            if (ids != null) {
+                ids.remove(idAnterior);
+                if (ids.isEmpty()) {
+                    indicePorCiudad.remove(ciudadAnterior);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reconstruye los índices por id y por ciudad a partir del mapa principal.
+     * Se invoca bajo el candado.
+     */
+    private void reconstruirIndice() {
+        indicePorId = new HashMap<>();
+        idIndexadoPorNombre = new HashMap<>();
+        indicePorCiudad = new HashMap<>();
+        ciudadIndexadaPorNombre = new HashMap<>();
+        for (User usuario : baseDeDatos.values()) {
+            indexar(usuario);
         }
     }
 }
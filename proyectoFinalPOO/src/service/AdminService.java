@@ -2,7 +2,7 @@
  * Clase: AdminService
  * Servicio de lógica de negocio.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.1
+ * @version 1.2
  */
 package service;
 
@@ -12,6 +12,7 @@ import model.Oferta;
 import persistence.UserRepository;
 import persistence.PublicacionRepository;
 import persistence.OfertaRepository;
+import persistence.PujaAutomaticaRepository;
 import util.RolUsuario;
 
 import java.util.List;
@@ -25,12 +26,20 @@ public class AdminService {
     private final UserRepository userRepository;
     private final PublicacionRepository publicacionRepository;
     private final OfertaRepository ofertaRepository;
+    // Null si el servicio no elimina publicaciones (p. ej. paneles de solo consulta)
+    private final PujaAutomaticaRepository pujaAutomaticaRepository;
 
     public AdminService(UserRepository userRepository, PublicacionRepository publicacionRepository,
             OfertaRepository ofertaRepository) {
+        this(userRepository, publicacionRepository, ofertaRepository, null);
+    }
+
+    public AdminService(UserRepository userRepository, PublicacionRepository publicacionRepository,
+            OfertaRepository ofertaRepository, PujaAutomaticaRepository pujaAutomaticaRepository) {
         this.userRepository = userRepository;
         this.publicacionRepository = publicacionRepository;
         this.ofertaRepository = ofertaRepository;
+        this.pujaAutomaticaRepository = pujaAutomaticaRepository;
     }
 
     /**
@@ -122,6 +131,9 @@ public class AdminService {
     public boolean eliminarPublicacion(String idPublicacion, String idAdmin) {
         verificarAdmin(idAdmin);
         publicacionRepository.eliminar(idPublicacion);
+        if (pujaAutomaticaRepository != null) {
+            pujaAutomaticaRepository.eliminarPorPublicacion(idPublicacion);
+        }
         return true;
     }
 
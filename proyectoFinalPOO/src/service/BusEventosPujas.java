@@ -0,0 +1,116 @@
+/**
+ * Clase: BusEventosPujas
+ * Avisa a las ventanas abiertas de los cambios en las pujas de una publicación.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.0
+ */
+
+package service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+import model.Oferta;
+
+/**
+ * Bus de eventos en memoria, por publicación. OfertaService publica cada puja
+ * guardada (manual o automática) y cada puja retirada; los suscriptores solo
+ * reciben los eventos de las publicaciones a las que se suscribieron.
+ *
+ * Los eventos se entregan en el hilo que publica, que puede no ser el de
+ * Swing: el suscriptor debe limitarse a encolar el evento y actualizar la
+ * interfaz por su cuenta.
+ */
+public class BusEventosPujas {
+
+    /**
+     * Cambio en las pujas de una publicación.
+     */
+    public static final class EventoPuja {
+
+        public enum Tipo {
+            // Se guardó una puja; el evento la incluye
+            NUEVA,
+            // Se retiró al menos una puja; hay que volver a consultar
+            RETIRADA
+        }
+
+        private final Tipo tipo;
+        private final String idPublicacion;
+        private final Oferta oferta;
+        private final double montoMejor;
+        private final int totalPujas;
+
+        EventoPuja(Tipo tipo, String idPublicacion, Oferta oferta, double montoMejor, int totalPujas) {
+            this.tipo = tipo;
+            this.idPublicacion = idPublicacion;
+            this.oferta = oferta;
+            this.montoMejor = montoMejor;
+            this.totalPujas = totalPujas;
+        }
+
+        public Tipo getTipo() {
+            return tipo;
+        }
+
+        public String getIdPublicacion() {
+            return idPublicacion;
+        }
+
+        /**
+         * Puja guardada, o null si el evento es de tipo RETIRADA.
+         */
+        public Oferta getOferta() {
+            return oferta;
+        }
+
+        /**
+         * Monto de la mejor puja después del cambio (0 si no quedan pujas).
+         */
+        public double getMontoMejor() {
+            return montoMejor;
+        }
+
+        /**
+         * Cantidad de pujas de la publicación después del cambio.
+         */
+        public int getTotalPujas() {
+            return totalPujas;
+        }
+    }
+
+    private final Map<String, Set<Consumer<EventoPuja>>> suscriptores = new ConcurrentHashMap<>();
+
+    public void suscribir(String idPublicacion, Consumer<EventoPuja> suscriptor) {
+        suscriptores.computeIfAbsent(idPublicacion, id -> new CopyOnWriteArraySet<>()).add(suscriptor);
+    }
+
+    public void desuscribir(String idPublicacion, Consumer<EventoPuja> suscriptor) {
+        suscriptores.computeIfPresent(idPublicacion, (id, conjunto) -> {
+            conjunto.remove(suscriptor);
+            return conjunto.isEmpty() ? null : conjunto;
+        });
+    }
+
+    /**
+     * Entrega el evento a los suscriptores de su publicación. Sin costo si
+     * nadie está suscrito.
+     */
+    void publicar(EventoPuja evento) {
+        Set<Consumer<EventoPuja>> conjunto = suscriptores.get(evento.getIdPublicacion());
+        if (conjunto == null) {
+            return;
+        }
+        for (Consumer<EventoPuja> suscriptor : conjunto) {
+            try {
+                suscriptor.accept(evento);
+            } catch (RuntimeException e) {
+                System.err.println("Error en un suscriptor de pujas: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Clase: CacheFiltros
+ * Caché de resultados de los filtros del catálogo.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.0
+ */
+
+package service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Caché LRU de tamaño acotado: combinación de filtros -> ids del resultado,
+ * ya ordenados. Cada entrada recuerda la versión de los datos con que se
+ * calculó; si al consultarla la versión es otra, la entrada se descarta y se
+ * vuelve a calcular. Así un guardado o una eliminación invalida exactamente
+ * los resultados calculados antes de ella, sin recorrer la caché.
+ *
+ * Las listas guardadas son de solo lectura.
+ */
+public class CacheFiltros {
+
+    /**
+     * Contadores de uso de la caché, tomados en un instante.
+     */
+    public static final class Estadisticas {
+
+        private final long aciertos;
+        private final long fallos;
+        private final long invalidadas;
+        private final int entradas;
+
+        Estadisticas(long aciertos, long fallos, long invalidadas, int entradas) {
+            this.aciertos = aciertos;
+            this.fallos = fallos;
+            this.invalidadas = invalidadas;
+            this.entradas = entradas;
+        }
+
+        public long getAciertos() {
+            return aciertos;
+        }
+
+        /** Consultas que hubo que calcular, incluidas las invalidadas. */
+        public long getFallos() {
+            return fallos;
+        }
+
+        /** Fallos por una entrada calculada con datos ya modificados. */
+        public long getInvalidadas() {
+            return invalidadas;
+        }
+
+        public int getEntradas() {
+            return entradas;
+        }
+
+        /** Fracción de consultas resueltas desde la caché, entre 0 y 1. */
+        public double getTasaAciertos() {
+            long total = aciertos + fallos;
+            return (total == 0) ? 0 : (double) aciertos / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("aciertos=%d fallos=%d invalidadas=%d entradas=%d tasa=%.1f%%",
+                    aciertos, fallos, invalidadas, entradas, getTasaAciertos() * 100);
+        }
+    }
+
+    private static final class Entrada {
+        final long version;
+        final List<String> ids;
+
+        Entrada(long version, List<String> ids) {
+            this.version = version;
+            this.ids = ids;
+        }
+    }
+
+    private final Map<Object, Entrada> entradas;
+    private long aciertos;
+    private long fallos;
+    private long invalidadas;
+
+    /**
+     * @param capacidad Máximo de combinaciones guardadas; al superarlo se
+     *                  descarta la usada hace más tiempo.
+     */
+    CacheFiltros(int capacidad) {
+        if (capacidad <= 0) {
+            throw new IllegalArgumentException("La capacidad debe ser mayor que cero");
+        }
+        // Orden de acceso: la primera entrada es la menos usada
+        this.entradas = new LinkedHashMap<Object, Entrada>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Entrada> mayor) {
+                return size() > capacidad;
+            }
+        };
+    }
+
+    /**
+     * Devuelve el resultado guardado para la clave o lo calcula y lo guarda.
+     * El cálculo se hace fuera del candado.
+     *
+     * @param actual Versión actual de los datos de que depende el resultado.
+     *               Se debe leer antes de calcular, de modo que un cambio
+     *               durante el cálculo deje la entrada ya vencida.
+     */
+    List<String> obtener(Object clave, long actual, Supplier<List<String>> calcular) {
+        synchronized (this) {
+            Entrada entrada = entradas.get(clave);
+            if (entrada != null && entrada.version == actual) {
+                aciertos++;
+                return entrada.ids;
+            }
+            fallos++;
+            if (entrada != null) {
+                invalidadas++;
+                entradas.remove(clave);
+            }
+        }
+
+        List<String> ids = Collections.unmodifiableList(calcular.get());
+        synchronized (this) {
+            entradas.put(clave, new Entrada(actual, ids));
+        }
+        return ids;
+    }
+
+    synchronized Estadisticas estadisticas() {
+        return new Estadisticas(aciertos, fallos, invalidadas, entradas.size());
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Clase: ExpiradorOfertas
+ * Expira las ofertas pendientes al cumplirse el tiempo configurado.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.0
+ */
+
+package service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Cola ordenada por fecha de oferta con las ofertas pendientes. Un hilo en
+ * segundo plano espera a que venza la más antigua y entrega juntas todas las
+ * que hayan vencido, hasta {@link #LOTE_MAXIMO} por lote; no se recorren las
+ * ofertas periódicamente.
+ *
+ * El vencimiento es la fecha base más el tiempo de expiración vigente. Como
+ * el tiempo es el mismo para todas, cambiarlo no altera el orden de la cola;
+ * se vuelve a leer en cada espera, que dura como máximo
+ * {@link #ESPERA_MAXIMA_MS}, de modo que un cambio del administrador se
+ * aplica en menos de un minuto.
+ */
+public class ExpiradorOfertas {
+
+    // Tope de ofertas por lote entregado
+    private static final int LOTE_MAXIMO = 500;
+
+    // Cada cuánto se relee el tiempo de expiración aunque nada venza
+    private static final long ESPERA_MAXIMA_MS = 60_000;
+
+    private static final long MS_POR_HORA = 3_600_000L;
+
+    /**
+     * Oferta en espera de su vencimiento.
+     */
+    private final class Vencimiento implements Delayed {
+        private final String idOferta;
+        private final long baseMs;
+
+        Vencimiento(String idOferta, long baseMs) {
+            this.idOferta = idOferta;
+            this.baseMs = baseMs;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unidad) {
+            return unidad.convert(baseMs + expiracionMs - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed otro) {
+            if (otro instanceof Vencimiento) {
+                return Long.compare(baseMs, ((Vencimiento) otro).baseMs);
+            }
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), otro.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private final DelayQueue<Vencimiento> cola = new DelayQueue<>();
+    private final IntSupplier horasExpiracion;
+    private final Consumer<List<String>> alVencer;
+    private volatile long expiracionMs;
+    private Thread hilo;
+
+    /**
+     * @param horasExpiracion Tiempo de expiración vigente, en horas.
+     * @param alVencer        Recibe los ids de un lote de ofertas vencidas;
+     *                        se invoca desde el hilo del expirador.
+     */
+    public ExpiradorOfertas(IntSupplier horasExpiracion, Consumer<List<String>> alVencer) {
+        this.horasExpiracion = horasExpiracion;
+        this.alVencer = alVencer;
+        actualizarExpiracion();
+    }
+
+    /**
+     * Agrega una oferta a la cola.
+     *
+     * @param baseMs Momento desde el que corre la expiración (normalmente
+     *               la fecha de la oferta).
+     */
+    public void programar(String idOferta, long baseMs) {
+        cola.put(new Vencimiento(idOferta, baseMs));
+    }
+
+    /**
+     * Inicia el hilo que espera los vencimientos. Sin efecto si ya se inició.
+     */
+    public synchronized void iniciar() {
+        if (hilo != null) {
+            return;
+        }
+        hilo = new Thread(this::atenderVencimientos, "expiracion-ofertas");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * Detiene el hilo. Las ofertas pendientes quedan en la cola.
+     */
+    public synchronized void detener() {
+        if (hilo != null) {
+            hilo.interrupt();
+            hilo = null;
+        }
+    }
+
+    /**
+     * Cantidad de ofertas en espera.
+     */
+    public int pendientes() {
+        return cola.size();
+    }
+
+    private void actualizarExpiracion() {
+        try {
+            int horas = horasExpiracion.getAsInt();
+            if (horas > 0) {
+                expiracionMs = horas * MS_POR_HORA;
+            }
+        } catch (RuntimeException e) {
+            // Se conserva el tiempo anterior
+            System.err.println("No se pudo leer el tiempo de expiración de ofertas: " + e.getMessage());
+        }
+    }
+
+    private void atenderVencimientos() {
+        while (!Thread.currentThread().isInterrupted()) {
+            actualizarExpiracion();
+
+            Vencimiento primero;
+            try {
+                primero = cola.poll(ESPERA_MAXIMA_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (primero == null) {
+                continue;
+            }
+
+            // drainTo solo retira las que ya vencieron
+            List<Vencimiento> vencidas = new ArrayList<>();
+            vencidas.add(primero);
+            cola.drainTo(vencidas, LOTE_MAXIMO - 1);
+
+            List<String> lote = new ArrayList<>(vencidas.size());
+            for (Vencimiento vencimiento : vencidas) {
+                lote.add(vencimiento.idOferta);
+            }
+            try {
+                alVencer.accept(lote);
+            } catch (RuntimeException e) {
+                System.err.println("Error al expirar ofertas: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -2,7 +2,7 @@
  * Clase: OfertaService
  * Servicio que gestiona ofertas y pujas.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.2
+ * @version 1.10
  */
 
 package service;
@@ -10,25 +10,56 @@ package service;
 import java.util.Date;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 
 import persistence.OfertaRepository;
+import persistence.PujaAutomaticaRepository;
 import model.Oferta;
 import model.Publicacion;
 import model.PublicacionSubasta;
 import model.PublicacionTrueque;
+import model.PujaAutomatica;
 import model.User;
+import service.BusEventosPujas.EventoPuja;
 import util.EstadoOferta;
+import util.EstadoPublicacion;
+import util.GeneradorIds;
 import util.TipoPublicacion;
 
 public class OfertaService {
 
     private final OfertaRepository ofertaRepository;
+    private final PujaAutomaticaRepository pujaAutomaticaRepository;
     private final UserService userService;
     private final PublicacionService publicacionService;
 
+    // Reintentos de la resolución de pujas automáticas cuando otra puja
+    // entra a la vez y la deja sin efecto
+    private static final int INTENTOS_RESOLUCION = 5;
+
+    // Incremento de las pujas automáticas si la subasta no tiene precio mínimo
+    private static final double INCREMENTO_MINIMO = 1.0;
+
+    // Expiración de ofertas pendientes; null hasta iniciarExpiracionOfertas()
+    private ExpiradorOfertas expirador;
+
+    // Avisos de pujas nuevas y retiradas a las ventanas abiertas
+    private final BusEventosPujas eventosPujas = new BusEventosPujas();
+
     public OfertaService(OfertaRepository ofertaRepository, UserService userService,
                          PublicacionService publicacionService) {
+        this(ofertaRepository, new PujaAutomaticaRepository(), userService, publicacionService);
+    }
+
+    public OfertaService(OfertaRepository ofertaRepository, PujaAutomaticaRepository pujaAutomaticaRepository,
+                         UserService userService, PublicacionService publicacionService) {
         this.ofertaRepository = ofertaRepository;
+        this.pujaAutomaticaRepository = pujaAutomaticaRepository;
         this.userService = userService;
         this.publicacionService = publicacionService;
     }
@@ -37,6 +68,18 @@ public class OfertaService {
         return ofertaRepository.buscarPorPublicacion(idPublicacion);
     }
 
+    /**
+     * Devuelve las {@code cantidad} ofertas de mayor monto de la publicación,
+     * de mayor a menor.
+     */
+    public List<Oferta> obtenerMejoresOfertas(String idPublicacion, int cantidad) {
+        return ofertaRepository.buscarPujasPorMonto(idPublicacion, null, cantidad);
+    }
+
+    public int contarOfertas(String idPublicacion) {
+        return ofertaRepository.contarOfertas(idPublicacion);
+    }
+
     /**
      * Registra una nueva oferta sobre una publicación.
      *
@@ -98,14 +141,7 @@ public class OfertaService {
             }
 
             // Validar que sea un monto superior a la mayor oferta actual (o precio mínimo)
-            List<Oferta> ofertasPorPublicacion = ofertaRepository.buscarPorPublicacion(idPublicacion);
-            double mayorOferta = subasta.getPrecioMinimo(); // Empezamos con el precio mínimo
-
-            for (Oferta oferta : ofertasPorPublicacion) {
-                if (oferta.getMontoOferta() > mayorOferta) {
-                    mayorOferta = oferta.getMontoOferta();
-                }
-            }
+            double mayorOferta = calcularPujaActualSubasta(idPublicacion, subasta.getPrecioMinimo());
 
             if (montoOferta <= mayorOferta) {
                 throw new IllegalArgumentException(
@@ -150,7 +186,21 @@ public class OfertaService {
         }
 
         // 5. Guardar la oferta en el repositorio
-        ofertaRepository.guardar(nuevaOferta);
+        if (publicacion instanceof PublicacionSubasta) {
+            // La validación anterior puede quedar vieja si otra puja entra a la
+            // vez: el repositorio vuelve a comparar y guarda de forma atómica
+            double precioMinimo = ((PublicacionSubasta) publicacion).getPrecioMinimo();
+            if (!guardarPujaSiSupera(nuevaOferta, precioMinimo)) {
+                throw new IllegalArgumentException(
+                        "El monto debe ser superior a la mayor oferta actual (o precio mínimo) de $"
+                                + calcularPujaActualSubasta(idPublicacion, precioMinimo));
+            }
+            // Las pujas automáticas de otros usuarios responden a esta puja
+            resolverPujasAutomaticas((PublicacionSubasta) publicacion);
+        } else {
+            ofertaRepository.guardar(nuevaOferta);
+            programarExpiracion(nuevaOferta);
+        }
 
         System.out.println("Oferta realizada exitosamente por el usuario "
                 + ofertante.getNombre() + " en la publicación " + publicacion.getTitulo() + ".");
@@ -181,9 +231,13 @@ public class OfertaService {
 
         // 5. LÓGICA DE CIERRE
 
-        // A. Cambiamos estado de la oferta a ACEPTADA
+        // A. Cambiamos estado de la oferta a ACEPTADA y el de las demás
+        //    pendientes a RECHAZADA, todo en una sola escritura
         oferta.setEstadoOferta(EstadoOferta.ACEPTADA);
-        ofertaRepository.guardar(oferta); // Actualizamos en BD
+        List<Oferta> cambios = new ArrayList<>();
+        cambios.add(oferta);
+        cambios.addAll(marcarPendientesRechazadas(oferta.getIdPublicacion(), idOferta));
+        ofertaRepository.guardarTodas(cambios); // Actualizamos en BD
 
         // B. Cerramos la publicación
         publicacionService.cerrarPublicacion(publicacion.getIdArticulo());
@@ -207,6 +261,36 @@ public class OfertaService {
         return true;
     }
 
+    /**
+     * Rechaza, con una sola escritura, las ofertas PENDIENTES de una
+     * publicación excepto la indicada. Se usa cuando el trato se concreta
+     * con otra oferta.
+     *
+     * @param idOfertaConservada Oferta que no se modifica (la aceptada).
+     * @return Ofertas que cambiaron de estado.
+     */
+    public List<Oferta> rechazarOfertasRestantes(String idPublicacion, String idOfertaConservada) {
+        List<Oferta> rechazadas = marcarPendientesRechazadas(idPublicacion, idOfertaConservada);
+        ofertaRepository.guardarTodas(rechazadas);
+        return rechazadas;
+    }
+
+    /**
+     * Pasa a RECHAZADA, solo en memoria, las ofertas pendientes de la
+     * publicación distintas a la indicada.
+     */
+    private List<Oferta> marcarPendientesRechazadas(String idPublicacion, String idOfertaConservada) {
+        List<Oferta> rechazadas = new ArrayList<>();
+        for (Oferta otra : ofertaRepository.buscarPorPublicacion(idPublicacion)) {
+            if (!otra.getIdOferta().equals(idOfertaConservada)
+                    && otra.getEstadoOferta() == EstadoOferta.PENDIENTE) {
+                otra.setEstadoOferta(EstadoOferta.RECHAZADA);
+                rechazadas.add(otra);
+            }
+        }
+        return rechazadas;
+    }
+
     public boolean eliminarOferta(String idOferta, String idSolicitante) {
         Oferta oferta = ofertaRepository.buscarPorIdOferta(idOferta);
         if (oferta == null)
@@ -221,9 +305,90 @@ public class OfertaService {
         }
 
         ofertaRepository.eliminar(idOferta);
+        publicarRetirada(oferta.getIdPublicacion());
         return true;
     }
 
+    /**
+     * Suscribe a los cambios en las pujas de una publicación. El suscriptor
+     * se invoca en el hilo que guardó la puja, no necesariamente el de Swing.
+     */
+    public void suscribirPujas(String idPublicacion, Consumer<EventoPuja> suscriptor) {
+        eventosPujas.suscribir(idPublicacion, suscriptor);
+    }
+
+    public void desuscribirPujas(String idPublicacion, Consumer<EventoPuja> suscriptor) {
+        eventosPujas.desuscribir(idPublicacion, suscriptor);
+    }
+
+    private void publicarRetirada(String idPublicacion) {
+        Oferta mejor = ofertaRepository.buscarMejorOferta(idPublicacion);
+        eventosPujas.publicar(new EventoPuja(EventoPuja.Tipo.RETIRADA, idPublicacion, null,
+                (mejor != null) ? mejor.getMontoOferta() : 0, ofertaRepository.contarOfertas(idPublicacion)));
+    }
+
+    /**
+     * Activa la expiración de ofertas pendientes. La cola se arma con las
+     * pendientes del repositorio; las que se creen después se agregan al
+     * guardarlas.
+     *
+     * @param horasExpiracion Tiempo de expiración vigente, en horas; se
+     *                        vuelve a consultar periódicamente.
+     */
+    public synchronized void iniciarExpiracionOfertas(IntSupplier horasExpiracion) {
+        if (expirador != null) {
+            return;
+        }
+        expirador = new ExpiradorOfertas(horasExpiracion, this::expirarOfertas);
+        for (Map.Entry<String, Long> pendiente : ofertaRepository.buscarFechasDePendientes().entrySet()) {
+            expirador.programar(pendiente.getKey(), pendiente.getValue());
+        }
+        expirador.iniciar();
+        System.out.println("Expiración de ofertas: " + expirador.pendientes() + " pendientes");
+    }
+
+    private void programarExpiracion(Oferta oferta) {
+        if (expirador != null && oferta.getFechaOferta() != null) {
+            expirador.programar(oferta.getIdOferta(), oferta.getFechaOferta().getTime());
+        }
+    }
+
+    /**
+     * Expira y archiva un lote de ofertas vencidas. Las pujas de una subasta
+     * que sigue activa no expiran: vuelven a la cola contando desde el cierre.
+     */
+    private void expirarOfertas(List<String> idsOfertas) {
+        List<String> vencidas = new ArrayList<>(idsOfertas.size());
+        for (String idOferta : idsOfertas) {
+            Oferta oferta = ofertaRepository.buscarPorIdOferta(idOferta);
+            if (oferta == null || oferta.getEstadoOferta() != EstadoOferta.PENDIENTE) {
+                // Ya respondida o eliminada
+                continue;
+            }
+            Publicacion publicacion = publicacionService.buscarPublicacionPorId(oferta.getIdPublicacion());
+            if (publicacion instanceof PublicacionSubasta
+                    && publicacion.getEstado() == EstadoPublicacion.ACTIVA
+                    && ((PublicacionSubasta) publicacion).getFechaCierre() != null) {
+                expirador.programar(idOferta, ((PublicacionSubasta) publicacion).getFechaCierre().getTime());
+                continue;
+            }
+            vencidas.add(idOferta);
+        }
+
+        if (!vencidas.isEmpty()) {
+            List<Oferta> expiradas = ofertaRepository.expirarYArchivar(vencidas);
+            System.out.println("Ofertas expiradas y archivadas: " + expiradas.size());
+
+            Set<String> publicaciones = new LinkedHashSet<>();
+            for (Oferta oferta : expiradas) {
+                publicaciones.add(oferta.getIdPublicacion());
+            }
+            for (String idPublicacion : publicaciones) {
+                publicarRetirada(idPublicacion);
+            }
+        }
+    }
+
     /**
      * Calcula la puja actual para una subasta:
      * parte del precio mínimo y si hay ofertas, usa la mayor oferta.
@@ -233,17 +398,184 @@ public class OfertaService {
      * @return Monto actual de la puja.
      */
     public double calcularPujaActualSubasta(String idPublicacion, double precioMinimo) {
-        double mayor = precioMinimo;
+        // El repositorio mantiene la mejor oferta de cada publicación
+        Oferta mejor = ofertaRepository.buscarMejorOferta(idPublicacion);
+        if (mejor != null && mejor.getMontoOferta() > precioMinimo) {
+            return mejor.getMontoOferta();
+        }
+        return precioMinimo;
+    }
 
-        List<Oferta> ofertas = obtenerOfertasPorPublicacion(idPublicacion);
-        if (ofertas != null) {
-            for (Oferta oferta : ofertas) {
-                if (oferta.getMontoOferta() > mayor) {
-                    mayor = oferta.getMontoOferta();
+    /**
+     * Registra (o reemplaza) la puja automática de un usuario sobre una
+     * subasta y la resuelve de inmediato contra las demás.
+     *
+     * @param montoMaximo Monto máximo que el sistema puede ofertar por el
+     *                    usuario; debe superar la puja actual.
+     * @return Mejor oferta de la subasta después de resolver las pujas.
+     */
+    public Oferta registrarPujaAutomatica(String idPublicacion, String idOfertante, double montoMaximo) {
+        User ofertante = userService.buscarUsuarioPorId(idOfertante);
+        if (ofertante == null) {
+            throw new IllegalArgumentException("El ofertante no existe.");
+        }
+
+        Publicacion publicacion = publicacionService.buscarPublicacionPorId(idPublicacion);
+        if (!(publicacion instanceof PublicacionSubasta)) {
+            throw new IllegalArgumentException("Solo se pueden registrar pujas automáticas en subastas.");
+        }
+        PublicacionSubasta subasta = (PublicacionSubasta) publicacion;
+
+        if (subasta.getEstado() != util.EstadoPublicacion.ACTIVA || new Date().after(subasta.getFechaCierre())) {
+            throw new IllegalArgumentException("La subasta ha finalizado.");
+        }
+        if (subasta.getIdVendedor().equals(idOfertante)) {
+            throw new IllegalArgumentException("No puedes pujar en tu propia subasta.");
+        }
+
+        double pujaActual = calcularPujaActualSubasta(idPublicacion, subasta.getPrecioMinimo());
+        if (montoMaximo <= pujaActual) {
+            throw new IllegalArgumentException(
+                    "El monto máximo debe ser superior a la puja actual de $" + pujaActual);
+        }
+
+        pujaAutomaticaRepository.guardar(new PujaAutomatica(idPublicacion, idOfertante, montoMaximo));
+        resolverPujasAutomaticas(subasta);
+        return ofertaRepository.buscarMejorOferta(idPublicacion);
+    }
+
+    /**
+     * Devuelve la puja automática de un usuario sobre una subasta, o null.
+     */
+    public PujaAutomatica obtenerPujaAutomatica(String idPublicacion, String idOfertante) {
+        return pujaAutomaticaRepository.buscar(idPublicacion, idOfertante);
+    }
+
+    /**
+     * Descarta las pujas automáticas de una subasta que se cerró o se
+     * eliminó: ya no pueden volver a pujar.
+     */
+    public void descartarPujasAutomaticas(String idPublicacion) {
+        pujaAutomaticaRepository.eliminarPorPublicacion(idPublicacion);
+    }
+
+    /**
+     * Descarta, en una sola escritura, las pujas automáticas de subastas
+     * que ya no están activas o que no existen. Recoge las que quedaron de
+     * cierres y eliminaciones anteriores.
+     */
+    public void descartarPujasAutomaticasInactivas() {
+        List<String> inactivas = new ArrayList<>();
+        for (String idPublicacion : pujaAutomaticaRepository.buscarIdsPublicaciones()) {
+            Publicacion publicacion = publicacionService.buscarPublicacionPorId(idPublicacion);
+            if (publicacion == null || publicacion.getEstado() != EstadoPublicacion.ACTIVA) {
+                inactivas.add(idPublicacion);
+            }
+        }
+        pujaAutomaticaRepository.eliminarPorPublicaciones(inactivas);
+        if (!inactivas.isEmpty()) {
+            System.out.println("Pujas automáticas descartadas de " + inactivas.size() + " subastas inactivas");
+        }
+    }
+
+    /**
+     * Resuelve en una sola pasada las pujas automáticas de una subasta.
+     *
+     * Gana el mayor máximo (ante empate, el registrado primero) y paga el
+     * incremento mínimo sobre lo que debe superar: el máximo del segundo o
+     * la puja actual. En lugar de registrar cada paso de la escalada, se
+     * guardan solo las ofertas finales: el tope del segundo (si quedó por
+     * debajo) y la de la ganadora. Las pujas automáticas que ya no pueden
+     * subir más se eliminan.
+     */
+    public void resolverPujasAutomaticas(PublicacionSubasta subasta) {
+        String idPublicacion = subasta.getIdArticulo();
+        if (subasta.getEstado() != util.EstadoPublicacion.ACTIVA || new Date().after(subasta.getFechaCierre())) {
+            pujaAutomaticaRepository.eliminarPorPublicacion(idPublicacion);
+            return;
+        }
+
+        double precioMinimo = subasta.getPrecioMinimo();
+        double incremento = Math.max(calcularIncrementoRapidoSubasta(precioMinimo), INCREMENTO_MINIMO);
+
+        for (int intento = 0; intento < INTENTOS_RESOLUCION; intento++) {
+            Oferta mejor = ofertaRepository.buscarMejorOferta(idPublicacion);
+            String lider = (mejor == null) ? null : mejor.getIdOfertante();
+            double pujaActual = calcularPujaActualSubasta(idPublicacion, precioMinimo);
+
+            // Separar las que aún pueden superar la puja actual de las agotadas
+            List<PujaAutomatica> vigentes = new ArrayList<>();
+            List<PujaAutomatica> agotadas = new ArrayList<>();
+            for (PujaAutomatica puja : pujaAutomaticaRepository.buscarPorPublicacion(idPublicacion)) {
+                if (puja.getMontoMaximo() > pujaActual) {
+                    vigentes.add(puja);
+                } else {
+                    agotadas.add(puja);
+                }
+            }
+            vigentes.sort(Comparator.comparingDouble(PujaAutomatica::getMontoMaximo).reversed()
+                    .thenComparing(PujaAutomatica::getFechaRegistro));
+
+            PujaAutomatica ganadora = vigentes.isEmpty() ? null : vigentes.get(0);
+            PujaAutomatica segunda = (vigentes.size() > 1) ? vigentes.get(1) : null;
+
+            // Sin competencia: nada que resolver
+            if (ganadora == null || (segunda == null && ganadora.getIdOfertante().equals(lider))) {
+                pujaAutomaticaRepository.eliminar(idPublicacion, agotadas);
+                return;
+            }
+
+            double aSuperar = (segunda != null) ? segunda.getMontoMaximo() : pujaActual;
+            double precio = Math.min(ganadora.getMontoMaximo(), aSuperar + incremento);
+
+            // Solo se persisten las ofertas finales. Si otra puja entra en medio,
+            // el repositorio rechaza la que quedó vieja y se vuelve a calcular
+            if (segunda != null && segunda.getMontoMaximo() < precio
+                    && !guardarPujaSiSupera(
+                            crearOfertaAutomatica(segunda, segunda.getMontoMaximo()), precioMinimo)) {
+                continue;
+            }
+            if (!guardarPujaSiSupera(crearOfertaAutomatica(ganadora, precio), precioMinimo)) {
+                continue;
+            }
+
+            // Todas las demás quedaron en su máximo o por debajo del precio
+            for (PujaAutomatica puja : vigentes) {
+                if (puja != ganadora) {
+                    agotadas.add(puja);
                 }
             }
+            pujaAutomaticaRepository.eliminar(idPublicacion, agotadas);
+            return;
+        }
+        System.err.println("No se pudieron resolver las pujas automáticas de " + idPublicacion
+                + " tras " + INTENTOS_RESOLUCION + " intentos.");
+    }
+
+    /**
+     * Guarda una puja si supera a la mejor actual y, en ese caso, la agrega a
+     * la cola de expiración y la publica a los suscriptores.
+     */
+    private boolean guardarPujaSiSupera(Oferta oferta, double precioMinimo) {
+        if (!ofertaRepository.guardarPujaSiSupera(oferta, precioMinimo)) {
+            return false;
         }
-        return mayor;
+        programarExpiracion(oferta);
+        eventosPujas.publicar(new EventoPuja(EventoPuja.Tipo.NUEVA, oferta.getIdPublicacion(), oferta,
+                oferta.getMontoOferta(), ofertaRepository.contarOfertas(oferta.getIdPublicacion())));
+        return true;
+    }
+
+    private Oferta crearOfertaAutomatica(PujaAutomatica puja, double monto) {
+        return new Oferta(
+                GeneradorIds.nuevoId(GeneradorIds.OFERTA),
+                puja.getIdPublicacion(),
+                puja.getIdOfertante(),
+                new Date(),
+                monto,
+                null,
+                EstadoOferta.PENDIENTE
+        );
     }
 
     /**
@@ -278,18 +610,7 @@ public class OfertaService {
             throw new IllegalArgumentException("El id de la publicación no puede ser nulo ni vacío.");
         }
 
-        List<Oferta> ofertas = ofertaRepository.buscarPorPublicacion(idPublicacion);
-        if (ofertas == null || ofertas.isEmpty()) {
-            return null;
-        }
-
-        Oferta mejor = null;
-        for (Oferta oferta : ofertas) {
-            if (mejor == null || oferta.getMontoOferta() > mejor.getMontoOferta()) {
-                mejor = oferta;
-            }
-        }
-        return mejor;
+        return ofertaRepository.buscarMejorOferta(idPublicacion);
     }
 
     /**
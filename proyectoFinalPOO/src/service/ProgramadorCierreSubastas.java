@@ -0,0 +1,123 @@
+/**
+ * Clase: ProgramadorCierreSubastas
+ * Cierra automáticamente las subastas al llegar su fecha de cierre.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.0
+ */
+
+package service;
+
+import java.util.Date;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import model.PublicacionSubasta;
+
+/**
+ * Mantiene una cola ordenada por fecha de cierre con las subastas activas.
+ * Un hilo en segundo plano espera a la próxima que vence y entrega su id al
+ * cierre configurado; no se recorren las publicaciones periódicamente.
+ *
+ * Si una subasta cambia de fecha se vuelve a programar: la entrada anterior
+ * queda en la cola y el cierre la descarta al comprobar la fecha vigente.
+ */
+public class ProgramadorCierreSubastas {
+
+    /**
+     * Subasta en espera de su fecha de cierre.
+     */
+    private static final class CierreProgramado implements Delayed {
+        private final String idPublicacion;
+        private final long cierreMs;
+
+        CierreProgramado(String idPublicacion, long cierreMs) {
+            this.idPublicacion = idPublicacion;
+            this.cierreMs = cierreMs;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unidad) {
+            return unidad.convert(cierreMs - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed otro) {
+            if (otro instanceof CierreProgramado) {
+                return Long.compare(cierreMs, ((CierreProgramado) otro).cierreMs);
+            }
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), otro.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private final DelayQueue<CierreProgramado> cola = new DelayQueue<>();
+    private final Consumer<String> alVencer;
+    private Thread hilo;
+
+    /**
+     * @param alVencer Acción que cierra la subasta; recibe el id de la
+     *                 publicación y se invoca desde el hilo del programador.
+     */
+    public ProgramadorCierreSubastas(Consumer<String> alVencer) {
+        this.alVencer = alVencer;
+    }
+
+    /**
+     * Agrega una subasta a la cola. Las subastas ya vencidas se entregan de
+     * inmediato.
+     */
+    public void programar(PublicacionSubasta subasta) {
+        Date fechaCierre = subasta.getFechaCierre();
+        if (fechaCierre == null) {
+            return;
+        }
+        cola.put(new CierreProgramado(subasta.getIdArticulo(), fechaCierre.getTime()));
+    }
+
+    /**
+     * Inicia el hilo que espera los vencimientos. Sin efecto si ya se inició.
+     */
+    public synchronized void iniciar() {
+        if (hilo != null) {
+            return;
+        }
+        hilo = new Thread(this::atenderVencimientos, "cierre-subastas");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * Detiene el hilo. Las subastas pendientes quedan en la cola.
+     */
+    public synchronized void detener() {
+        if (hilo != null) {
+            hilo.interrupt();
+            hilo = null;
+        }
+    }
+
+    /**
+     * Cantidad de cierres en espera (incluye entradas ya reprogramadas).
+     */
+    public int pendientes() {
+        return cola.size();
+    }
+
+    private void atenderVencimientos() {
+        while (!Thread.currentThread().isInterrupted()) {
+            CierreProgramado vencido;
+            try {
+                vencido = cola.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                alVencer.accept(vencido.idPublicacion);
+            } catch (RuntimeException e) {
+                System.err.println("Error al cerrar la subasta " + vencido.idPublicacion + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -2,20 +2,28 @@
  * Clase: PublicacionService
  * Servicio de lógica de publicaciones.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.0
+ * @version 1.7
  */
 
 package service;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
+import model.PaginaPublicaciones;
 import model.Publicacion;
+import model.PublicacionSubasta;
 import model.PublicacionTrueque;
 import model.User;
 import persistence.OfertaRepository;
 import persistence.PublicacionRepository;
+import util.CampoBusqueda;
 import util.EstadoOferta;
 import util.EstadoPublicacion;
+import util.NormalizadorTexto;
+import util.OrdenCatalogo;
 import util.TipoPublicacion;
 
 /**
@@ -27,6 +35,13 @@ public class PublicacionService {
     private final UserService userService;
     private final OfertaRepository ofertaRepository;
 
+    // Cierre automático de subastas; null hasta iniciarCierreAutomatico()
+    private ProgramadorCierreSubastas programadorCierre;
+
+    // Resultados recientes de los filtros del catálogo, por combinación
+    private static final int CAPACIDAD_CACHE_FILTROS = 128;
+    private final CacheFiltros cacheFiltros = new CacheFiltros(CAPACIDAD_CACHE_FILTROS);
+
     public PublicacionService(PublicacionRepository publicacionRepository,
             UserService userService,
             OfertaRepository ofertaRepository) {
@@ -43,6 +58,34 @@ public class PublicacionService {
             throw new IllegalArgumentException("La publicación no puede ser nula.");
         }
         publicacionRepository.guardar(publicacion);
+        programarCierre(publicacion);
+    }
+
+    /**
+     * Activa el cierre automático de subastas. La cola se arma con las
+     * subastas activas del repositorio; las que se guarden después se
+     * agregan al guardarlas.
+     *
+     * @param alVencer Acción de cierre; recibe el id de la subasta vencida y
+     *                 se invoca desde el hilo del programador.
+     */
+    public synchronized void iniciarCierreAutomatico(Consumer<String> alVencer) {
+        if (programadorCierre != null) {
+            return;
+        }
+        programadorCierre = new ProgramadorCierreSubastas(alVencer);
+        for (Publicacion publicacion : publicacionRepository.buscarPublicacionesActivas()) {
+            programarCierre(publicacion);
+        }
+        programadorCierre.iniciar();
+        System.out.println("Cierre automático de subastas: " + programadorCierre.pendientes() + " programadas");
+    }
+
+    private void programarCierre(Publicacion publicacion) {
+        if (programadorCierre != null && publicacion instanceof PublicacionSubasta
+                && publicacion.getEstado() == EstadoPublicacion.ACTIVA) {
+            programadorCierre.programar((PublicacionSubasta) publicacion);
+        }
     }
 
     /**
@@ -116,15 +159,8 @@ public class PublicacionService {
             throw new IllegalArgumentException("Esta publicación no es una subasta.");
         }
 
-        // Buscar la mejor oferta (mayor monto)
-        List<model.Oferta> ofertas = ofertaRepository.buscarPorPublicacion(idPublicacion);
-        model.Oferta mejorOferta = null;
-
-        for (model.Oferta oferta : ofertas) {
-            if (mejorOferta == null || oferta.getMontoOferta() > mejorOferta.getMontoOferta()) {
-                mejorOferta = oferta;
-            }
-        }
+        // Mejor oferta (mayor monto), mantenida por el repositorio
+        model.Oferta mejorOferta = ofertaRepository.buscarMejorOferta(idPublicacion);
 
         if (mejorOferta != null) {
             mejorOferta.setEstadoOferta(EstadoOferta.ACEPTADA);
@@ -153,38 +189,24 @@ public class PublicacionService {
         }
 
         PublicacionTrueque trueque = (PublicacionTrueque) publicacion;
-        String deseos = trueque.getObjetosDeseados().toLowerCase();
 
-        // Separar deseos por comas o espacios para buscar palabras clave
-        String[] palabrasClave = deseos.split("[,\\s]+");
+        // Ignorar palabras muy cortas (de, la, el...)
+        String palabrasClave = String.join(" ", NormalizadorTexto.palabras(trueque.getObjetosDeseados(), 4));
 
-        List<Publicacion> activas = publicacionRepository.buscarPublicacionesActivas();
+        // El índice de texto devuelve las activas ordenadas por relevancia
+        List<Publicacion> candidatas = publicacionRepository.buscarPorPalabras(palabrasClave,
+                EnumSet.of(CampoBusqueda.TITULO, CampoBusqueda.CATEGORIA), EstadoPublicacion.ACTIVA,
+                Integer.MAX_VALUE);
         List<Publicacion> recomendaciones = new java.util.ArrayList<>();
 
-        for (Publicacion p : activas) {
+        for (Publicacion p : candidatas) {
             if (p.getIdArticulo().equals(idPublicacion)) {
                 continue; // No recomendarse a sí misma
             }
             if (p.getIdVendedor().equals(publicacion.getIdVendedor())) {
                 continue; // No recomendar publicaciones del mismo usuario
             }
-
-            String titulo = p.getTitulo().toLowerCase();
-            String categoria = p.getCategoria() != null ? p.getCategoria().toLowerCase() : "";
-
-            boolean hayCoincidencia = false;
-            for (String palabra : palabrasClave) {
-                if (palabra.length() > 3) { // Ignorar palabras muy cortas (de, la, el...)
-                    if (titulo.contains(palabra) || categoria.contains(palabra)) {
-                        hayCoincidencia = true;
-                        break;
-                    }
-                }
-            }
-
-            if (hayCoincidencia) {
-                recomendaciones.add(p);
-            }
+            recomendaciones.add(p);
         }
 
         return recomendaciones;
@@ -225,6 +247,8 @@ public class PublicacionService {
 
         if (pubExistente != null && pubExistente.getIdVendedor().equals(idUsuarioSolicitante)) {
             publicacionRepository.guardar(publicacion);
+            // La fecha de cierre pudo cambiar
+            programarCierre(publicacion);
             return true;
         }
         return false;
@@ -237,6 +261,17 @@ public class PublicacionService {
         return userService.buscarUsuarioPorId(idUsuario);
     }
 
+    /**
+     * Busca publicaciones activas por palabras clave en título, descripción,
+     * categoría y objetos deseados.
+     *
+     * @return Publicaciones de la más a la menos relevante.
+     */
+    public List<Publicacion> buscarPublicaciones(String consulta) {
+        return publicacionRepository.buscarPorPalabras(consulta, EnumSet.allOf(CampoBusqueda.class),
+                EstadoPublicacion.ACTIVA, Integer.MAX_VALUE);
+    }
+
     /**
      * Busca publicaciones filtradas por la ciudad del vendedor.
      */
@@ -246,78 +281,130 @@ public class PublicacionService {
      */
     public List<Publicacion> listarPublicacionesConFiltros(String ciudadQuery, String tipo, Double minPrecio,
             Double maxPrecio, String categoria, util.CondicionArticulo condicion) {
-        List<Publicacion> todas = buscarPublicacionesActivas();
-        List<Publicacion> filtradas = new java.util.ArrayList<>();
-
-        String ciudadBusqueda = (ciudadQuery != null && !ciudadQuery.isBlank()) ? normalizarTexto(ciudadQuery) : null;
-
-        for (Publicacion p : todas) {
-            boolean coincide = true;
-
-            // 1. Filtro por Ciudad
-            if (ciudadBusqueda != null) {
-                User vendedor = userService.buscarUsuarioPorId(p.getIdVendedor());
-                if (vendedor == null || vendedor.getUbicacion() == null) {
-                    coincide = false;
-                } else {
-                    String ubicacionVendedor = normalizarTexto(vendedor.getUbicacion());
-                    if (!ubicacionVendedor.contains(ciudadBusqueda)) {
-                        coincide = false;
-                    }
-                }
-            }
+        return listarPublicacionesConFiltros(null, ciudadQuery, tipo, minPrecio, maxPrecio, categoria, condicion);
+    }
 
-            // 2. Filtro por Tipo
-            if (coincide && tipo != null && !tipo.equals("TODOS")) {
-                if (!p.getTipoPublicacion().toString().equals(tipo)) {
-                    coincide = false;
-                }
-            }
+    /**
+     * Igual que el anterior, más palabras clave. Con palabras clave, los
+     * resultados quedan ordenados por relevancia.
+     */
+    public List<Publicacion> listarPublicacionesConFiltros(String textoQuery, String ciudadQuery, String tipo,
+            Double minPrecio, Double maxPrecio, String categoria, util.CondicionArticulo condicion) {
+        return publicacionRepository.buscarPorIds(buscarIdsEnCache(textoQuery, ciudadQuery, tipo, minPrecio,
+                maxPrecio, categoria, condicion, OrdenCatalogo.RELEVANCIA));
+    }
 
-            // 3. Filtro por Precio (Solo aplica a Subastas)
-            if (coincide && (minPrecio != null || maxPrecio != null)) {
-                if (p instanceof model.PublicacionSubasta) {
-                    double precio = ((model.PublicacionSubasta) p).getPrecioMinimo();
-
-                    if (minPrecio != null && precio < minPrecio) {
-                        coincide = false;
-                    }
-                    if (maxPrecio != null && precio > maxPrecio) {
-                        coincide = false;
-                    }
-                }
-            }
+    /**
+     * Una página del catálogo filtrado y ordenado. Solo se leen las
+     * publicaciones de la página; el filtro y el orden se resuelven con los
+     * índices del repositorio.
+     *
+     * @param orden    Orden del resultado; null equivale a RELEVANCIA.
+     * @param desde    Posición de la primera publicación de la página.
+     * @param cantidad Tamaño máximo de la página.
+     */
+    public PaginaPublicaciones listarPaginaConFiltros(String textoQuery, String ciudadQuery, String tipo,
+            Double minPrecio, Double maxPrecio, String categoria, util.CondicionArticulo condicion,
+            OrdenCatalogo orden, int desde, int cantidad) {
+        if (desde < 0) {
+            throw new IllegalArgumentException("El desplazamiento no puede ser negativo");
+        }
+        if (cantidad <= 0) {
+            throw new IllegalArgumentException("El tamaño de página debe ser mayor que cero");
+        }
+        List<String> ids = buscarIdsEnCache(textoQuery, ciudadQuery, tipo, minPrecio, maxPrecio, categoria,
+                condicion, orden);
 
-            // 4. Filtro por Categoría
-            if (coincide && categoria != null && !categoria.equals("TODAS")) {
-                if (p.getCategoria() == null || !p.getCategoria().equals(categoria)) {
-                    coincide = false;
-                }
-            }
+        int inicio = Math.min(desde, ids.size());
+        int fin = Math.min(inicio + cantidad, ids.size());
+        return new PaginaPublicaciones(publicacionRepository.buscarPorIds(ids.subList(inicio, fin)), inicio,
+                ids.size());
+    }
 
-            // 5. Filtro por Condición
-            if (coincide && condicion != null) {
-                if (p.getCondicion() == null || !p.getCondicion().equals(condicion)) {
-                    coincide = false;
-                }
-            }
+    /**
+     * Aciertos, fallos y tasa de aciertos de la caché de filtros del catálogo.
+     */
+    public CacheFiltros.Estadisticas getEstadisticasCacheFiltros() {
+        return cacheFiltros.estadisticas();
+    }
 
-            if (coincide) {
-                filtradas.add(p);
-            }
+    /**
+     * Ids de las publicaciones que cumplen los filtros, en el orden pedido,
+     * desde la caché si los datos no cambiaron desde que se calcularon. La
+     * lista devuelta es de solo lectura.
+     */
+    private List<String> buscarIdsEnCache(String textoQuery, String ciudadQuery, String tipo, Double minPrecio,
+            Double maxPrecio, String categoria, util.CondicionArticulo condicion, OrdenCatalogo orden) {
+        OrdenCatalogo ordenFinal = (orden == null) ? OrdenCatalogo.RELEVANCIA : orden;
+        String texto = (textoQuery == null || textoQuery.isBlank())
+                ? null
+                : NormalizadorTexto.normalizar(textoQuery);
+        String ciudad = (ciudadQuery == null || ciudadQuery.isBlank())
+                ? null
+                : NormalizadorTexto.normalizar(ciudadQuery);
+        List<Object> clave = java.util.Arrays.asList(texto, ciudad,
+                "TODOS".equals(tipo) ? null : tipo, minPrecio, maxPrecio,
+                "TODAS".equals(categoria) ? null : categoria, condicion, ordenFinal);
+
+        // El filtro por ciudad depende también de las ubicaciones de los
+        // usuarios. Ambas versiones solo crecen, así que la suma cambia con
+        // cualquier guardado de uno u otro repositorio.
+        long version = publicacionRepository.getVersion();
+        if (ciudad != null) {
+            version += userService.getVersionUsuarios();
         }
-        return filtradas;
+        return cacheFiltros.obtener(clave, version, () -> {
+            List<String> ids = buscarIdsConFiltros(textoQuery, ciudadQuery, tipo, minPrecio, maxPrecio, categoria,
+                    condicion);
+            publicacionRepository.ordenarIds(ids, ordenFinal);
+            return ids;
+        });
     }
 
     /**
-     * Normaliza un texto para búsqueda: minúsculas, trim y sin acentos.
+     * Ids de las publicaciones activas que cumplen los filtros: por
+     * relevancia si hay palabras clave y, si no, en orden de llegada.
      */
-    private String normalizarTexto(String input) {
-        if (input == null)
-            return "";
-        String normalized = java.text.Normalizer.normalize(input, java.text.Normalizer.Form.NFD);
-        normalized = normalized.replaceAll("\\p{M}", ""); // Quita marcas diacríticas (tildes)
-        return normalized.toLowerCase().trim();
+    private List<String> buscarIdsConFiltros(String textoQuery, String ciudadQuery, String tipo,
+            Double minPrecio, Double maxPrecio, String categoria, util.CondicionArticulo condicion) {
+        // Publicaciones activas de vendedores de la ciudad: ciudad -> vendedores
+        // -> publicaciones, con los índices ya normalizados
+        Set<String> idsEnCiudad = (ciudadQuery != null && !ciudadQuery.isBlank())
+                ? publicacionRepository.buscarIdsPorVendedores(userService.buscarIdsPorCiudad(ciudadQuery),
+                        EstadoPublicacion.ACTIVA)
+                : null;
+
+        // Tipo, categoría, condición y precio se resuelven con los mapas de
+        // bits del repositorio (el precio solo descarta subastas)
+        TipoPublicacion tipoFiltro = null;
+        if (tipo != null && !tipo.equals("TODOS")) {
+            try {
+                tipoFiltro = TipoPublicacion.valueOf(tipo);
+            } catch (IllegalArgumentException e) {
+                return new java.util.ArrayList<>();
+            }
+        }
+        String categoriaFiltro = (categoria != null && !categoria.equals("TODAS")) ? categoria : null;
+        List<String> idsFiltrados = publicacionRepository.buscarIdsConFiltros(EstadoPublicacion.ACTIVA,
+                tipoFiltro, categoriaFiltro, condicion, minPrecio, maxPrecio);
+
+        if (textoQuery != null && !textoQuery.isBlank()) {
+            // Se conserva el orden por relevancia de la búsqueda
+            Set<String> admitidos = new java.util.HashSet<>(idsFiltrados);
+            List<String> filtrados = new java.util.ArrayList<>();
+            for (Publicacion p : buscarPublicaciones(textoQuery)) {
+                if (admitidos.contains(p.getIdArticulo())
+                        && (idsEnCiudad == null || idsEnCiudad.contains(p.getIdArticulo()))) {
+                    filtrados.add(p.getIdArticulo());
+                }
+            }
+            return filtrados;
+        }
+
+        if (idsEnCiudad != null) {
+            idsFiltrados.retainAll(idsEnCiudad);
+        }
+        return idsFiltrados;
     }
 
     public UserService getUserService() {
@@ -2,7 +2,7 @@
  * Clase: ReporteService
  * Servicio de lógica de negocio.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.2
+ * @version 1.3
  */
 package service;
 
@@ -12,9 +12,9 @@ import persistence.ReporteRepository;
 import persistence.UserRepository;
 import util.TipoReporte;
 import util.EstadoReporte;
+import util.GeneradorIds;
 
 import java.util.List;
-import java.util.UUID;
 
 /**
  * Servicio para gestionar reportes/tickets de usuarios.
@@ -55,7 +55,7 @@ public class ReporteService {
         }
 
         // Crear el reporte
-        String idReporte = "REP-" + UUID.randomUUID().toString().substring(0, 8);
+        String idReporte = GeneradorIds.nuevoId(GeneradorIds.REPORTE);
         Reporte reporte = new Reporte(idReporte, idReportante, tipo, idObjetoReportado, motivo, descripcion);
 
         reporteRepository.guardarReporte(reporte);
@@ -2,7 +2,7 @@
  * Clase: UserService
  * Servicio que gestiona la lógica de usuarios.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.2
+ * @version 1.4
  */
 
 package service;
@@ -10,6 +10,8 @@ package service;
 import persistence.UserRepository;
 import model.User;
 
+import java.util.Set;
+
 public class UserService {
 
     private final UserRepository userRepository;
@@ -103,4 +105,19 @@ public class UserService {
         }
         userRepository.guardar(user);
     }
+
+    /**
+     * Ids de los usuarios cuya ubicación contiene el texto buscado (sin
+     * importar tildes ni mayúsculas).
+     */
+    public Set<String> buscarIdsPorCiudad(String ciudad) {
+        return userRepository.buscarIdsPorCiudad(ciudad);
+    }
+
+    /**
+     * Versión actual de los usuarios; cambia con cada guardado o eliminación.
+     */
+    public long getVersionUsuarios() {
+        return userRepository.getVersion();
+    }
 }
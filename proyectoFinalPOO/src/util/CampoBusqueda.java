@@ -0,0 +1,28 @@
+/**
+ * Clase: CampoBusqueda
+ * Clase utilidad.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.0
+ */
+package util;
+
+/**
+ * Campos de una publicación que cubre la búsqueda por palabras clave, con el
+ * peso que aporta cada uno al puntaje de un resultado.
+ */
+public enum CampoBusqueda {
+    TITULO(3),
+    CATEGORIA(2),
+    OBJETOS_DESEADOS(2),
+    DESCRIPCION(1);
+
+    private final int peso;
+
+    CampoBusqueda(int peso) {
+        this.peso = peso;
+    }
+
+    public int getPeso() {
+        return peso;
+    }
+}
@@ -2,7 +2,7 @@
  * Clase: EstadoOferta
  *Representa los diferentes estados posibles de una oferta dentro del sistema de trueque o subastas.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.2
+ * @version 1.3
  */
 
 package util;
@@ -12,5 +12,6 @@ public enum EstadoOferta {
 	ACEPTADA, // La oferta ha sido aceptada por el vendedor
 	RECHAZADA, // La oferta ha sido rechazada por el vendedor
 	CANCELADA, // La oferta ha sido cancelada por el comprador antes de ser aceptada o rechazada
-	GANADORA // La oferta ha ganado una subasta
+	GANADORA, // La oferta ha ganado una subasta
+	EXPIRADA // La oferta siguió pendiente más allá del tiempo de expiración configurado
 }
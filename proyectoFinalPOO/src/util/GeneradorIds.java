@@ -0,0 +1,118 @@
+/**
+ * Clase: GeneradorIds
+ * Clase utilidad.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.0
+ */
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Genera identificadores únicos y ordenados por fecha de creación para
+ * publicaciones, ofertas, chats, mensajes y reportes.
+ *
+ * Cada id es un prefijo seguido de un número de 64 bits: los 42 bits altos
+ * son el instante en milisegundos y los 22 bajos un contador dentro del
+ * mismo milisegundo (hasta ~4 millones de ids por milisegundo; si se agota,
+ * se toma prestado el milisegundo siguiente). El número se escribe en
+ * base 32 de Crockford con ancho fijo de 13 caracteres, de modo que el orden
+ * alfabético de los ids coincide con el orden de creación.
+ *
+ * Es seguro para varios hilos sin candados: el último valor emitido se
+ * actualiza con compareAndSet y nunca retrocede, aunque el reloj del sistema
+ * lo haga.
+ */
+public final class GeneradorIds {
+
+    public static final String PUBLICACION = "PUB";
+    public static final String OFERTA = "OFE";
+    public static final String CHAT = "CHAT";
+    public static final String MENSAJE = "MSG";
+    public static final String REPORTE = "REP";
+
+    private static final int BITS_SECUENCIA = 22;
+    private static final int LONGITUD = 13;
+    private static final char[] ALFABETO = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    private static final AtomicLong ultimo = new AtomicLong();
+
+    private GeneradorIds() {
+    }
+
+    /**
+     * Genera un id nuevo, mayor que todos los generados antes en este proceso.
+     *
+     * @param prefijo Tipo de entidad, por ejemplo {@link #PUBLICACION}.
+     */
+    public static String nuevoId(String prefijo) {
+        return prefijo + "-" + codificar(siguienteValor());
+    }
+
+    /**
+     * Id más pequeño posible para el instante indicado. Sirve de cota para
+     * recorrer ids por rango de fechas (por ejemplo con TreeMap.subMap).
+     */
+    public static String cotaInferior(String prefijo, long instanteMs) {
+        return prefijo + "-" + codificar(instanteMs << BITS_SECUENCIA);
+    }
+
+    /**
+     * Instante de creación de un id generado por esta clase, en
+     * milisegundos. Los ids guardados antes (prefijo más milisegundos, o
+     * UUID) no se interpretan de forma fiable.
+     *
+     * @return El instante, o -1 si el id no tiene el formato esperado.
+     */
+    public static long instante(String id) {
+        int guion = (id != null) ? id.lastIndexOf('-') : -1;
+        if (guion < 0 || id.length() - guion - 1 != LONGITUD) {
+            return -1;
+        }
+        long valor = decodificar(id.substring(guion + 1));
+        return (valor == -1) ? -1 : valor >>> BITS_SECUENCIA;
+    }
+
+    private static long siguienteValor() {
+        while (true) {
+            long anterior = ultimo.get();
+            long siguiente = Math.max(System.currentTimeMillis() << BITS_SECUENCIA, anterior + 1);
+            if (ultimo.compareAndSet(anterior, siguiente)) {
+                return siguiente;
+            }
+        }
+    }
+
+    private static String codificar(long valor) {
+        char[] texto = new char[LONGITUD];
+        for (int i = LONGITUD - 1; i >= 0; i--) {
+            texto[i] = ALFABETO[(int) (valor & 31)];
+            valor >>>= 5;
+        }
+        return new String(texto);
+    }
+
+    /**
+     * @return El valor, o -1 si el texto tiene caracteres fuera del alfabeto.
+     */
+    private static long decodificar(String texto) {
+        long valor = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            int digito = indice(texto.charAt(i));
+            if (digito < 0) {
+                return -1;
+            }
+            valor = (valor << 5) | digito;
+        }
+        return valor;
+    }
+
+    private static int indice(char c) {
+        for (int i = 0; i < ALFABETO.length; i++) {
+            if (ALFABETO[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
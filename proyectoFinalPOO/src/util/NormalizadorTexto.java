@@ -0,0 +1,53 @@
+/**
+ * Clase: NormalizadorTexto
+ * Clase utilidad.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.0
+ */
+package util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Normalización de texto para búsquedas: minúsculas, sin espacios en los
+ * extremos y sin acentos. La usan los filtros y el índice de texto, de modo
+ * que "Bogotá" y "bogota" se consideran iguales en ambos.
+ */
+public final class NormalizadorTexto {
+
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}");
+    private static final Pattern SEPARADORES = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+    private NormalizadorTexto() {
+    }
+
+    /**
+     * Normaliza un texto para búsqueda: minúsculas, trim y sin acentos.
+     */
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String normalizado = Normalizer.normalize(texto, Normalizer.Form.NFD);
+        normalizado = MARCAS.matcher(normalizado).replaceAll(""); // Quita marcas diacríticas (tildes)
+        return normalizado.toLowerCase().trim();
+    }
+
+    /**
+     * Normaliza el texto y lo separa en palabras (letras y dígitos).
+     *
+     * @param longitudMinima Las palabras más cortas se descartan.
+     */
+    public static List<String> palabras(String texto, int longitudMinima) {
+        List<String> palabras = new ArrayList<>();
+        for (String palabra : SEPARADORES.split(normalizar(texto))) {
+            if (palabra.length() >= longitudMinima) {
+                palabras.add(palabra);
+            }
+        }
+        return palabras;
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Clase: OrdenCatalogo
+ * Clase utilidad.
+ * @author Anggel Leal, Wilfer Herrera, David Santos
+ * @version 1.0
+ */
+package util;
+
+/**
+ * Órdenes disponibles para el catálogo de publicaciones. Los empates se
+ * resuelven por orden de llegada, de modo que el orden es estable entre
+ * páginas.
+ */
+public enum OrdenCatalogo {
+    /** Por relevancia si hay palabras clave; si no, por orden de llegada. */
+    RELEVANCIA("Relevancia"),
+    /** Por fecha de publicación, de la más nueva a la más antigua. */
+    RECIENTES("Más recientes"),
+    /** Por precio mínimo ascendente; las publicaciones sin precio al final. */
+    PRECIO_MENOR("Menor precio"),
+    /** Por precio mínimo descendente; las publicaciones sin precio al final. */
+    PRECIO_MAYOR("Mayor precio"),
+    /** Por fecha de cierre ascendente; las que no cierran al final. */
+    CIERRE_PROXIMO("Cierran pronto");
+
+    private final String descripcion;
+
+    OrdenCatalogo(String descripcion) {
+        this.descripcion = descripcion;
+    }
+
+    public String getDescripcion() {
+        return descripcion;
+    }
+
+    @Override
+    public String toString() {
+        return descripcion;
+    }
+}
@@ -2,7 +2,7 @@
  * Clase: DetallePublicacionView
  * modelo de interfaz
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.2
+ * @version 1.5
  */
 
 package view;
@@ -14,18 +14,25 @@ import model.PublicacionSubasta;
 import model.PublicacionTrueque;
 import model.User;
 import model.Oferta;
+import model.PujaAutomatica;
 import util.TipoPublicacion;
 import util.TipoReporte;
 import controller.UserController;
 import view.PerfilUsuarioView;
 import util.EstadoPublicacion;
+import service.BusEventosPujas.EventoPuja;
 
 import javax.swing.*;
 import java.awt.*;
 import java.text.SimpleDateFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class DetallePublicacionView extends JFrame {
 
@@ -42,6 +49,19 @@ public class DetallePublicacionView extends JFrame {
     private JPanel panelHistorialPujas;
     private final NumberFormat formatoMoneda;
 
+    // Pujas que se muestran en el historial (las de mayor monto)
+    private static final int PUJAS_VISIBLES = 10;
+
+    // Pujas de otros usuarios en vivo: los eventos llegan desde cualquier
+    // hilo y se aplican juntos, como máximo una vez por cuadro (~60 por s)
+    private static final int MS_POR_CUADRO = 16;
+    private final List<Oferta> pujasVisibles = new ArrayList<>();
+    private int totalPujas;
+    private final Queue<EventoPuja> eventosPendientes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean aplicacionProgramada = new AtomicBoolean();
+    private final Consumer<EventoPuja> suscriptorPujas = this::recibirEventoPuja;
+    private Timer temporizadorCuadro;
+
     /**
     *Constructor principal: recibe controladores, la publicación, el usuario actual y la ventana principal.
     * Configura formato de moneda, tamaño e inicializa los componentes.
@@ -212,6 +232,10 @@ public class DetallePublicacionView extends JFrame {
                 btnPujaRapida.addActionListener(e -> realizarPujaRapida());
                 panelBotones.add(btnPujaRapida);
                 panelBotones.add(btnPujaRapida);
+
+                JButton btnPujaAutomatica = new JButton("Puja automática");
+                btnPujaAutomatica.addActionListener(e -> registrarPujaAutomatica());
+                panelBotones.add(btnPujaAutomatica);
             }
 
             JButton btnVerPerfil = new JButton("Ver Perfil");
@@ -295,6 +319,23 @@ public class DetallePublicacionView extends JFrame {
         panelInfo.add(panelHistorialPujas);
 
         cargarHistorialPujas();
+
+        // Las pujas guardadas desde aquí o desde otra ventana llegan por eventos
+        temporizadorCuadro = new Timer(MS_POR_CUADRO, e -> aplicarEventosPujas());
+        temporizadorCuadro.setRepeats(false);
+        controller.suscribirPujas(publicacion.getIdArticulo(), suscriptorPujas);
+    }
+
+    /**
+     * Deja de recibir eventos de pujas al cerrar la ventana.
+     */
+    @Override
+    public void dispose() {
+        if (temporizadorCuadro != null) {
+            controller.desuscribirPujas(publicacion.getIdArticulo(), suscriptorPujas);
+            temporizadorCuadro.stop();
+        }
+        super.dispose();
     }
 
     private void refrescarPujaActual() {
@@ -305,25 +346,109 @@ public class DetallePublicacionView extends JFrame {
         lblPujaActual.setText("Puja actual: $ " + formatoMoneda.format(pujaActual));
     }
 
+    /**
+     * Recibe un evento de pujas en el hilo que lo publicó. Solo lo encola y,
+     * si no hay una aplicación pendiente, programa una para el próximo cuadro.
+     */
+    private void recibirEventoPuja(EventoPuja evento) {
+        eventosPendientes.add(evento);
+        if (aplicacionProgramada.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(temporizadorCuadro::restart);
+        }
+    }
+
+    /**
+     * Aplica en el hilo de Swing todos los eventos acumulados y repinta una
+     * sola vez. Una puja nueva se inserta en el historial sin consultar el
+     * repositorio; si se retiró alguna, se vuelve a cargar todo.
+     */
+    private void aplicarEventosPujas() {
+        // Antes de vaciar la cola: un evento que llegue durante la aplicación
+        // programa la siguiente
+        aplicacionProgramada.set(false);
+
+        boolean recargar = false;
+        double montoMejor = -1;
+        EventoPuja evento;
+        while ((evento = eventosPendientes.poll()) != null) {
+            if (evento.getTipo() == EventoPuja.Tipo.RETIRADA) {
+                recargar = true;
+            } else {
+                insertarPujaVisible(evento.getOferta());
+                montoMejor = evento.getMontoMejor();
+            }
+            totalPujas = evento.getTotalPujas();
+        }
+
+        if (recargar) {
+            refrescarPujaActual();
+            cargarHistorialPujas();
+        } else if (montoMejor >= 0) {
+            double pujaActual = Math.max(publicacionSubasta.getPrecioMinimo(), montoMejor);
+            lblPujaActual.setText("Puja actual: $ " + formatoMoneda.format(pujaActual));
+            pintarHistorialPujas();
+        }
+    }
+
+    /**
+     * Inserta una puja en las visibles, de mayor a menor monto (ante empate,
+     * la anterior primero), y descarta las que salen del tope.
+     */
+    private void insertarPujaVisible(Oferta oferta) {
+        for (Oferta visible : pujasVisibles) {
+            if (visible.getIdOferta().equals(oferta.getIdOferta())) {
+                return;
+            }
+        }
+        int posicion = 0;
+        while (posicion < pujasVisibles.size()
+                && pujasVisibles.get(posicion).getMontoOferta() >= oferta.getMontoOferta()) {
+            posicion++;
+        }
+        if (posicion < PUJAS_VISIBLES) {
+            pujasVisibles.add(posicion, oferta);
+            if (pujasVisibles.size() > PUJAS_VISIBLES) {
+                pujasVisibles.remove(pujasVisibles.size() - 1);
+            }
+        }
+    }
+
     private void cargarHistorialPujas() {
         if (panelHistorialPujas == null) {
             return;
         }
 
+        // Solo se piden las mejores pujas; el resto no se carga
+        pujasVisibles.clear();
+        List<Oferta> ofertas = controller.obtenerMejoresOfertas(publicacion.getIdArticulo(), PUJAS_VISIBLES);
+        if (ofertas != null) {
+            pujasVisibles.addAll(ofertas);
+        }
+        totalPujas = controller.contarOfertas(publicacion.getIdArticulo());
+        pintarHistorialPujas();
+    }
+
+    private void pintarHistorialPujas() {
         panelHistorialPujas.removeAll();
 
-        List<Oferta> ofertas = controller.obtenerOfertas(publicacion.getIdArticulo());
-        if (ofertas == null || ofertas.isEmpty()) {
+        if (pujasVisibles.isEmpty()) {
             JLabel lblSinOfertas = new JLabel("No hay pujas registradas aún.");
             lblSinOfertas.setForeground(Color.GRAY);
             panelHistorialPujas.add(lblSinOfertas);
         } else {
-            for (Oferta oferta : ofertas) {
+            for (Oferta oferta : pujasVisibles) {
                 String texto = "• Ofertante: " + oferta.getIdOfertante()
                         + " | Monto: $ " + formatoMoneda.format(oferta.getMontoOferta());
                 JLabel lblOferta = new JLabel(texto);
                 panelHistorialPujas.add(lblOferta);
             }
+
+            int restantes = totalPujas - pujasVisibles.size();
+            if (restantes > 0) {
+                JLabel lblRestantes = new JLabel("... y " + restantes + " pujas más");
+                lblRestantes.setForeground(Color.GRAY);
+                panelHistorialPujas.add(lblRestantes);
+            }
         }
 
         panelHistorialPujas.revalidate();
@@ -369,10 +494,53 @@ public class DetallePublicacionView extends JFrame {
         }
 
         if (exito) {
+            // La puja actual y el historial se actualizan con el evento de la puja
             JOptionPane.showMessageDialog(this, "¡Puja rápida realizada con éxito!");
-            // Refrescar UI
-            refrescarPujaActual();
-            cargarHistorialPujas();
+        }
+    }
+
+    private void registrarPujaAutomatica() {
+        if (usuarioActual == null) {
+            JOptionPane.showMessageDialog(this, "Debes iniciar sesión para ofertar.");
+            return;
+        }
+        if (publicacionSubasta == null) {
+            return;
+        }
+
+        String mensaje = "Ingresa el monto máximo que estás dispuesto a pagar."
+                + "\nSe pujará por ti con el incremento mínimo hasta ese monto.";
+        PujaAutomatica anterior = controller.obtenerPujaAutomatica(publicacion.getIdArticulo(), usuarioActual.getId());
+        if (anterior != null) {
+            mensaje += "\nTu máximo actual: $ " + formatoMoneda.format(anterior.getMontoMaximo());
+        }
+
+        String montoStr = JOptionPane.showInputDialog(this, mensaje, "Puja automática",
+                JOptionPane.QUESTION_MESSAGE);
+        if (montoStr == null || montoStr.isEmpty()) {
+            return;
+        }
+
+        double montoMaximo;
+        try {
+            montoMaximo = Double.parseDouble(montoStr);
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Monto inválido.");
+            return;
+        }
+
+        Oferta mejor = controller.registrarPujaAutomatica(publicacion.getIdArticulo(), usuarioActual.getId(),
+                montoMaximo);
+        if (mejor == null) {
+            return;
+        }
+
+        if (mejor.getIdOfertante().equals(usuarioActual.getId())) {
+            JOptionPane.showMessageDialog(this, "¡Vas ganando con $ " + formatoMoneda.format(mejor.getMontoOferta())
+                    + "! Se pujará por ti hasta $ " + formatoMoneda.format(montoMaximo) + ".");
+        } else {
+            JOptionPane.showMessageDialog(this, "Otra puja supera tu máximo. Puja actual: $ "
+                    + formatoMoneda.format(mejor.getMontoOferta()));
         }
     }
 
@@ -439,8 +607,6 @@ public class DetallePublicacionView extends JFrame {
                             null);
                     if (exito) {
                         JOptionPane.showMessageDialog(this, "¡Puja realizada con éxito!");
-                        refrescarPujaActual();
-                        cargarHistorialPujas();
                     }
                 } catch (NumberFormatException e) {
                     JOptionPane.showMessageDialog(this, "Monto inválido.");
@@ -2,7 +2,7 @@
  * Clase: ConfiguracionGlobal
  * Ventana principal de la aplicación.
  * @author Anggel Leal, Wilfer Herrera, David Santos
- * @version 1.5
+ * @version 1.8
  */
 
 
@@ -42,11 +42,16 @@ public class MainWindow extends JFrame {
 
     private User usuarioLogueado = null; // INICIO: MODO INVITADO
 
-    private final AuthController authController;
-    private final PublicacionController pubController;
-    private final ChatController chatController;
-    private final AdminController adminController;
-    private final ReporteController reporteController;
+    // Se asignan en inicializar(), cuando termina la carga de datos
+    private AuthController authController;
+    private PublicacionController pubController;
+    private ChatController chatController;
+    private AdminController adminController;
+    private ReporteController reporteController;
+
+    // Estado de carga mostrado mientras se leen los repositorios
+    private JPanel panelCarga;
+    private JLabel lblEstadoCarga;
 
     // Componentes UI
     private JLabel lblBienvenida;
@@ -56,10 +61,24 @@ public class MainWindow extends JFrame {
     private JPanel panelContenedorCards;
     private java.util.List<PublicacionCardPanel> tarjetasActuales;
     private PublicacionCardPanel tarjetaSeleccionada;
+    private JScrollPane scrollCards;
+
+    // Paginación del catálogo. La consulta guarda los filtros vigentes al
+    // buscar, de modo que las páginas siguientes usan los mismos aunque el
+    // usuario edite los campos mientras desplaza.
+    private static final int TAMANO_PAGINA = 24;
+    private java.util.function.IntFunction<model.PaginaPublicaciones> consultaCatalogo;
+    private int siguienteDesde;
+    private boolean hayMasPaginas;
+    // Ids ya mostrados, por si una publicación nueva desplaza el resultado
+    // entre una página y la siguiente
+    private java.util.Set<String> idsMostrados = new java.util.HashSet<>();
 
     // Componentes de Búsqueda
     private JTextField txtBuscarCiudad;
+    private JTextField txtBuscarTexto;
     private JComboBox<String> cmbTipo, cmbCategoria, cmbCondicion;
+    private JComboBox<util.OrdenCatalogo> cmbOrden;
     private JTextField txtMinPrecio;
     private JTextField txtMaxPrecio;
     private JButton btnBuscar;
@@ -82,13 +101,18 @@ public class MainWindow extends JFrame {
      */
     public MainWindow(AuthController authController, PublicacionController pubController,
             ChatController chatController, AdminController adminController, ReporteController reporteController) {
+        this();
+        inicializar(authController, pubController, chatController, adminController, reporteController);
+    }
+
+    /**
+     * Crea la ventana en estado de carga, antes de tener los controladores.
+     * Permite mostrarla mientras los repositorios se leen en segundo plano;
+     * al terminar se completa con {@link #inicializar}.
+     */
+    public MainWindow() {
         setBackground(new Color(255, 255, 255));
         setForeground(new Color(235, 203, 129));
-        this.authController = authController;
-        this.pubController = pubController;
-        this.chatController = chatController;
-        this.adminController = adminController;
-        this.reporteController = reporteController;
 
         setTitle("Mercado Local - Inicio");
         setSize(1000, 700);
@@ -97,13 +121,75 @@ public class MainWindow extends JFrame {
         getContentPane().setLayout(new BorderLayout());
         getContentPane().setBackground(new Color(245, 245, 245)); // Fondo gris claro
 
+        initPanelCarga();
+    }
+
+    /**
+     * Recibe los controladores una vez cargados los datos y arma la
+     * interfaz completa en lugar del estado de carga.
+     *
+     * @param authController controlador de autenticación
+     * @param pubController controlador de publicaciones
+     * @param chatController controlador de chat/mensajes
+     * @param adminController controlador para administradores
+     * @param reporteController controlador de reportes
+     */
+    public void inicializar(AuthController authController, PublicacionController pubController,
+            ChatController chatController, AdminController adminController, ReporteController reporteController) {
+        this.authController = authController;
+        this.pubController = pubController;
+        this.chatController = chatController;
+        this.adminController = adminController;
+        this.reporteController = reporteController;
+
+        getContentPane().remove(panelCarga);
+        panelCarga = null;
+        lblEstadoCarga = null;
+
         initUI();
         cargarPublicaciones(); // MOSTRAR PUBLICACIONES APENAS INICIA
 
+        getContentPane().revalidate();
+        getContentPane().repaint();
+
         // Timer para notificaciones (cada 5 segundos)
         new Timer(5000, e -> actualizarNotificaciones()).start();
     }
 
+    /**
+     * Actualiza el texto del estado de carga. Sin efecto si la interfaz ya
+     * se inicializó.
+     */
+    public void mostrarEstadoCarga(String mensaje) {
+        if (lblEstadoCarga != null) {
+            lblEstadoCarga.setText(mensaje);
+        }
+    }
+
+    private void initPanelCarga() {
+        panelCarga = new JPanel(new GridBagLayout());
+        panelCarga.setOpaque(false);
+
+        JPanel contenido = new JPanel(new BorderLayout(0, 10));
+        contenido.setOpaque(false);
+
+        JLabel lblTitulo = new JLabel("Cargando datos...", SwingConstants.CENTER);
+        lblTitulo.setFont(new Font("SansSerif", Font.BOLD, 18));
+        lblTitulo.setForeground(new Color(46, 0, 108));
+        contenido.add(lblTitulo, BorderLayout.NORTH);
+
+        JProgressBar barra = new JProgressBar();
+        barra.setIndeterminate(true);
+        contenido.add(barra, BorderLayout.CENTER);
+
+        lblEstadoCarga = new JLabel(" ", SwingConstants.CENTER);
+        lblEstadoCarga.setForeground(Color.GRAY);
+        contenido.add(lblEstadoCarga, BorderLayout.SOUTH);
+
+        panelCarga.add(contenido);
+        getContentPane().add(panelCarga, BorderLayout.CENTER);
+    }
+
     private void initUI() {
         // --- HEADER ---
         JPanel header = new JPanel(new BorderLayout());
@@ -146,6 +232,11 @@ public class MainWindow extends JFrame {
         txtBuscarCiudad = new JTextField(12);
         txtBuscarCiudad.setToolTipText("Buscar por ciudad...");
 
+        // 4. Palabras clave (título, descripción, categoría, objetos deseados)
+        txtBuscarTexto = new JTextField(14);
+        txtBuscarTexto.setToolTipText("Buscar por palabras clave...");
+        txtBuscarTexto.addActionListener(e -> cargarPublicaciones());
+
         btnBuscar = new JButton("🔍 Buscar");
         btnBuscar.setBackground(new Color(46, 204, 113));
         btnBuscar.setForeground(Color.WHITE);
@@ -156,11 +247,13 @@ public class MainWindow extends JFrame {
         btnLimpiar.setForeground(Color.BLACK);
         btnLimpiar.addActionListener(e -> {
             txtBuscarCiudad.setText("");
+            txtBuscarTexto.setText("");
             cmbTipo.setSelectedIndex(0);
             txtMinPrecio.setText("");
             txtMaxPrecio.setText("");
             cmbCategoria.setSelectedIndex(0);
             cmbCondicion.setSelectedIndex(0);
+            cmbOrden.setSelectedIndex(0);
             cargarPublicaciones();
         });
 
@@ -190,6 +283,10 @@ public class MainWindow extends JFrame {
         btnLoginLogout.setForeground(Color.WHITE);
         btnLoginLogout.addActionListener(e -> manejarSesion());
 
+        JLabel lblTexto = new JLabel("Buscar:");
+        lblTexto.setForeground(new Color(235, 203, 129));
+        filaFiltros1.add(lblTexto);
+        filaFiltros1.add(txtBuscarTexto);
         JLabel label = new JLabel("Tipo:");
         label.setForeground(new Color(235, 203, 129));
         filaFiltros1.add(label);
@@ -238,6 +335,15 @@ public class MainWindow extends JFrame {
         });
         filaFiltros2.add(cmbCondicion);
 
+        // Orden
+        JLabel lblOrden = new JLabel("Orden:");
+        lblOrden.setForeground(new Color(235, 203, 129));
+        filaFiltros2.add(lblOrden);
+
+        cmbOrden = new JComboBox<>(util.OrdenCatalogo.values());
+        cmbOrden.addActionListener(e -> cargarPublicaciones());
+        filaFiltros2.add(cmbOrden);
+
         filaFiltros2.add(btnBuscar);
         filaFiltros2.add(btnLimpiar);
         JLabel label_4 = new JLabel("  |  ");
@@ -294,10 +400,16 @@ public class MainWindow extends JFrame {
         panelContenedorCards.setBackground(new Color(245, 245, 245)); // Gris muy claro en lugar de blanco
         panelContenedorCards.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
 
-        JScrollPane scrollCards = new JScrollPane(panelContenedorCards);
+        scrollCards = new JScrollPane(panelContenedorCards);
         scrollCards.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
         scrollCards.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
         scrollCards.getVerticalScrollBar().setUnitIncrement(16);
+        // Al acercarse al final se pide la página siguiente
+        scrollCards.getVerticalScrollBar().addAdjustmentListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                cargarSiguientePaginaSiHaceFalta();
+            }
+        });
 
         JPanel panelPublicaciones = new JPanel(new BorderLayout());
         panelPublicaciones.setForeground(new Color(240, 201, 108));
@@ -401,6 +513,7 @@ public class MainWindow extends JFrame {
         panelContenedorCards.removeAll();
         tarjetasActuales.clear();
         tarjetaSeleccionada = null;
+        idsMostrados.clear();
 
         String ciudad = txtBuscarCiudad.getText();
         String tipo = (String) cmbTipo.getSelectedItem();
@@ -422,18 +535,54 @@ public class MainWindow extends JFrame {
             // Ignorar error de parseo, simplemente no filtra por precio
         }
 
-        List<Publicacion> lista = pubController.listarPublicacionesConFiltros(ciudad, tipo, min, max, categoria,
-                condicion);
+        String texto = txtBuscarTexto.getText();
+        util.OrdenCatalogo orden = (util.OrdenCatalogo) cmbOrden.getSelectedItem();
+        Double minPrecio = min;
+        Double maxPrecio = max;
+        consultaCatalogo = desde -> pubController.listarPaginaConFiltros(texto, ciudad, tipo, minPrecio, maxPrecio,
+                categoria, condicion, orden, desde, TAMANO_PAGINA);
+        siguienteDesde = 0;
+        hayMasPaginas = true;
 
-        if (lista != null) {
-            if (lista.isEmpty()) {
-                // Opcional: Mostrar mensaje si no hay resultados, pero puede ser molesto al
-                // inicio
-                // JOptionPane.showMessageDialog(this, "No se encontraron publicaciones con esos
-                // filtros.");
-            }
+        cargarSiguientePagina();
+        scrollCards.getVerticalScrollBar().setValue(0);
+    }
 
+    /**
+     * Pide la página siguiente si la barra está cerca del final o si las
+     * tarjetas cargadas aún no llenan la vista.
+     */
+    private void cargarSiguientePaginaSiHaceFalta() {
+        // Antes de mostrarse la vista no tiene tamaño; al mostrarse, la barra
+        // cambia y vuelve a llamar a este método
+        if (!hayMasPaginas || !scrollCards.isShowing()) {
+            return;
+        }
+        JScrollBar barra = scrollCards.getVerticalScrollBar();
+        int restante = barra.getMaximum() - (barra.getValue() + barra.getVisibleAmount());
+        if (restante <= scrollCards.getViewport().getHeight() / 2) {
+            cargarSiguientePagina();
+        }
+    }
+
+    /**
+     * Agrega al catálogo las tarjetas de la página siguiente de la consulta
+     * vigente.
+     */
+    private void cargarSiguientePagina() {
+        if (consultaCatalogo == null || !hayMasPaginas) {
+            return;
+        }
+        model.PaginaPublicaciones pagina = consultaCatalogo.apply(siguienteDesde);
+        siguienteDesde = pagina.getSiguienteDesde();
+        hayMasPaginas = pagina.hayMas();
+
+        List<Publicacion> lista = pagina.getPublicaciones();
+        if (lista != null) {
             for (Publicacion p : lista) {
+                if (!idsMostrados.add(p.getIdArticulo())) {
+                    continue;
+                }
                 try {
                     PublicacionCardPanel card = new PublicacionCardPanel(p, pubController);
 
@@ -455,6 +604,11 @@ public class MainWindow extends JFrame {
 
         panelContenedorCards.revalidate();
         panelContenedorCards.repaint();
+
+        // Si la página no alcanza a llenar la vista no hay barra que desplazar
+        if (hayMasPaginas) {
+            SwingUtilities.invokeLater(this::cargarSiguientePaginaSiHaceFalta);
+        }
     }
 
     private void seleccionarTarjeta(PublicacionCardPanel card) {
@@ -181,7 +181,7 @@ public class PanelListaChats extends JPanel {
                     : "Desconocido";
 
             String textoNoLeidos = chat.isTieneMensajesNoLeidos() ? "Sí" : "No";
-            int totalMensajes = chat.getListaMensajes().size();
+            int totalMensajes = chat.getCantidadMensajes();
 
             modeloTablaChats.addRow(new Object[] {
                     nombreContacto,